@@ -0,0 +1,386 @@
+/*
+ * Copyright 2008 Eckhart Arnold (eckhart_arnold@hotmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package de.eckhartarnold.client;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+
+import com.google.gwt.json.client.JSONException;
+
+/**
+ * Reads the .json files of an image collection with an
+ * {@link IncrementalJSONParser} and enters their entries directly into
+ * the data structures of the album, i.e. lists of names, caption
+ * dictionaries and an {@link ImageSizeTable}.
+ *
+ * <p>The file can be fed to the parser piece by piece while it is still
+ * being loaded. No tree of JSON values is built and no entry is copied
+ * twice. Of the image sizes only one entry at a time is kept, before it
+ * is merged with an equal resolution set or added to the table.
+ *
+ * <p>A parser reads either one of the separate files, e.g. "filenames.json",
+ * or a manifest or page (see {@link ImageCollectionReader}), which contains
+ * several of them as sections. All formats of "resolutions.json" are
+ * understood.
+ *
+ * @author eckhart
+ */
+public class AlbumStreamParser implements IncrementalJSONParser.Handler {
+  /** section name and kind of file for "directories.json" */
+  public static final String DIRECTORIES = "directories";
+  /** section name and kind of file for "filenames.json" */
+  public static final String FILENAMES = "filenames";
+  /** section name and kind of file for "captions.json" */
+  public static final String CAPTIONS = "captions";
+  /** section name and kind of file for "resolutions.json" */
+  public static final String RESOLUTIONS = "resolutions";
+  /** section name and kind of file for "info.json" */
+  public static final String INFO = "info";
+  /** section name of the header of a paged manifest */
+  public static final String PAGED = "paged";
+  /** kind of file for a manifest or a page, which contains sections */
+  public static final String MANIFEST = "manifest";
+
+  private final IncrementalJSONParser parser;
+  private final String kind;
+  private final int    base;  // depth of the container of a section
+
+  // the path to the current value
+  private String[]  keys = new String[8];
+  private int[]     indices = new int[8];
+  private boolean[] isArray = new boolean[8];
+  private int       depth = 0;
+
+  private HashSet<String>         sections = new HashSet<String>();
+  private ArrayList<String>       directories, filenames;
+  private HashMap<String, String> captions, info;
+  private int                     count = -1, pageSize = -1;
+
+  // image sizes
+  private boolean columnar = false;
+  private int     steps = 0;
+  private int[]   dims = new int[64];
+  private int     dimCount = 0;
+  private int[]   setIds = new int[64];
+  private int     setCount = 0;
+  private int[]   entry = new int[16];  // the sizes that are being read
+  private int     entryCount = 0;
+  private HashMap<String, Integer> setsByContent = new HashMap<String, Integer>();
+  private HashMap<String, Integer> setsByName = new HashMap<String, Integer>();
+  private HashMap<String, Integer> imageSets = new HashMap<String, Integer>();
+
+  /**
+   * Creates a parser for a file of the given kind.
+   *
+   * @param kind  either <code>MANIFEST</code> for a manifest or a page or
+   *              one of the section names for the respective separate file
+   */
+  public AlbumStreamParser(String kind) {
+    this.kind = kind;
+    this.base = kind.equals(MANIFEST) ? 2 : 1;
+    parser = new IncrementalJSONParser(this);
+  }
+
+  /**
+   * Returns true, if the file contained the given section. For the
+   * separate files this is true for the section of the file.
+   *
+   * @param section  the name of the section
+   * @return true, if the section has been read
+   */
+  public boolean contains(String section) {
+    return sections.contains(section);
+  }
+
+  /**
+   * Parses the next piece of the file.
+   *
+   * @param text  the next piece of the file
+   * @throws JSONException if the text is not valid JSON
+   */
+  public void feed(String text) {
+    parser.feed(text);
+  }
+
+  /**
+   * Signals that the whole file has been fed to the parser.
+   *
+   * @throws JSONException if the file has ended prematurely
+   */
+  public void finish() {
+    parser.finish();
+  }
+
+  /**
+   * Returns the number of images of a paged album.
+   *
+   * @return the number of images or -1, if the header is missing
+   */
+  public int getCount() {
+    return count;
+  }
+
+  /**
+   * Returns the captions or the info dictionary.
+   *
+   * @param section  either <code>CAPTIONS</code> or <code>INFO</code>
+   * @return the dictionary or <code>null</code>, if it has not been read
+   */
+  public HashMap<String, String> getDictionary(String section) {
+    return section.equals(CAPTIONS) ? captions : info;
+  }
+
+  /**
+   * Returns the page size of a paged album.
+   *
+   * @return the page size or -1, if the header is missing
+   */
+  public int getPageSize() {
+    return pageSize;
+  }
+
+  /**
+   * Returns the image sizes as a table in the order of the given names.
+   *
+   * @param names  the names of the images
+   * @return the image size table
+   * @throws JSONException if the sizes of an image are missing
+   */
+  public ImageSizeTable getSizeTable(String[] names) {
+    int[] ids;
+    if (columnar) {
+      ids = new int[setCount];
+      System.arraycopy(setIds, 0, ids, 0, setCount);
+    } else {
+      ids = new int[names.length];
+      for (int i = 0; i < names.length; i++) {
+        Integer id = imageSets.get(names[i]);
+        if (id == null) {
+          throw new JSONException("no sizes for image " + names[i]);
+        }
+        ids[i] = id;
+      }
+    }
+    int[] table = new int[dimCount];
+    System.arraycopy(dims, 0, table, 0, dimCount);
+    return new ImageSizeTable(Math.max(steps, 1), ids, table);
+  }
+
+  /**
+   * Returns the directory or image names.
+   *
+   * @param section  either <code>DIRECTORIES</code> or
+   *                 <code>FILENAMES</code>
+   * @return the names or <code>null</code>, if they have not been read
+   */
+  public String[] getStrings(String section) {
+    ArrayList<String> list =
+        section.equals(DIRECTORIES) ? directories : filenames;
+    if (list == null) return null;
+    return list.toArray(new String[list.size()]);
+  }
+
+  /* (non-Javadoc)
+   * @see de.eckhartarnold.client.IncrementalJSONParser.Handler#endArray()
+   */
+  public void endArray() {
+    endContainer();
+  }
+
+  /* (non-Javadoc)
+   * @see de.eckhartarnold.client.IncrementalJSONParser.Handler#endObject()
+   */
+  public void endObject() {
+    endContainer();
+  }
+
+  /* (non-Javadoc)
+   * @see de.eckhartarnold.client.IncrementalJSONParser.Handler#key(java.lang.String)
+   */
+  public void key(String key) {
+    keys[depth] = key;
+  }
+
+  /* (non-Javadoc)
+   * @see de.eckhartarnold.client.IncrementalJSONParser.Handler#literalValue(java.lang.Boolean)
+   */
+  public void literalValue(Boolean value) {
+    nextValue();
+  }
+
+  /* (non-Javadoc)
+   * @see de.eckhartarnold.client.IncrementalJSONParser.Handler#numberValue(double)
+   */
+  public void numberValue(double value) {
+    String section = section();
+    int level = depth - base + 1;
+    if (section.equals(PAGED) && level == 1) {
+      if (keys[depth].equals("count")) count = (int) value;
+      else if (keys[depth].equals("pageSize")) pageSize = (int) value;
+    } else if (section.equals(RESOLUTIONS)) {
+      if (level == 1 && keys[depth].equals("steps")) {
+        columnar = true;
+        steps = (int) value;
+      } else if (level == 1 && keys[depth].equals(ImageSizeTable.COLUMNAR_KEY)) {
+        columnar = true;
+      } else if (level == 2 && !isArray[base]) {
+        // the "sets" and "images" arrays of the columnar format
+        columnar = true;
+        if (keys[base].equals("sets")) {
+          dims = append(dims, dimCount++, (int) value);
+        } else if (keys[base].equals("images")) {
+          setIds = append(setIds, setCount++, (int) value);
+        }
+      } else if ((level == 3 && !isArray[base])
+                 || (level == 4 && isArray[base] && indices[base] <= 1)) {
+        // the sizes of an image or of a named resolution set; in the 
+        // second dictionary of the "[{sets}, {images}]" format an image 
+        // may list its sizes instead of naming a set 
+        entry = append(entry, entryCount++, (int) value);
+      }
+    }
+    nextValue();
+  }
+
+  /* (non-Javadoc)
+   * @see de.eckhartarnold.client.IncrementalJSONParser.Handler#startArray()
+   */
+  public void startArray() {
+    startContainer(true);
+  }
+
+  /* (non-Javadoc)
+   * @see de.eckhartarnold.client.IncrementalJSONParser.Handler#startObject()
+   */
+  public void startObject() {
+    startContainer(false);
+  }
+
+  /* (non-Javadoc)
+   * @see de.eckhartarnold.client.IncrementalJSONParser.Handler#stringValue(java.lang.String)
+   */
+  public void stringValue(String value) {
+    String section = section();
+    int level = depth - base + 1;
+    if (level == 1) {
+      if (section.equals(FILENAMES) && isArray[depth]) {
+        filenames.add(value);
+      } else if (section.equals(DIRECTORIES) && isArray[depth]) {
+        directories.add(value);
+      } else if (section.equals(CAPTIONS) && !isArray[depth]) {
+        captions.put(keys[depth], value);
+      } else if (section.equals(INFO) && !isArray[depth]) {
+        info.put(keys[depth], value);
+      }
+    } else if (level == 2 && section.equals(RESOLUTIONS) && isArray[base]
+               && indices[base] == 1) {
+      // an image that refers to a named resolution set
+      Integer id = setsByName.get(value);
+      if (id == null) throw new JSONException("unknown resolution set " + value);
+      imageSets.put(keys[depth], id);
+    }
+    nextValue();
+  }
+
+  private static int[] append(int[] array, int index, int value) {
+    if (index == array.length) {
+      int[] larger = new int[array.length * 2];
+      System.arraycopy(array, 0, larger, 0, index);
+      array = larger;
+    }
+    array[index] = value;
+    return array;
+  }
+
+  /**
+   * Merges the sizes that have just been read with an equal resolution set
+   * or adds them as a new set to the table.
+   *
+   * @return the id of the resolution set
+   */
+  private int addEntry() {
+    if (steps == 0) steps = entryCount / 2;
+    if (entryCount != steps * 2) {
+      throw new JSONException("all images must have the same number of " +
+          "size steps");
+    }
+    StringBuilder content = new StringBuilder();
+    for (int i = 0; i < entryCount; i++) content.append(entry[i]).append(',');
+    entryCount = 0;
+    String key = content.toString();
+    Integer id = setsByContent.get(key);
+    if (id == null) {
+      id = dimCount / (steps * 2);
+      for (int i = 0; i < steps * 2; i++) dims = append(dims, dimCount++, entry[i]);
+      setsByContent.put(key, id);
+    }
+    return id;
+  }
+
+  private void endContainer() {
+    int level = depth - base + 1;
+    if (entryCount > 0 && section().equals(RESOLUTIONS)) {
+      if (level == 2 && !isArray[base]) {
+        imageSets.put(keys[base], addEntry());
+      } else if (level == 3 && isArray[base] && indices[base] == 0) {
+        setsByName.put(keys[base+1], addEntry());
+      } else if (level == 3 && isArray[base] && indices[base] == 1) {
+        imageSets.put(keys[base+1], addEntry());
+      }
+    }
+    depth--;
+    nextValue();
+  }
+
+  /** Counts the values of an array */
+  private void nextValue() {
+    if (depth > 0 && isArray[depth]) indices[depth]++;
+  }
+
+  /** Returns the name of the section that is being read */
+  private String section() {
+    if (base == 1) return kind;
+    return (depth >= 1 && keys[1] != null) ? keys[1] : "";
+  }
+
+  private void startContainer(boolean array) {
+    depth++;
+    if (depth == keys.length) {
+      String[] largerKeys = new String[depth * 2];
+      int[] largerIndices = new int[depth * 2];
+      boolean[] largerIsArray = new boolean[depth * 2];
+      System.arraycopy(keys, 0, largerKeys, 0, depth);
+      System.arraycopy(indices, 0, largerIndices, 0, depth);
+      System.arraycopy(isArray, 0, largerIsArray, 0, depth);
+      keys = largerKeys;
+      indices = largerIndices;
+      isArray = largerIsArray;
+    }
+    keys[depth] = null;
+    indices[depth] = 0;
+    isArray[depth] = array;
+    if (depth == base) {
+      String section = section();
+      sections.add(section);
+      if (section.equals(DIRECTORIES)) directories = new ArrayList<String>();
+      else if (section.equals(FILENAMES)) filenames = new ArrayList<String>();
+      else if (section.equals(CAPTIONS)) captions = new HashMap<String, String>();
+      else if (section.equals(INFO)) info = new HashMap<String, String>();
+    }
+  }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2008 Eckhart Arnold (eckhart_arnold@hotmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package de.eckhartarnold.client;
+
+import com.google.gwt.core.client.GWT;
+import com.google.gwt.core.client.JsArrayNumber;
+
+/**
+ * Estimates the throughput of the network connection from the images that
+ * have been loaded, so that the size of the following images can be chosen
+ * to load in time.
+ *
+ * <p>For every loaded image the number of transferred bytes and the time
+ * of the transfer are taken from the Resource Timing API of the browser.
+ * The transfer time ends when the last byte has arrived, so that the time
+ * for decoding a large image is not mistaken for a slow network. Both the
+ * throughput in bytes per millisecond and the number of bytes per pixel of
+ * the images are averaged with an exponentially weighted moving average.
+ * The latter is needed to predict the file size of an image of which only
+ * the width and height are known.
+ *
+ * <p>If the browser does not support the Resource Timing API or if the
+ * server does not permit reading the timing of the images, the file size
+ * is estimated from the number of pixels and the load time as measured by
+ * the caller is used instead.
+ *
+ * @author eckhart
+ */
+public class BandwidthEstimator {
+  /** weight of a new sample in the moving averages */
+  static final double WEIGHT = 0.3;
+  /** bytes per pixel that are assumed before the first measurement */
+  static final double DEFAULT_BYTES_PER_PIXEL = 0.25;
+  /** transfers faster than this are assumed to come from the cache */
+  static final double MIN_SAMPLE_MILLIS = 10;
+
+  private double throughput = -1.0;  // bytes per millisecond
+  private double bytesPerPixel = DEFAULT_BYTES_PER_PIXEL;
+  private int    samples = 0;
+
+  /**
+   * Returns the time it will probably take to load an image of the given
+   * size.
+   *
+   * @param width   the width of the image
+   * @param height  the height of the image
+   * @return the expected loading time in milliseconds or 0, if there is
+   *         no estimate, yet
+   */
+  public double expectedMillis(int width, int height) {
+    if (throughput <= 0) return 0;
+    return (double) width * height * bytesPerPixel / throughput;
+  }
+
+  /**
+   * Returns the averaged number of bytes per pixel of the images.
+   *
+   * @return the bytes per pixel
+   */
+  public double getBytesPerPixel() {
+    return bytesPerPixel;
+  }
+
+  /**
+   * Returns the number of measurements the estimate is based on.
+   *
+   * @return the number of samples
+   */
+  public int getSamples() {
+    return samples;
+  }
+
+  /**
+   * Returns the estimated throughput of the connection.
+   *
+   * @return the throughput in bytes per millisecond (i.e. kB/s) or -1,
+   *         if there is no estimate, yet
+   */
+  public double getThroughput() {
+    return throughput;
+  }
+
+  /**
+   * Adds the measurement of a loaded image to the estimate. Images that
+   * have been taken from the cache are ignored.
+   *
+   * @param url            the URL of the image
+   * @param width          the width of the image
+   * @param height         the height of the image
+   * @param elapsedMillis  the time between requesting the image and its
+   *                       load event
+   */
+  public void record(String url, int width, int height, double elapsedMillis) {
+    double pixels = (double) width * height;
+    double bytes, millis;
+    JsArrayNumber timing = getTiming(url);
+    if (timing != null) {
+      bytes = timing.get(0);
+      millis = timing.get(1);
+      if (bytes <= 0 || millis < MIN_SAMPLE_MILLIS) return;
+      if (pixels > 0) bytesPerPixel = average(bytesPerPixel, bytes / pixels);
+    } else {
+      bytes = pixels * bytesPerPixel;
+      millis = elapsedMillis;
+      if (bytes <= 0 || millis < MIN_SAMPLE_MILLIS) return;
+    }
+    double sample = bytes / millis;
+    throughput = (throughput < 0) ? sample : average(throughput, sample);
+    samples++;
+    GWT.log("BandwidthEstimator: " + Math.round(sample) + " bytes/ms, " +
+        "estimate: " + Math.round(throughput) + " bytes/ms");
+  }
+
+  private static double average(double estimate, double sample) {
+    return WEIGHT * sample + (1.0 - WEIGHT) * estimate;
+  }
+
+  /**
+   * Reads the number of transferred bytes and the transfer time of the
+   * last request for <code>url</code> from the Resource Timing API.
+   *
+   * @return an array with the bytes and the milliseconds or
+   *         <code>null</code>, if no (usable) timing is available
+   */
+  private static native JsArrayNumber getTiming(String url) /*-{
+    var perf = $wnd.performance;
+    if (!perf || !perf.getEntriesByName) return null;
+    var entries = perf.getEntriesByName(url);
+    if (!entries || entries.length == 0) return null;
+    var entry = entries[entries.length - 1];
+    if (perf.clearResourceTimings &&
+        perf.getEntriesByType("resource").length > 200) {
+      perf.clearResourceTimings();  // the buffer of the browser is limited
+    }
+    if (typeof entry.transferSize != "number") return null;
+    if (entry.transferSize == 0) {
+      // taken from the cache or timing not allowed by the server
+      return entry.encodedBodySize > 0 ? [0, 0] : null;
+    }
+    var start = entry.requestStart > 0 ? entry.requestStart : entry.startTime;
+    return [entry.transferSize, entry.responseEnd - start];
+  }-*/;
+}
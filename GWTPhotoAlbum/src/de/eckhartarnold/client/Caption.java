@@ -17,6 +17,7 @@
 package de.eckhartarnold.client;
 
 import java.lang.String;
+import com.google.gwt.user.client.Command;
 import com.google.gwt.user.client.ui.Composite;
 import com.google.gwt.user.client.ui.HTML;
 import com.google.gwt.safehtml.shared.SafeHtml;
@@ -37,7 +38,7 @@ public class Caption extends Composite implements SlideshowListener,
   public static final int  NO_SPACING = 0, TOP_SPACING = 1, BOTTOM_SPACING = 2; 
   
   private Slideshow  slideshow;
-  private SafeHtml[] captions;
+  private Captions   captions;
   private SafeHtml[] stuffings;
   private HTML       htmlLabel;
   private int        fontSize;
@@ -58,7 +59,21 @@ public class Caption extends Composite implements SlideshowListener,
    *                  number of images in the slide show.
    */
   public Caption(Slideshow slideshow, SafeHtml[] captions) {
-    assert slideshow.size() == captions.length;
+    this(slideshow, new Captions(captions));
+  }
+  
+  /**
+   * Creates a new <code>Caption</code> object from a {@link Captions} 
+   * object. Captions are sanitized only when the respective slide is
+   * shown.
+   *   
+   * @param slideshow the <code>Slideshow</code> for which the captions are
+   *                  to be displayed
+   * @param captions  the captions. The number of captions must be the same
+   *                  as number of images in the slide show.
+   */
+  public Caption(Slideshow slideshow, Captions captions) {
+    assert slideshow.size() == captions.size();
 
     this.slideshow = slideshow;
     this.captions = captions;
@@ -71,6 +86,7 @@ public class Caption extends Composite implements SlideshowListener,
     initWidget(htmlLabel);
     onResized();
     slideshow.addSlideshowListener(this);
+    watchCaptions();
   }  
   
   /**
@@ -94,6 +110,7 @@ public class Caption extends Composite implements SlideshowListener,
     htmlLabel.setHTML(getText());    
     onResized();
     slideshow.addSlideshowListener(this);  
+    watchCaptions();
   }
   
 //  /**
@@ -108,6 +125,15 @@ public class Caption extends Composite implements SlideshowListener,
 //    return copy;
 //  }  
   
+  /**
+   * Returns the captions from which the caption text is taken.
+   *
+   * @return the captions
+   */
+  public Captions getCaptions() {
+    return captions;
+  }
+
   /**
    * Returns the font size of the caption.
    * 
@@ -138,14 +164,14 @@ public class Caption extends Composite implements SlideshowListener,
       SafeHtmlBuilder builder = new SafeHtmlBuilder();
       if (spacing == BOTTOM_SPACING) {
         builder.append(stuffings[current]);
-        builder.append(captions[current]);
+        builder.append(captions.get(current));
         return builder.toSafeHtml();
       } else if (spacing == TOP_SPACING) {
-        builder.append(captions[current]);        
+        builder.append(captions.get(current));        
         builder.append(stuffings[current]);
         return builder.toSafeHtml();        
       } else {
-        return captions[current];
+        return captions.get(current);
       } 
     }
   }
@@ -224,24 +250,31 @@ public class Caption extends Composite implements SlideshowListener,
   } 
 
   
+  /**
+   * Updates the spacers and the caption text when the captions arrive,
+   * if they have not been loaded yet. To be called by the constructors.
+   */
+  private void watchCaptions() {
+    if (!captions.isLoaded()) {
+      captions.addLoadedCommand(new Command() {
+        public void execute() {
+          setupSpacers();
+          htmlLabel.setHTML(getText());
+        }
+      });
+    }
+  }
+
   /**
    * Initializes the fields <code>stuffings, spacer, emptySpacer</code>
    * with spacers (concatenations of "<br />&nbsp;"). To be called by
    * the constructor.
    */
   private void setupSpacers() {
-    int[] lineBreaks = new int[captions.length];
+    int[] lineBreaks = new int[captions.size()];
     int maxLineBreaks = 0;
-    for (int k = 0; k < captions.length; k++) {
-      String cap = captions[k].asString();
-      int i = 0, count = 0;
-      while (i < cap.length() && i >= 0) {
-        i = cap.indexOf("<br", i);
-        if (i >= 0) {
-          count++;
-          i++;
-        }
-      }
+    for (int k = 0; k < lineBreaks.length; k++) {
+      int count = captions.lineBreaks(k);
       lineBreaks[k] = count;
       if (count > maxLineBreaks) maxLineBreaks = count;
     }
@@ -252,8 +285,8 @@ public class Caption extends Composite implements SlideshowListener,
     spacer = new OnlyToBeUsedInGeneratedCodeStringBlessedAsSafeHtml(
         brCascade[brCascade.length-1]);
     emptySpacer = new OnlyToBeUsedInGeneratedCodeStringBlessedAsSafeHtml("");
-    stuffings = new SafeHtml[captions.length];
-    for (int k = 0; k < captions.length; k++) {
+    stuffings = new SafeHtml[lineBreaks.length];
+    for (int k = 0; k < lineBreaks.length; k++) {
       stuffings[k] =  new OnlyToBeUsedInGeneratedCodeStringBlessedAsSafeHtml(
           brCascade[maxLineBreaks-lineBreaks[k]]);
     }    
@@ -16,6 +16,7 @@
 
 package de.eckhartarnold.client;
 
+import com.google.gwt.user.client.Command;
 import com.google.gwt.user.client.ui.Widget;
 import com.google.gwt.user.client.ui.PopupPanel;
 
@@ -65,6 +66,15 @@ public class CaptionOverlay implements SlideshowListener,
     caption.addStyleDependentName("overlay");
     init(caption, baseWidget, slideshow, position);
     slideshow.addSlideshowListener(this);    
+    if (!caption.getCaptions().isLoaded()) {
+      // the caption objects register their commands first and will thus
+      // already contain the new text when the overlay is refreshed
+      caption.getCaptions().addLoadedCommand(new Command() {
+        public void execute() {
+          refresh();
+        }
+      });
+    }
   }
   
   /**
@@ -214,6 +224,18 @@ public class CaptionOverlay implements SlideshowListener,
     }
   }
 
+  /**
+   * Shows the popup again after the caption text has changed while
+   * the same slide is being displayed.
+   */
+  private void refresh() {
+    if (shadow != null) shadow.refresh();
+    popup.hide();
+    if (baseWidget.isAttached() && !caption.isEmpty()) {
+      popup.setPopupPositionAndShow(this);
+    }
+  }
+
   /**
    * An initialization function that contains code that would otherwise be
    * common to several constructors.
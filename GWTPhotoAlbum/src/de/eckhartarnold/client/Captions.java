@@ -0,0 +1,223 @@
+/*
+ * Copyright 2008 Eckhart Arnold (eckhart_arnold@hotmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package de.eckhartarnold.client;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import com.google.gwt.safehtml.shared.OnlyToBeUsedInGeneratedCodeStringBlessedAsSafeHtml;
+import com.google.gwt.safehtml.shared.SafeHtml;
+import com.google.gwt.user.client.Command;
+
+/**
+ * The captions of the images of an image collection.
+ *
+ * <p><code>Captions</code> can be used like an array of safe HTML strings,
+ * the order of which corresponds to that of the images. Other than an array
+ * the captions are only sanitized (see {@link ExtendedHtmlSanitizer}) when
+ * they are requested for the first time. The sanitized captions are
+ * cached, so that each caption is sanitized at most once. This way no
+ * time is spent on sanitizing the captions of large image collections
+ * when the album is started.
+ *
+ * <p>The captions may also arrive later than the image names. Until then
+ * every caption is treated like the caption of an image that has not been
+ * loaded yet. Widgets that display captions can register a command with
+ * {@link #addLoadedCommand(Command)} in order to be notified when the
+ * captions arrive.
+ *
+ * @author eckhart
+ */
+public class Captions {
+  private static final SafeHtml EMPTY =
+      new OnlyToBeUsedInGeneratedCodeStringBlessedAsSafeHtml("");
+
+  private String[]                imageNames;
+  private HashMap<String, String> captionDictionary;
+  private SafeHtml[]              cache;
+  private ArrayList<Command>      loadedCommands;
+
+  /**
+   * Creates the captions for a list of images from a dictionary that
+   * maps image names to (not yet sanitized) captions. Images that are
+   * not contained in the dictionary have an empty caption. Both the list
+   * and the dictionary may still be filled later on, as long as the 
+   * entries for an image are complete when its name is entered into
+   * the list.
+   *
+   * @param imageNames         the names of the images
+   * @param captionDictionary  a dictionary that maps image names to the
+   *                           raw HTML text of their captions or
+   *                           <code>null</code>, if the captions have not
+   *                           been loaded yet (see
+   *                           {@link #setDictionary(HashMap)})
+   */
+  public Captions(String[] imageNames,
+      HashMap<String, String> captionDictionary) {
+    this.imageNames = imageNames;
+    this.captionDictionary = captionDictionary;
+  }
+
+  /**
+   * Creates the captions from an array of already sanitized captions.
+   *
+   * @param captions  the captions of the images
+   */
+  public Captions(SafeHtml[] captions) {
+    this.imageNames = new String[captions.length];
+    this.captionDictionary = new HashMap<String, String>();
+    this.cache = captions;
+  }
+
+  /**
+   * Registers a command that is executed when the captions have been
+   * loaded with {@link #setDictionary(HashMap)}. If the captions are
+   * already loaded, the command will never be executed.
+   *
+   * @param command  the command
+   */
+  public void addLoadedCommand(Command command) {
+    if (loadedCommands == null) loadedCommands = new ArrayList<Command>();
+    loadedCommands.add(command);
+  }
+
+  /**
+   * Returns the (sanitized) caption of an image. If an image does not have
+   * a caption, an empty string is returned.
+   *
+   * @param index  the index of the image
+   * @return the caption of the image
+   */
+  public SafeHtml get(int index) {
+    if (cache == null) cache = new SafeHtml[imageNames.length];
+    SafeHtml caption = cache[index];
+    if (caption == null) {
+      String raw = getRaw(index);
+      if (raw == null) {
+        // the caption is not cached, if it has not been loaded yet
+        if (!isAvailable(index)) return EMPTY;
+        caption = EMPTY;
+      } else {
+        caption = ExtendedHtmlSanitizer.sanitizeHTML(raw);
+      }
+      cache[index] = caption;
+    }
+    return caption;
+  }
+
+  /**
+   * Returns true, if the caption of an image has been loaded.
+   *
+   * @param index  the index of the image
+   * @return true, if the caption of the image is available
+   */
+  public boolean isAvailable(int index) {
+    return captionDictionary != null && imageNames[index] != null;
+  }
+
+  /**
+   * Returns true, if the captions have been loaded, i.e. if the captions
+   * of all images that have been loaded so far are available.
+   *
+   * @return true, if the captions have been loaded
+   */
+  public boolean isLoaded() {
+    return captionDictionary != null;
+  }
+
+  /**
+   * Returns true, if the caption of an image is empty. The caption does not
+   * need to be sanitized for this.
+   *
+   * If the image or the captions have not been loaded yet, false is
+   * returned, because the image may still turn out to have a caption.
+   *
+   * @param index  the index of the image
+   * @return true, if the image has no caption or an empty caption
+   */
+  public boolean isEmpty(int index) {
+    if (cache != null && cache[index] != null) {
+      return cache[index].asString().length() == 0;
+    }
+    if (!isAvailable(index)) return false;
+    String raw = getRaw(index);
+    // the sanitizer removes newline characters and nothing else
+    return raw == null || raw.replace("\n", "").length() == 0;
+  }
+
+  /**
+   * Returns the number of line breaks that the caption of an image
+   * contains. The caption does not need to be sanitized for this.
+   *
+   * @param index  the index of the image
+   * @return the number of line breaks in the caption
+   */
+  public int lineBreaks(int index) {
+    String cap, lineBreak;
+    if (cache != null && cache[index] != null) {
+      cap = cache[index].asString();
+      lineBreak = "<br";
+    } else {
+      cap = getRaw(index);
+      if (cap == null) return 0;
+      // only these two forms survive sanitizing as line breaks
+      cap = cap.replace("\n", "").replace("<br />", "<br>");
+      lineBreak = "<br>";
+    }
+    int i = 0, count = 0;
+    while (i < cap.length() && i >= 0) {
+      i = cap.indexOf(lineBreak, i);
+      if (i >= 0) {
+        count++;
+        i++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Returns the number of captions, i.e. the number of images.
+   *
+   * @return the number of captions
+   */
+  public int size() {
+    return imageNames.length;
+  }
+
+  /**
+   * Enters the captions, if they have not been available when the
+   * <code>Captions</code> object was created, and executes the commands
+   * that have been registered with {@link #addLoadedCommand(Command)}.
+   *
+   * @param captionDictionary  a dictionary that maps image names to the
+   *                           raw HTML text of their captions
+   */
+  public void setDictionary(HashMap<String, String> captionDictionary) {
+    assert this.captionDictionary == null : "captions already loaded!";
+    this.captionDictionary = captionDictionary;
+    if (loadedCommands != null) {
+      ArrayList<Command> commands = loadedCommands;
+      loadedCommands = null;
+      for (Command command: commands) command.execute();
+    }
+  }
+
+  private String getRaw(int index) {
+    if (captionDictionary == null) return null;
+    return captionDictionary.get(imageNames[index]);
+  }
+}
@@ -34,6 +34,12 @@ public class Compatibility {
   static final boolean oldIE;
   /** true, if the browser supports shadowed text */
   static final boolean supportsTextShadow;
+  /** true, if images can be decoded before they are displayed */
+  static final boolean supportsImageDecode;
+  /** true, if the browser supports (unprefixed) CSS transitions */
+  static final boolean supportsCssTransitions;
+  /** true, if the browser picks images from "srcset" and "sizes" */
+  static final boolean supportsSrcset;
   
   static {
     int i = isInternetExplorer(); 
@@ -44,6 +50,10 @@ public class Compatibility {
       supportsTextShadow = true;
     else
       supportsTextShadow = false;
+    
+    supportsImageDecode = checkSupportsImageDecode();
+    supportsCssTransitions = checkSupportsCssTransitions();
+    supportsSrcset = checkSupportsSrcset();
   }
   
   /**
@@ -74,6 +84,29 @@ public class Compatibility {
     }
   }
     
+  /**
+   * Returns the number of device pixels per CSS pixel of the screen. The
+   * ratio may change, e.g. when the page is zoomed or the window is moved
+   * to another screen.
+   * @return the device pixel ratio or 1.0, if the browser does not know it
+   */
+  static native double getDevicePixelRatio() /*-{
+    return $wnd.devicePixelRatio > 0 ? $wnd.devicePixelRatio : 1.0;
+  }-*/;
+  
+  /**
+   * Checks whether the user has asked the browser to reduce the data 
+   * usage, either with the "Save-Data" setting or with the 
+   * "prefers-reduced-data" media feature.
+   * @return true, if data shall be saved
+   */
+  static native boolean prefersSaveData() /*-{
+    var connection = $wnd.navigator.connection;
+    if (connection && connection.saveData) return true;
+    return !!($wnd.matchMedia && 
+              $wnd.matchMedia("(prefers-reduced-data: reduce)").matches);
+  }-*/;
+  
   /**
    * Checks, if the browser used is the Microsoft Internet Explorer.
    * @return  Internet Explorer version or 0 if the browser used is not
@@ -94,6 +127,33 @@ public class Compatibility {
 //    return 0;      
 
   
+  /**
+   * Checks whether the browser supports CSS transitions and the 
+   * "transitionend" event without vendor prefixes.
+   * @return true, if CSS transitions are supported
+   */
+  private static native boolean checkSupportsCssTransitions() /*-{
+    return "transition" in $doc.documentElement.style;
+  }-*/;
+  
+  /**
+   * Checks whether the browser supports the attributes "srcset" with width
+   * descriptors and "sizes" of image elements.
+   * @return true, if the browser can pick the image size itself
+   */
+  private static native boolean checkSupportsSrcset() /*-{
+    var img = $doc.createElement("img");
+    return "srcset" in img && "sizes" in img;
+  }-*/;
+  
+  /**
+   * Checks whether the browser supports <code>HTMLImageElement.decode()</code>.
+   * @return true, if images can be decoded before they are displayed
+   */
+  private static native boolean checkSupportsImageDecode() /*-{
+    return typeof $doc.createElement("img").decode == "function";
+  }-*/;
+  
   /**
    * Checks whether the browser is new enough to support shadowed text.
    * The implementation of this method is OUTDATED
@@ -25,6 +25,7 @@ import com.google.gwt.event.logical.shared.ResizeHandler;
 import com.google.gwt.user.client.Window;
 import com.google.gwt.user.client.ui.Button;
 import com.google.gwt.user.client.ui.DialogBox;
+import com.google.gwt.user.client.ui.HorizontalPanel;
 import com.google.gwt.user.client.ui.InlineHTML;
 // import com.google.gwt.user.client.ui.Label;
 // import com.google.gwt.user.client.ui.RootPanel;
@@ -59,6 +60,8 @@ public class Debugger implements ResizeHandler {
   /** the master panel containing the scroll panel and the
    * close button*/
   protected static VerticalPanel panel;
+  /** the button that prints the frame statistics */
+  protected static Button        framesButton;
   /** flag to indicate whether the debugger was closed by the user */
   protected static boolean       closedManually = false;
   private   static int           width = 0, height = 0;
@@ -96,6 +99,16 @@ public class Debugger implements ResizeHandler {
       console.log(txt);
   }-*/;
 
+  /**
+   * Prints the statistics of the frame times of the animations 
+   * (see {@link FrameStats}) in the debugger window.
+   */
+  public static void printFrameStats() {
+    for (String line: FrameStats.getReport().split("\n")) {
+      print(line);
+    }
+  }
+
   /**
    * Sets the size of the debugger
    * @param width  the width of the debugger in pixel
@@ -158,7 +171,15 @@ public class Debugger implements ResizeHandler {
         closedManually = true;
       }
     });
-    panel.add(closeButton);
+    framesButton = new Button("frames", new ClickHandler() {
+      public void onClick(ClickEvent event) {
+        printFrameStats();
+      }
+    });
+    HorizontalPanel buttons = new HorizontalPanel();
+    buttons.add(closeButton);
+    buttons.add(framesButton);
+    panel.add(buttons);
     dialog.setWidget(panel);
     snapRight = true;
     snapBottom = true;
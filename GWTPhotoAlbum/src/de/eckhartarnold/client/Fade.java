@@ -16,14 +16,28 @@
 package de.eckhartarnold.client;
 
 import com.google.gwt.animation.client.Animation;
-//import com.google.gwt.dom.client.Element;
+import com.google.gwt.core.client.JavaScriptObject;
+import com.google.gwt.dom.client.Element;
 import com.google.gwt.dom.client.Style;
+import com.google.gwt.user.client.Timer;
 import com.google.gwt.user.client.ui.Widget;
 
 /**
  * Provides a special kind of animation that lets 
  * a widget fade in or fade out.
  * 
+ * <p>If the browser supports CSS transitions, the fading is left to a
+ * single CSS opacity transition, which the browser can run on the 
+ * compositor without any work on the main thread during the fading. The 
+ * end of the transition is signaled by the "transitionend" event, so that
+ * <code>onComplete</code> and <code>onCancel</code> are called just like 
+ * at the end of an animation. Older browsers (see {@link Compatibility})
+ * fade the widget by changing its opacity on every animation frame.
+ * 
+ * <p>With CSS transitions, the widget can also be moved or scaled while 
+ * it is faded (see <code>setTransformSpan</code>). This is used by the
+ * effects of {@link Transition}. Older browsers only fade the widget.
+ * 
  * @author eckhart
  */
 class Fade extends Animation {
@@ -38,14 +52,29 @@ class Fade extends Animation {
     
     Style  style = widget.getElement().getStyle();
     String opStr = String.valueOf(opacity);
-    String ieOpStr = String.valueOf((int) (opacity*100+0.5));
         
     style.setProperty("opacity", opStr);
-    style.setProperty("MozOpacity", opStr);
-    style.setProperty("KhtmlOpacity", opStr);
-    style.setProperty("filter", "alpha(opacity=" + ieOpStr + ")");
+    if (!Compatibility.supportsCssTransitions) {
+      // browsers that are old enough to need these
+      String ieOpStr = String.valueOf((int) (opacity*100+0.5));
+      style.setProperty("MozOpacity", opStr);
+      style.setProperty("KhtmlOpacity", opStr);
+      style.setProperty("filter", "alpha(opacity=" + ieOpStr + ")");
+    }
   }    
   
+  /**
+   * Removes any CSS transition and transformation from a widget, e.g.
+   * before it is used for another image.
+   * @param widget  the widget
+   */
+  public static void reset(Widget widget) {
+    Style style = widget.getElement().getStyle();
+    style.setProperty("transition", "");
+    style.setProperty("transform", "");
+    style.setProperty("willChange", "");
+  }
+  
 //  public static void setOpacity(Widget widget, double opacity) {
 //    setOpacityJS(widget.getElement(), (int) (opacity*100+0.5));
 //  }
@@ -63,6 +92,15 @@ class Fade extends Animation {
   protected Widget  widget;
   private boolean   completeOnCancel = true;
   
+  // state of a running CSS transition
+  private boolean          transitionRunning = false;
+  private JavaScriptObject transitionEndListener = null;
+  private Timer            transitionTimer = null;
+  private String           fromTransform = null, toTransform = null;
+  private int              transformDuration = 0;
+  private String           moving = "";  // transition of the transformation
+  private FrameStats.Probe probe = FrameStats.probe(FrameStats.FADE);
+  
   /**
    * Default constructor for class <code>Fade</code>. The default
    * constructor takes the widget to fade as argument. 
@@ -110,6 +148,91 @@ class Fade extends Animation {
     setFadingSpan(from, to, threshold);
   }  
   
+  /**
+   * Cancels the fading. If the fading is done by a CSS transition, the
+   * opacity is either set to its final value or frozen at its current 
+   * value, depending on <code>setCompleteOnCancel</code>.
+   */
+  @Override
+  public void cancel() {
+    if (transitionRunning) {
+      if (!completeOnCancel) {
+        double opacity = computedOpacity(widget.getElement());
+        if (opacity >= 0.0 && opacity <= 1.0) changeOpacity(opacity);
+      }
+      stopTransition();
+      onCancel();
+    } else {
+      super.cancel();
+    }
+  }
+  
+  /* (non-Javadoc)
+   * @see com.google.gwt.animation.client.Animation#isRunning()
+   */
+  @Override
+  public boolean isRunning() {
+    return transitionRunning || super.isRunning();
+  }
+  
+  /**
+   * Starts the fading. If CSS transitions are supported, the fading always
+   * starts immediately and <code>startTime</code> and <code>element</code>
+   * are ignored.
+   * 
+   * @param duration   the duration of the fading in milliseconds
+   * @param startTime  the time at which the animation should start
+   * @param element    the element that visually bounds the animation
+   */
+  @Override
+  public void run(int duration, double startTime, Element element) {
+    if (!Compatibility.supportsCssTransitions) {
+      probe.finish();
+      super.run(duration, startTime, element);
+      return;
+    }
+    cancel();
+    Element fading = widget.getElement();
+    Style style = fading.getStyle();
+    // a slow movement of the widget that is still going on is continued,
+    // unless this fading moves the widget itself
+    moving = style.getProperty("transition");
+    if (moving == null || !moving.startsWith("transform") || 
+        fromTransform != null) {
+      moving = "";
+    }
+    style.setProperty("transition", moving.isEmpty() ? "none" : moving);
+    changeOpacity(from);
+    if (fromTransform != null) style.setProperty("transform", fromTransform);
+    computedOpacity(fading);  // the transition must start from "from"
+    transitionRunning = true;
+    if (duration <= 0 || (from == to && toTransform == null)) {
+      finishTransition();
+      return;
+    }
+    if (toTransform != null) {
+      moving = "transform " + (transformDuration > 0 ? transformDuration : 
+                               duration) + "ms ease-out";
+    }
+    String transition = "opacity " + duration + "ms linear";
+    if (!moving.isEmpty()) transition += ", " + moving;
+    style.setProperty("willChange", moving.isEmpty() ? "opacity" : 
+                                    "opacity, transform");
+    style.setProperty("transition", transition);
+    listen(fading, from != to ? "opacity" : "transform");
+    // no "transitionend" event will come, if the widget is not displayed
+    transitionTimer = new Timer() {
+      @Override
+      public void run() {
+        finishTransition();
+      }
+    };
+    transitionTimer.schedule(duration + 100);
+    probe.sample(duration);
+    changeOpacity(to);
+    if (toTransform != null) style.setProperty("transform", toTransform);
+  }
+  
   /**
    * Turns completion of fading when fading is canceled on or off. 
    * If the parameter <code>on</code> is true, the opacity will be set to 
@@ -121,6 +244,22 @@ class Fade extends Animation {
     completeOnCancel = on; 
   }
   
+  /**
+   * Lets the widget be transformed while it is faded, if the browser 
+   * supports CSS transitions. The transformation may take longer than the
+   * fading, in which case it continues after the fading has completed.
+   * 
+   * @param from      the CSS transformation to start with
+   * @param to        the final CSS transformation
+   * @param duration  the duration of the transformation in milliseconds
+   *                  or 0 for the duration of the fading
+   */
+  void setTransformSpan(String from, String to, int duration) {
+    fromTransform = from;
+    toTransform = to;
+    transformDuration = duration;
+  }
+  
   /**
    * Sets the range of opacity values over which the widget shall be faded.
    * The opacity values must always be >= 0.0 and <= 1.0.
@@ -156,6 +295,8 @@ class Fade extends Animation {
   protected void onCancel() {
     if (completeOnCancel) {
       onComplete();
+    } else {
+      probe.finish();
     }
   }
   
@@ -164,6 +305,7 @@ class Fade extends Animation {
    */
   @Override
   protected void onComplete() {
+    probe.finish();
     changeOpacity(to);
   }
   
@@ -172,9 +314,57 @@ class Fade extends Animation {
    */
   @Override
   protected void onUpdate(double progress) {
+    probe.frame();
     double opacity = from + (to-from)*progress;
     if (Math.abs(opacity - _opacity) > threshold) {
       changeOpacity(opacity);
     }
   }
+  
+  /**
+   * Reads the opacity of an element as it is currently rendered. This
+   * also forces the browser to apply any changed styles.
+   */
+  private static native double computedOpacity(Element element) /*-{
+    return parseFloat($wnd.getComputedStyle(element, null).opacity);
+  }-*/;
+  
+  /** Called when the CSS transition has ended */
+  private void finishTransition() {
+    if (transitionRunning) {
+      stopTransition();
+      onComplete();
+    }
+  }
+  
+  private native void listen(Element element, String property) /*-{
+    var self = this;
+    var listener = $entry(function(event) {
+      if (event.target === element && event.propertyName == property) {
+        self.@de.eckhartarnold.client.Fade::finishTransition()();
+      }
+    });
+    this.@de.eckhartarnold.client.Fade::transitionEndListener = listener;
+    element.addEventListener("transitionend", listener, false);
+  }-*/;
+  
+  private void stopTransition() {
+    transitionRunning = false;
+    Element fading = widget.getElement();
+    unlisten(fading);
+    if (transitionTimer != null) {
+      transitionTimer.cancel();
+      transitionTimer = null;
+    }
+    // a longer transformation is not interrupted
+    fading.getStyle().setProperty("transition", moving);
+    fading.getStyle().setProperty("willChange", 
+                                  moving.isEmpty() ? "" : "transform");
+  }
+  
+  private native void unlisten(Element element) /*-{
+    var listener = this.@de.eckhartarnold.client.Fade::transitionEndListener;
+    if (listener) element.removeEventListener("transitionend", listener, false);
+    this.@de.eckhartarnold.client.Fade::transitionEndListener = null;
+  }-*/;
 }
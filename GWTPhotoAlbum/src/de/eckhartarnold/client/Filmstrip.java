@@ -29,6 +29,7 @@ import com.google.gwt.event.dom.client.MouseOverEvent;
 import com.google.gwt.event.dom.client.MouseOverHandler;
 import com.google.gwt.event.dom.client.MouseUpEvent;
 import com.google.gwt.event.dom.client.MouseUpHandler;
+import com.google.gwt.user.client.Command;
 import com.google.gwt.user.client.ui.AbsolutePanel;
 import com.google.gwt.user.client.ui.Composite;
 import com.google.gwt.user.client.ui.Image;
@@ -60,17 +61,22 @@ public class Filmstrip extends Composite implements ResizeListener {
   
   private class Sliding extends Animation {
     private int displacement, current;
+    private FrameStats.Probe probe = FrameStats.probe(FrameStats.SLIDING);
     public boolean isComplete() {
       return current == 0;
     }
     public void onComplete() {
+      probe.finish();
       if (current != 0) {
         current = 0;
         redraw(0);      
       }
-      thumbnails.get(cursor).setStylePrimaryName("filmstripHighlighted");      
+      if (thumbnails.isAssigned(cursor)) {
+        thumbnails.get(cursor).setStylePrimaryName("filmstripHighlighted");
+      }
     }
     public void onUpdate(double progress) {
+      probe.frame();
       int pos = (int)((1.0-progress) * displacement);
       if (Math.abs(pos - current) >= 10) {   // do not take every small step!
         current = pos;
@@ -79,6 +85,7 @@ public class Filmstrip extends Composite implements ResizeListener {
     }
     public void setDisplacement(int displacement) {
       cancel();
+      probe.finish();
       current = -1;
       this.displacement = displacement;
     }
@@ -90,7 +97,8 @@ public class Filmstrip extends Composite implements ResizeListener {
   private int            filmstripBorderSize = 0; // should be the same as specified in the css-file!!!
   private boolean        isLoaded = false; // true, if the filmstrip is visible
   private int            slidingDuration = 200;
-  private HashSet<Image> visible;
+  private HashSet<Integer> visible;  // indices of the thumbnails on the panel
+  private int[]          offsets = null;  // see method offsets()
   private IPickImage     pickImageCallback;
   
   private final SimplePanel   envelope;
@@ -134,7 +142,7 @@ public class Filmstrip extends Composite implements ResizeListener {
     MouseDownHandler imageMouseDownHandler = new MouseDownHandler() {
       public void onMouseDown(MouseDownEvent event) {
         Widget sender = (Widget) event.getSource();
-        if (pickImageCallback != null && sender != thumbnails.get(cursor)) {
+        if (pickImageCallback != null && !isCursor(sender)) {
           sender.addStyleName("filmstripPressed");
         }        
       }
@@ -143,7 +151,7 @@ public class Filmstrip extends Composite implements ResizeListener {
     MouseOverHandler imageMouseOverHandler = new MouseOverHandler() {
       public void onMouseOver(MouseOverEvent event) {
         Widget sender = (Widget) event.getSource();        
-        if (pickImageCallback != null && sender != thumbnails.get(cursor)) {
+        if (pickImageCallback != null && !isCursor(sender)) {
           sender.addStyleName("filmstripTouched");
         }
       }
@@ -153,7 +161,7 @@ public class Filmstrip extends Composite implements ResizeListener {
     MouseOutHandler imageMouseOutHandler = new MouseOutHandler() {
       public void onMouseOut(MouseOutEvent event) {
         Widget sender = (Widget) event.getSource();
-        if (pickImageCallback != null && sender != thumbnails.get(cursor)) {
+        if (pickImageCallback != null && !isCursor(sender)) {
           sender.removeStyleName("filmstripTouched");
           sender.removeStyleName("filmstripPressed");
         }        
@@ -163,24 +171,34 @@ public class Filmstrip extends Composite implements ResizeListener {
     MouseUpHandler imageMouseUpHandler = new MouseUpHandler() {
       public void onMouseUp(MouseUpEvent event) {
         Widget sender = (Widget) event.getSource();
-        if (pickImageCallback != null && sender != thumbnails.get(cursor)) {
+        if (pickImageCallback != null && !isCursor(sender)) {
           sender.removeStyleName("filmstripPressed");
         }              
       }
     };
     
-    for (int i = 0; i < thumbnails.size(); i++) {
-      Image img = thumbnails.get(i);
-      if (i == cursor) img.setStyleName("filmstripHighlighted");
-      else img.setStyleName("filmstrip");        
-      img.addClickHandler(imageClickHandler);
-      img.addMouseDownHandler(imageMouseDownHandler);
-      img.addMouseOverHandler(imageMouseOverHandler);
-      img.addMouseOutHandler(imageMouseOutHandler); 
-      img.addMouseUpHandler(imageMouseUpHandler);      
-    }
+    final ClickHandler     clickHandler = imageClickHandler;
+    final MouseDownHandler mouseDownHandler = imageMouseDownHandler;
+    final MouseOverHandler mouseOverHandler = imageMouseOverHandler;
+    final MouseOutHandler  mouseOutHandler = imageMouseOutHandler;
+    final MouseUpHandler   mouseUpHandler = imageMouseUpHandler;
+    thumbnails.setDecorator(new Thumbnails.Decorator() {
+      public void decorate(Image img) {
+        img.addClickHandler(clickHandler);
+        img.addMouseDownHandler(mouseDownHandler);
+        img.addMouseOverHandler(mouseOverHandler);
+        img.addMouseOutHandler(mouseOutHandler); 
+        img.addMouseUpHandler(mouseUpHandler);      
+      }
+      public void assign(Image img, int index) {
+        if (index == cursor) img.setStyleName("filmstripHighlighted");
+        else img.setStyleName("filmstrip");
+        if (pickImageCallback != null) img.addStyleDependentName("selectable");
+      }
+      public void discard(Image img) { }
+    });
     
-    visible = new HashSet<Image>();
+    visible = new HashSet<Integer>();
   }
   
   /**
@@ -219,6 +237,7 @@ public class Filmstrip extends Composite implements ResizeListener {
     if (height != this.height && height != 0) {
       this.height = height;      
       thumbnails.adjustToHeight(height-2*borderSize); 
+      offsets = null;
     }
     redraw(0); 
   }
@@ -245,9 +264,12 @@ public class Filmstrip extends Composite implements ResizeListener {
    */
   public void focusImage(int imageNr) { 
     assert imageNr >= 0 && imageNr < thumbnails.size();
+    requestThumbnails(imageNr);
     if (imageNr != cursor || !sliding.isComplete()) {
       sliding.cancel();
-      thumbnails.get(cursor).setStylePrimaryName("filmstrip");
+      if (thumbnails.isAssigned(cursor)) {
+        thumbnails.get(cursor).setStylePrimaryName("filmstrip");
+      }
       if (slidingDuration > 0 && isLoaded) {       
         sliding.setDisplacement(displacement(imageNr));
         int duration = slidingDuration*Math.min(10, Math.abs(imageNr-cursor)); 
@@ -255,7 +277,9 @@ public class Filmstrip extends Composite implements ResizeListener {
         sliding.run(duration);
       } else {
         cursor = imageNr;        
-        thumbnails.get(cursor).setStylePrimaryName("filmstripHighlighted");      
+        if (thumbnails.isAssigned(cursor)) {
+          thumbnails.get(cursor).setStylePrimaryName("filmstripHighlighted");
+        }
         if (height > 0 && isLoaded) redraw(0);
       }
     }
@@ -271,16 +295,10 @@ public class Filmstrip extends Composite implements ResizeListener {
    */
   public void setPickImageCallback(IPickImage callback) {
     pickImageCallback = callback;
-    if (callback != null) {
-      for (int i = 0; i < thumbnails.size(); i++) {
-        Image img = thumbnails.get(i);
-        img.addStyleDependentName("selectable");
-      }
-    } else {
-      for (int i = 0; i < thumbnails.size(); i++) {
-        Image img = thumbnails.get(i);
-        img.removeStyleDependentName("selectable");        
-      }      
+    for (int i: visible) {
+      Image img = thumbnails.get(i);
+      if (callback != null) img.addStyleDependentName("selectable");
+      else img.removeStyleDependentName("selectable");        
     }
   }
    
@@ -303,6 +321,7 @@ public class Filmstrip extends Composite implements ResizeListener {
       onResized();
     } // else prepare resize has already been called!
     isLoaded = true;
+    requestThumbnails(cursor);
     redraw(0);
   }
   
@@ -314,32 +333,41 @@ public class Filmstrip extends Composite implements ResizeListener {
     isLoaded = false;
   }  
   
+  /**
+   * Checks whether a widget is the thumbnail of the focused image.
+   */
+  private boolean isCursor(Widget sender) {
+    return thumbnails.isAssigned(cursor) && sender == thumbnails.get(cursor);
+  }
+  
   /**
    * Moves a thumbnail image to the given position within the widget's 
    * absolute panel. Automatically adds an image to the widget's panel
    * if it was not visible before, or removes it, if it is not visible
    * any more (due to its position lying outside the panel's boundaries). 
+   * The image widget of a thumbnail that is removed is handed back to the 
+   * thumbnails, so that it can be reused.
    * 
    * @param imgIndex the index number of the thumbnail image
    * @param left     the position of the image on the absolute panel
    */
   private void move(int imgIndex, int left) {
-    Image img = thumbnails.get(imgIndex);
     int imgWidth = thumbnails.imageSize(imgIndex)[0];
-    if (visible.contains(img)) {
-      if (left < this.width && left+imgWidth > 0) {
+    boolean onPanel = left < this.width && left+imgWidth > 0;
+    if (visible.contains(imgIndex)) {
+      Image img = thumbnails.get(imgIndex);
+      if (onPanel) {
         panel.setWidgetPosition(img, left, 0);
+        img.removeStyleName("filmstripTouched");
+        img.removeStyleName("filmstripPressed");        
       } else {
         panel.remove(img);      
-        visible.remove(img);
-      }
-      img.removeStyleName("filmstripTouched");
-      img.removeStyleName("filmstripPressed");        
-    } else {
-      if (left < this.width && left+imgWidth > 0) {      
-        panel.add(img, left, 0);
-        visible.add(img);
+        visible.remove(imgIndex);
+        thumbnails.release(imgIndex);
       }
+    } else if (onPanel) {      
+      panel.add(thumbnails.get(imgIndex), left, 0);
+      visible.add(imgIndex);
     }
   }
   
@@ -355,20 +383,65 @@ public class Filmstrip extends Composite implements ResizeListener {
    */
   private int displacement(int slideNr) {
     if (slideNr == cursor) return 0;
-    int delta = 0;
-    delta += thumbnails.imageSize(cursor)[0] / 2;
-    delta += thumbnails.imageSize(slideNr)[0] / 2;
-    if (slideNr > cursor) {
-      for (int i = cursor + 1; i < slideNr; i++) {
-        delta += thumbnails.imageSize(i)[0];
-      }
-      return delta;
-    } else {
-      for (int i = slideNr + 1; i < cursor; i++) {
-        delta += thumbnails.imageSize(i)[0];
+    int[] offsets = offsets();
+    return offsets[slideNr] - offsets[cursor] + 
+        thumbnails.imageSize(slideNr)[0] / 2 - 
+        thumbnails.imageSize(cursor)[0] / 2;
+  }
+  
+  /**
+   * Returns the index of the first entry of the offset table that is 
+   * greater than <code>x</code>.
+   * @param offsets  the offset table
+   * @param x        the position on the film strip
+   * @return the index of the first entry greater than <code>x</code> or
+   *         <code>offsets.length</code>, if there is none
+   */
+  private int firstOffsetAbove(int[] offsets, int x) {
+    int lo = 0, hi = offsets.length;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (offsets[mid] > x) hi = mid;
+      else lo = mid + 1;
+    }
+    return lo;
+  }
+  
+  /**
+   * Returns the table of the positions of the thumbnails on the (whole)
+   * film strip. Entry <code>i</code> is the position of the left edge of 
+   * the frame of thumbnail <code>i</code>, entry <code>size()</code> the
+   * length of the film strip. The table is built when it is needed for 
+   * the first time after the sizes of the thumbnails have changed, so that
+   * redrawing the film strip does not need to add up the widths of all
+   * thumbnails left of the visible ones.
+   * @return the offset table
+   */
+  private int[] offsets() {
+    if (offsets == null) {
+      int n = thumbnails.size();
+      offsets = new int[n + 1];
+      for (int i = 0; i < n; i++) {
+        offsets[i+1] = offsets[i] + thumbnails.imageSize(i)[0] + 2*borderSize;
       }
-      return -delta;
     }
+    return offsets;
+  }
+  
+  /**
+   * Requests the thumbnails around the given image, in case they have not
+   * been loaded yet, and redraws the film strip when they have arrived.
+   * 
+   * @param imageNr  the number of the image in the center
+   */
+  private void requestThumbnails(int imageNr) {
+    thumbnails.requestRange(imageNr - Slideshow.PAGE_LOOKAHEAD, 
+        imageNr + Slideshow.PAGE_LOOKAHEAD + 1, new Command() {
+      public void execute() {
+        offsets = null;  // the sizes of the new thumbnails are known now
+        if (isLoaded && height > 0 && sliding.isComplete()) redraw(0);
+      }
+    });
   }
   
   /**
@@ -383,32 +456,28 @@ public class Filmstrip extends Composite implements ResizeListener {
    *                      positive number in a displacement to the right.)
    */
   private void redraw(int displacement) {
-    int c1, c2;
-    int left, right;
+    int[] offsets = offsets();
     int center = width/2 + displacement;
+    // position of the left end of the (whole) film strip on the panel
+    int origin = center - thumbnails.imageSize(cursor)[0]/2 - borderSize - 
+        offsets[cursor];
+    // the thumbnails from first to last lie (at least partly) on the panel
+    int first = firstOffsetAbove(offsets, borderSize - origin) - 1;
+    int last = firstOffsetAbove(offsets, width - borderSize - origin - 1) - 1;
+    first = Math.max(first, 0);
+    last = Math.min(last, thumbnails.size() - 1);
     
-    int w = thumbnails.imageSize(cursor)[0];
-    move(cursor, center - w/2);
-
-    c1 = cursor-1; 
-    c2 = cursor+1;
-    left = center - w/2 - borderSize;
-    right = center + w/2 + borderSize;
-    
-//    while ((right < width && c2 < thumbnails.size()) ||  
-//        (left >= 0 && c1 >= 0)) {
-    while (c1 >= 0 || c2 < thumbnails.size()) {
-      if (c1 >= 0) {
-        left -= thumbnails.imageSize(c1)[0] + 2*borderSize;
-        move(c1, left + borderSize);
-        c1--;
-      }
-      if (c2 < thumbnails.size()) {
-        move(c2, right + borderSize);
-        right += thumbnails.imageSize(c2)[0] + 2*borderSize;
-        c2++;
+    if (!visible.isEmpty()) {
+      int[] shown = new int[visible.size()];
+      int k = 0;
+      for (int i: visible) shown[k++] = i;
+      for (int i: shown) {
+        if (i < first || i > last) move(i, origin + offsets[i] + borderSize);
       }
     }
+    for (int i = first; i <= last; i++) {
+      move(i, origin + offsets[i] + borderSize);
+    }
   }
 }
 
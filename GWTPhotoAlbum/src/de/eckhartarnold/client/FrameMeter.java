@@ -0,0 +1,186 @@
+/*
+ * Copyright 2008 Eckhart Arnold (eckhart_arnold@hotmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package de.eckhartarnold.client;
+
+import java.util.ArrayList;
+
+import com.google.gwt.animation.client.AnimationScheduler;
+import com.google.gwt.animation.client.AnimationScheduler.AnimationCallback;
+import com.google.gwt.animation.client.AnimationScheduler.AnimationHandle;
+
+/**
+ * Measures the frame times while an animation or transition is running.
+ *
+ * <p>Between <code>start</code> and <code>stop</code> the meter requests
+ * every animation frame from the browser and records the time between two
+ * frames. Frames that take longer than a frame of a 60 Hz display count as
+ * dropped frames, one for every frame period that has been missed.
+ *
+ * <p>All running meters share one request of animation frames, so that 
+ * several meters, e.g. the meter of the image panel and the probe of the
+ * frame statistics (see {@link FrameStats}), do not add up to several
+ * callbacks in every frame.
+ *
+ * @author eckhart
+ */
+public class FrameMeter {
+  /** the duration of a frame at 60 frames per second */
+  public static final double FRAME_MILLIS = 1000.0 / 60.0;
+
+  private static ArrayList<FrameMeter> runningMeters = 
+      new ArrayList<FrameMeter>();
+  private static AnimationHandle handle = null;
+  private static AnimationCallback loop = new AnimationCallback() {
+    public void execute(double timestamp) {
+      handle = null;
+      // meters may be started or stopped while they are called
+      FrameMeter[] meters = 
+          runningMeters.toArray(new FrameMeter[runningMeters.size()]);
+      for (FrameMeter meter: meters) {
+        if (meter.running) meter.addFrame(timestamp);
+      }
+      if (!runningMeters.isEmpty() && handle == null) {
+        handle = AnimationScheduler.get().requestAnimationFrame(this);
+      }
+    }
+  };
+
+  /**
+   * Returns the number of frames that have been dropped in a frame 
+   * interval.
+   *
+   * @param interval  the time between two frames in milliseconds
+   * @return the number of missed frame periods
+   */
+  public static int missedFrames(double interval) {
+    int missed = (int) (interval / FRAME_MILLIS + 0.5) - 1;
+    return missed > 0 ? missed : 0;
+  }
+
+  private boolean         running = false;
+  private double          last = -1.0, total, worst;
+  private int             frames, dropped;
+
+  /**
+   * Returns the average time between two frames of the last measurement.
+   *
+   * @return the average frame time in milliseconds or 0, if no frames have
+   *         been measured
+   */
+  public double getAverageFrameMillis() {
+    return frames > 0 ? total / frames : 0.0;
+  }
+
+  /**
+   * Returns the number of dropped frames of the last measurement.
+   *
+   * @return the number of dropped frames
+   */
+  public int getDroppedFrames() {
+    return dropped;
+  }
+
+  /**
+   * Returns the share of dropped frames of all frames that should have been
+   * shown during the last measurement.
+   *
+   * @return the share of dropped frames between 0.0 and 1.0
+   */
+  public double getDroppedRatio() {
+    return (frames + dropped) > 0 ? (double) dropped / (frames + dropped) : 0.0;
+  }
+
+  /**
+   * Returns the number of measured frames.
+   *
+   * @return the number of frames
+   */
+  public int getFrames() {
+    return frames;
+  }
+
+  /**
+   * Returns the longest time between two frames of the last measurement.
+   *
+   * @return the longest frame time in milliseconds
+   */
+  public double getWorstFrameMillis() {
+    return worst;
+  }
+
+  /**
+   * Returns true, while frames are measured.
+   *
+   * @return true, if the meter is running
+   */
+  public boolean isRunning() {
+    return running;
+  }
+
+  /**
+   * Starts a new measurement.
+   */
+  public void start() {
+    stop();
+    running = true;
+    total = 0.0;
+    worst = 0.0;
+    frames = 0;
+    dropped = 0;
+    runningMeters.add(this);
+    if (handle == null) {
+      handle = AnimationScheduler.get().requestAnimationFrame(loop);
+    }
+  }
+
+  /**
+   * Stops the measurement. The results remain available until the next
+   * measurement is started.
+   */
+  public void stop() {
+    running = false;
+    last = -1.0;
+    runningMeters.remove(this);
+    if (runningMeters.isEmpty() && handle != null) {
+      handle.cancel();
+      handle = null;
+    }
+  }
+
+  /**
+   * Takes the time of a frame. The first frame after <code>start</code>
+   * or <code>stop</code> only marks the beginning of the next interval.
+   *
+   * @param timestamp  the time of the frame in milliseconds
+   */
+  protected void addFrame(double timestamp) {
+    if (last >= 0) record(timestamp - last);
+    last = timestamp;
+  }
+
+  /**
+   * Records the time between two frames.
+   *
+   * @param interval  the frame interval in milliseconds
+   */
+  protected void record(double interval) {
+    frames++;
+    total += interval;
+    worst = Math.max(worst, interval);
+    dropped += missedFrames(interval);
+  }
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright 2008 Eckhart Arnold (eckhart_arnold@hotmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package de.eckhartarnold.client;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+
+import com.google.gwt.core.client.Duration;
+import com.google.gwt.core.client.JavaScriptObject;
+import com.google.gwt.json.client.JSONNumber;
+import com.google.gwt.json.client.JSONObject;
+
+/**
+ * Collects the frame times of the animations of the photo album, so that
+ * the smoothness of the transitions can be judged on real devices.
+ *
+ * <p>The statistics are switched off by default. They can be switched on
+ * with <code>setEnabled</code>, with the field "frame statistics" of the
+ * info file or from JavaScript with
+ * <code>GWTPhotoAlbumFrameStats.enable(true)</code>.
+ *
+ * <p>Every animation obtains a {@link Probe} for its type, which is a
+ * {@link FrameMeter} that adds its frames to the statistics. Animations that
+ * are driven by <code>onUpdate</code> report each of their frames to the
+ * probe; animations that are left to the browser (like CSS transitions or
+ * the animations of popup panels) let the probe sample the animation
+ * frames for their duration. For every type the number of animations, the
+ * number of frames and dropped frames as well as the median, the 95th
+ * percentile and the maximum of the frame intervals are reported. The
+ * percentiles are computed from the last <code>MAX_SAMPLES</code> frame
+ * intervals of each type.
+ *
+ * <p>The report can be printed on the {@link Debugger} window or read
+ * from JavaScript with <code>GWTPhotoAlbumFrameStats.report()</code>
+ * (as text) or <code>GWTPhotoAlbumFrameStats.stats()</code> (as object).
+ *
+ * @author eckhart
+ */
+public class FrameStats {
+  /** animation type of the fading of images */
+  public static final String FADE = "fade";
+  /** animation type of the sliding of the film strip */
+  public static final String SLIDING = "sliding";
+  /** animation type of the overlay popups */
+  public static final String POPUP = "popup";
+  /** the number of frame intervals that are kept for every type */
+  public static final int    MAX_SAMPLES = 1000;
+
+  /**
+   * Measures the frames of a single run of an animation. A probe can be
+   * reused for the next run after <code>finish</code> has been called.
+   * Sampled frames are taken by the frame meter that the probe extends,
+   * which shares its animation frames with the other running meters.
+   */
+  public static class Probe extends FrameMeter {
+    private final String    type;
+    private double          stopTime = -1.0;
+    private boolean         counted = false;
+    private int             duration;
+
+    Probe(String type) {
+      this.type = type;
+    }
+
+    /**
+     * Ends the measurement of the current run of the animation.
+     */
+    public void finish() {
+      stop();
+      stopTime = -1.0;
+      counted = false;
+    }
+
+    /**
+     * Records a frame of an animation that is driven by
+     * <code>onUpdate</code>. Does nothing, if the statistics are switched
+     * off.
+     */
+    public void frame() {
+      if (enabled) super.addFrame(Duration.currentTimeMillis());
+    }
+
+    /**
+     * Samples the animation frames of the browser for the given time. Does
+     * nothing, if the statistics are switched off.
+     * @param millis  the duration of the animation in milliseconds
+     */
+    public void sample(int millis) {
+      finish();
+      if (enabled && millis > 0) {
+        duration = millis;
+        start();
+      }
+    }
+
+    /* (non-Javadoc)
+     * @see de.eckhartarnold.client.FrameMeter#addFrame(double)
+     */
+    @Override
+    protected void addFrame(double timestamp) {
+      if (stopTime < 0) stopTime = timestamp + duration;
+      super.addFrame(timestamp);
+      if (timestamp >= stopTime) finish();
+    }
+
+    /* (non-Javadoc)
+     * @see de.eckhartarnold.client.FrameMeter#record(double)
+     */
+    @Override
+    protected void record(double interval) {
+      super.record(interval);
+      Series series = getSeries(type);
+      if (!counted) {
+        series.animations++;
+        counted = true;
+      }
+      series.add(interval);
+    }
+  }
+
+  /** The frame intervals of one animation type. */
+  private static class Series {
+    double[] intervals = new double[MAX_SAMPLES];
+    int      animations, frames, dropped;
+    double   max;
+
+    void add(double interval) {
+      intervals[frames % MAX_SAMPLES] = interval;
+      frames++;
+      max = Math.max(max, interval);
+      dropped += FrameMeter.missedFrames(interval);
+    }
+
+    double[] sorted() {
+      double[] sorted = Arrays.copyOf(intervals, Math.min(frames, MAX_SAMPLES));
+      Arrays.sort(sorted);
+      return sorted;
+    }
+  }
+
+  private static boolean enabled = false;
+  private static boolean exported = false;
+  private static LinkedHashMap<String, Series> series =
+      new LinkedHashMap<String, Series>();
+
+  /**
+   * Registers the object <code>GWTPhotoAlbumFrameStats</code> in the
+   * browser window, which gives JavaScript access to the statistics.
+   */
+  public static void export() {
+    if (!exported) {
+      exported = true;
+      exportJS();
+    }
+  }
+
+  /**
+   * Returns the statistics of all animation types as JavaScript object.
+   * For every type there is an entry with the fields "animations",
+   * "frames", "dropped", "p50", "p95" and "max".
+   * @return the statistics
+   */
+  public static JavaScriptObject getStats() {
+    JSONObject stats = new JSONObject();
+    for (String type: series.keySet()) {
+      Series s = series.get(type);
+      double[] sorted = s.sorted();
+      JSONObject entry = new JSONObject();
+      entry.put("animations", new JSONNumber(s.animations));
+      entry.put("frames", new JSONNumber(s.frames));
+      entry.put("dropped", new JSONNumber(s.dropped));
+      entry.put("p50", new JSONNumber(round(percentile(sorted, 0.5))));
+      entry.put("p95", new JSONNumber(round(percentile(sorted, 0.95))));
+      entry.put("max", new JSONNumber(round(s.max)));
+      stats.put(type, entry);
+    }
+    return stats.getJavaScriptObject();
+  }
+
+  /**
+   * Returns a readable report with one line for every animation type.
+   * @return the report
+   */
+  public static String getReport() {
+    if (series.isEmpty()) {
+      return enabled ? "no frames recorded" : "frame statistics are off";
+    }
+    StringBuilder report = new StringBuilder();
+    for (String type: series.keySet()) {
+      Series s = series.get(type);
+      double[] sorted = s.sorted();
+      if (report.length() > 0) report.append("\n");
+      report.append(type).append(": ").append(s.animations)
+            .append(" animations, ").append(s.frames).append(" frames, ")
+            .append(s.dropped).append(" dropped, p50 ")
+            .append(round(percentile(sorted, 0.5))).append(" ms, p95 ")
+            .append(round(percentile(sorted, 0.95))).append(" ms, max ")
+            .append(round(s.max)).append(" ms");
+    }
+    return report.toString();
+  }
+
+  /**
+   * Returns true, if the statistics are switched on.
+   * @return true, if frames are recorded
+   */
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Returns a new probe for an animation of the given type.
+   * @param type  the type of the animation, e.g. <code>FADE</code>
+   * @return the probe
+   */
+  public static Probe probe(String type) {
+    return new Probe(type);
+  }
+
+  /**
+   * Discards all recorded frames.
+   */
+  public static void reset() {
+    series.clear();
+  }
+
+  /**
+   * Switches the statistics on or off.
+   * @param enabled  true, if frames shall be recorded
+   */
+  public static void setEnabled(boolean enabled) {
+    FrameStats.enabled = enabled;
+  }
+
+  private static native void exportJS() /*-{
+    $wnd.GWTPhotoAlbumFrameStats = {
+      enable: $entry(function(on) {
+        @de.eckhartarnold.client.FrameStats::setEnabled(Z)(on !== false);
+      }),
+      report: $entry(function() {
+        return @de.eckhartarnold.client.FrameStats::getReport()();
+      }),
+      reset: $entry(function() {
+        @de.eckhartarnold.client.FrameStats::reset()();
+      }),
+      stats: $entry(function() {
+        return @de.eckhartarnold.client.FrameStats::getStats()();
+      })
+    };
+  }-*/;
+
+  private static Series getSeries(String type) {
+    Series s = series.get(type);
+    if (s == null) {
+      s = new Series();
+      series.put(type, s);
+    }
+    return s;
+  }
+
+  private static double percentile(double[] sorted, double p) {
+    if (sorted.length == 0) return 0.0;
+    int index = (int) Math.ceil(p * sorted.length) - 1;
+    return sorted[Math.max(0, index)];
+  }
+
+  private static double round(double millis) {
+    return Math.round(millis * 10.0) / 10.0;
+  }
+
+  private FrameStats() {
+  }
+}
@@ -16,6 +16,8 @@
 
 package de.eckhartarnold.client;
 
+import java.util.List;
+
 import com.google.gwt.user.client.ui.Widget;
 
 /**
@@ -91,13 +93,14 @@ public class FullScreenLayout extends Layout {
   }
 
   /* (non-Javadoc)
-   * @see de.eckhartarnold.client.Layout#issueResize()
+   * @see de.eckhartarnold.client.Layout#getResizeListeners()
    */  
   @Override
-  public void issueResize() {
-    super.issueResize();
-    if (overlay != null) overlay.onResized();
-    if (popup != null) popup.onResized();
+  protected List<ResizeListener> getResizeListeners() {
+    List<ResizeListener> listeners = super.getResizeListeners();
+    listeners.add(overlay);
+    listeners.add(popup);
+    return listeners;
   }
   
   /**
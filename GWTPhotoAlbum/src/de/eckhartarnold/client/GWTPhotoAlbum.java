@@ -37,6 +37,8 @@ import com.google.gwt.user.client.ui.RootPanel;
  * .json files which describe the photo album from the sub directory 
  * <code>IMAGE_COLLECTION_DIR</code> (usually named "slides") and then
  * builds up the widgets according to the description in the JSON files.
+ * The widgets are built as soon as the images can be displayed; the 
+ * captions fill in when they arrive.
  * 
  * @see ImageCollectionReader
  */
@@ -65,6 +67,12 @@ public class GWTPhotoAlbum implements EntryPoint {
    * sizes (like on mobile devices) shall be added.
    */
   public static final String  KEY_ADD_LOWRES_LAYOUT = "add lowres layout";
+  /** 
+   * name of the key in the info dictionary that switches on the 
+   * statistics of the frame times of the animations.
+   * @see FrameStats
+   */
+  public static final String  KEY_FRAME_STATISTICS = "frame statistics";
   
   /** entry name for the full screen layout */
   public static final String  LAYOUT_FULLSCREEN = "fullscreen";
@@ -99,74 +107,100 @@ public class GWTPhotoAlbum implements EntryPoint {
 	public void onModuleLoad() {
 	  StatusTag.setHTML("initializing...");
     root = RootPanel.get();
+    FrameStats.export();
     
 		new ImageCollectionReader(GWT.getHostPageBaseURL() + IMAGE_COLLECTION_DIR, 
 		    new ImageCollectionReader.ICallback() {
-		  public void callback(final ImageCollectionReader src) {
-		    
-		    // create layout
-		    String layoutType = src.getInfo().get(KEY_LAYOUT_TYPE);
-		    String layoutData = src.getInfo().get(KEY_LAYOUT_DATA);
-
-		    if (layoutType == null 
-		        || layoutType.equalsIgnoreCase(LAYOUT_FULLSCREEN)) {
-		      if (layoutData != null) {
-		        layout = new FullScreenLayout(src, layoutData);
-		      } else {
-		        layout = new FullScreenLayout(src);
-		      }
-		    } else if (layoutType.equalsIgnoreCase(LAYOUT_TILED)) {
-          if (layoutData != null) {
-            layout = new TiledLayout(src, layoutData);
-          } else {
-            layout = new TiledLayout(src);
-          }		        
-		    } else if (layoutType.equalsIgnoreCase(LAYOUT_HTML)) {
-          if (layoutData != null) {
-            layout = new HTMLLayout(src, layoutData);
-          } else {
-            layout = new HTMLLayout(src);
-          }		      
-		    } else {
-		      ImageCollectionReader.ERROR_DIALOG.message("Illegal layout type: " + 
-		          layoutType);
-		      return;
-		    }
-
-		    StatusTag.remove();
-		    // create presentation
-		    String presentationType = src.getInfo().get(KEY_PRESENTATION_TYPE);
-		    if (presentationType == null || 
-		        presentationType.equalsIgnoreCase(PRESENTATION_GALLERY)) {
-		      GWT.runAsync(new RunAsyncCallback() {
-	          public void onFailure(Throwable caught) {
-	            Window.alert("Sorry, could not load Gallery classes!");
-	          }		        
-	          public void onSuccess() {
-	            gallery = new Gallery(src);
-	            presentation = new GalleryPresentation(root, gallery, layout);
-	          }
-		      });
-		    } else if (presentationType.equalsIgnoreCase(PRESENTATION_SLIDESHOW)) {
-		      presentation = new SlideshowPresentation(root, layout, "");
-		    } else if (presentationType.startsWith("http://") || 
-		               presentationType.startsWith("https://")) {
-		      presentation = new SlideshowPresentation(root, layout, 
-		                                               presentationType);
-		    } else {
-          ImageCollectionReader.ERROR_DIALOG.message("Illegal presentation " +
-              "type or referrer: " + presentationType);
-		    }
-		    if (src.getInfo().get(KEY_ADD_LOWRES_LAYOUT) != "false" && 
-		        presentation != null) {
-		      Layout mobileLayout = new FullScreenLayout(src);
-		      presentation.setLowresLayout(mobileLayout);
-		      if (presentation instanceof GalleryPresentation) {
-		        GalleryPresentation gp = (GalleryPresentation)presentation;
-		        mobileLayout.setHomeButtonListener(gp);
+		  public void callback(ImageCollectionReader src) {
+		    // an album that has changed on the server replaces the widgets
+		    src.setUpdateReport(new ImageCollectionReader.ICallback() {
+		      public void callback(ImageCollectionReader src) {
+		        if (presentation != null) presentation.remove();
+		        presentation = null;
+		        gallery = null;
+		        build(src);
 		      }
-		    }
+		    });
+		    build(src);
 		  }
-		}, ImageCollectionReader.ERROR_DIALOG);
+		}, null, ImageCollectionReader.ERROR_DIALOG);
+  }
+  
+  /**
+   * Builds the layout and the presentation of the photo album from the
+   * data of the image collection reader and adds them to the root panel.
+   * 
+   * @param src  the image collection reader
+   */
+  private void build(final ImageCollectionReader src) {
+    String frameStats = src.getInfo().get(KEY_FRAME_STATISTICS);
+    if (frameStats != null && !frameStats.isEmpty()) {
+      FrameStats.setEnabled(Boolean.parseBoolean(frameStats));
+    }
+    
+    // create layout
+    String layoutType = src.getInfo().get(KEY_LAYOUT_TYPE);
+    String layoutData = src.getInfo().get(KEY_LAYOUT_DATA);
+
+    if (layoutType == null 
+        || layoutType.equalsIgnoreCase(LAYOUT_FULLSCREEN)) {
+      if (layoutData != null) {
+        layout = new FullScreenLayout(src, layoutData);
+      } else {
+        layout = new FullScreenLayout(src);
+      }
+    } else if (layoutType.equalsIgnoreCase(LAYOUT_TILED)) {
+      if (layoutData != null) {
+        layout = new TiledLayout(src, layoutData);
+      } else {
+        layout = new TiledLayout(src);
+      }
+    } else if (layoutType.equalsIgnoreCase(LAYOUT_HTML)) {
+      if (layoutData != null) {
+        layout = new HTMLLayout(src, layoutData);
+      } else {
+        layout = new HTMLLayout(src);
+      }
+    } else {
+      ImageCollectionReader.ERROR_DIALOG.message("Illegal layout type: " + 
+          layoutType);
+      return;
+    }
+
+    StatusTag.remove();
+    // create presentation
+    String presentationType = src.getInfo().get(KEY_PRESENTATION_TYPE);
+    if (presentationType == null || 
+        presentationType.equalsIgnoreCase(PRESENTATION_GALLERY)) {
+      final Layout galleryLayout = layout;
+      GWT.runAsync(new RunAsyncCallback() {
+        public void onFailure(Throwable caught) {
+          Window.alert("Sorry, could not load Gallery classes!");
+        }
+        public void onSuccess() {
+          if (layout != galleryLayout) return;  // built anew in the meantime
+          gallery = new Gallery(src);
+          presentation = new GalleryPresentation(root, gallery, layout);
+        }
+      });
+    } else if (presentationType.equalsIgnoreCase(PRESENTATION_SLIDESHOW)) {
+      presentation = new SlideshowPresentation(root, layout, "");
+    } else if (presentationType.startsWith("http://") || 
+               presentationType.startsWith("https://")) {
+      presentation = new SlideshowPresentation(root, layout, 
+                                               presentationType);
+    } else {
+      ImageCollectionReader.ERROR_DIALOG.message("Illegal presentation " +
+          "type or referrer: " + presentationType);
+    }
+    if (src.getInfo().get(KEY_ADD_LOWRES_LAYOUT) != "false" && 
+        presentation != null) {
+      Layout mobileLayout = new FullScreenLayout(src);
+      presentation.setLowresLayout(mobileLayout);
+      if (presentation instanceof GalleryPresentation) {
+        GalleryPresentation gp = (GalleryPresentation)presentation;
+        mobileLayout.setHomeButtonListener(gp);
+      }
+    }
   }
 }
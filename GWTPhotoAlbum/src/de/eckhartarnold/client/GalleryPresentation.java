@@ -19,9 +19,9 @@ package de.eckhartarnold.client;
 import com.google.gwt.core.client.GWT;
 import com.google.gwt.event.dom.client.ClickEvent;
 import com.google.gwt.event.dom.client.ClickHandler;
-import com.google.gwt.event.logical.shared.ResizeEvent;
 import com.google.gwt.event.logical.shared.ValueChangeEvent;
 import com.google.gwt.event.logical.shared.ValueChangeHandler;
+import com.google.gwt.event.shared.HandlerRegistration;
 import com.google.gwt.user.client.History;
 import com.google.gwt.user.client.Timer;
 import com.google.gwt.user.client.ui.Panel;
@@ -58,6 +58,8 @@ public class GalleryPresentation extends Presentation implements GalleryListener
   /** true, if the slideshow has been started from the gallery page; in this
    *  case the slideshow will return to the gallery page after finishing. */
   private boolean slideshowInitiated = false;
+  
+  private HandlerRegistration historyRegistration;
 
   /**
    * The constructor of class <code>GalleryPresentation</code>.
@@ -76,12 +78,13 @@ public class GalleryPresentation extends Presentation implements GalleryListener
     layout.slideshow.addSlideshowListener(this);
     
     int imageNr = Presentation.parseSlideToken(History.getToken());
-    if (imageNr < 0) {
+    // the album may have become shorter since the token was added
+    if (imageNr < 0 || imageNr >= layout.slideshow.size()) {
       parent.add(gallery);    
     }
     else onPickImage(imageNr);
     
-    History.addValueChangeHandler(this);
+    historyRegistration = History.addValueChangeHandler(this);
     Debugger.consoleLog("GWTPhotoAlbum started");    
   }
   
@@ -130,6 +133,17 @@ public class GalleryPresentation extends Presentation implements GalleryListener
     }
   }
   
+  /* (non-Javadoc)
+   * @see de.eckhartarnold.client.Presentation#remove()
+   */
+  @Override
+  public void remove() {
+    slideshowInitiated = false;
+    historyRegistration.removeHandler();
+    super.remove();
+    parent.remove(gallery);
+  }
+  
   /* (non-Javadoc)
    * @see de.eckhartarnold.client.GalleryListener#onPickImage(int)
    */
@@ -152,13 +166,14 @@ public class GalleryPresentation extends Presentation implements GalleryListener
   }
 
   /* (non-Javadoc)
-   * @see com.google.gwt.event.logical.shared.ResizeHandler#onResize(com.google.gwt.event.logical.shared.ResizeEvent)
+   * @see de.eckhartarnold.client.Presentation#resize()
    */
-  public void onResize(ResizeEvent event) {
+  @Override
+  protected void resize() {
     if (isGalleryActive()) {
       gallery.onResized();
     } else {
-      super.onResize(event);
+      super.resize();
     }
   }
   
@@ -16,6 +16,9 @@
 
 package de.eckhartarnold.client;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+
 import com.google.gwt.event.dom.client.ClickEvent;
 import com.google.gwt.event.dom.client.ClickHandler;
 import com.google.gwt.event.dom.client.MouseDownEvent;
@@ -25,11 +28,14 @@ import com.google.gwt.event.dom.client.MouseOutHandler;
 import com.google.gwt.event.dom.client.MouseOverEvent;
 import com.google.gwt.event.dom.client.MouseOverHandler;
 //import com.google.gwt.user.client.DOM;
-import com.google.gwt.dom.client.Element;
+import com.google.gwt.event.shared.HandlerRegistration;
+import com.google.gwt.user.client.Window;
+import com.google.gwt.user.client.ui.FlowPanel;
 import com.google.gwt.user.client.ui.HasHorizontalAlignment;
 import com.google.gwt.user.client.ui.HasVerticalAlignment;
 import com.google.gwt.user.client.ui.HorizontalPanel;
 import com.google.gwt.user.client.ui.Image;
+import com.google.gwt.user.client.ui.SimplePanel;
 import com.google.gwt.user.client.ui.VerticalPanel;
 import com.google.gwt.user.client.ui.Widget;
 import com.google.gwt.safehtml.shared.SafeHtml;
@@ -44,6 +50,15 @@ import com.google.gwt.safehtml.shared.SafeHtml;
  * based on the size of the widget (or browser window resp.) and 
  * changes whenever it is resized.  
  * 
+ * <p>For large albums the gallery is virtual: only the rows in and near
+ * the visible part of the browser window are rendered. The height of the
+ * rows above and below is kept by two spacers, so that the scroll bar 
+ * stays the same, and the row panels and thumbnail widgets of rows that 
+ * are scrolled out of sight are reused for the rows that come into sight.
+ * The virtual gallery is used for albums with more than 
+ * <code>VIRTUAL_THRESHOLD</code> images, unless the field "virtual 
+ * gallery" of the info file says otherwise.
+ * 
  * Class <code>GalleryWidget</code> does not add slide show button and
  * thus only fires <code>onPickImage</code> events.
  * 
@@ -70,6 +85,12 @@ public class GalleryWidget extends GalleryBase {
   public static final String KEY_GALLERY_HPADDING = "gallery horizontal padding";
   /** The key in the "info.json" file for horizontal padding */
   public static final String KEY_GALLERY_VPADDING = "gallery vertical padding";
+  /** The key in the "info.json" file that switches the virtual gallery on or off */
+  public static final String KEY_VIRTUAL_GALLERY = "virtual gallery";
+  /** The number of images above which the gallery is virtual by default */
+  public static final int VIRTUAL_THRESHOLD = 1000;
+  /** The number of rows rendered above and below the visible rows */
+  private static final int OVERSCAN_ROWS = 2;
   
   private static int readKey(ImageCollectionInfo collection, String keyName, int defaultValue) {
     if (collection.getInfo().containsKey(keyName)) {
@@ -82,17 +103,31 @@ public class GalleryWidget extends GalleryBase {
   /** 
    * The "main" panel of the gallery widget. Basically, the gallery widget
    * consists of a vertical panel that contains a number of horizontal
-   * panels which represent the rows of the image table. The horizontal
-   * panels are disposed and recreated when ever the size changes. 
+   * panels which represent the rows of the image table. When the number of
+   * columns changes, the thumbnails are moved between the horizontal 
+   * panels.
    */
   protected VerticalPanel     panel;
   
-  private   SafeHtml[]        captions;
+  private   Captions          captions;
   private   int               edgeWidth, edgeHeight;
 //  private   HTML              filler;
   private   Thumbnails        thumbnails;          
   private   HorizontalPanel[] imageRows;
   private   int               paddingH, paddingV;
+  private   HandlerRegistration scrollHandler;
+  private   HashMap<Image, Tooltip> tooltips = new HashMap<Image, Tooltip>();
+  
+  // state of the virtual gallery
+  private   boolean           virtual;
+  private   FlowPanel         body;        // spacers and rendered rows
+  private   SimplePanel       topSpacer, bottomSpacer;
+  private   int               columns, rowCount;
+  private   int               firstRow = 0;   // the first rendered row
+  private   ArrayList<HorizontalPanel> renderedRows = 
+      new ArrayList<HorizontalPanel>();
+  private   ArrayList<HorizontalPanel> rowPool = 
+      new ArrayList<HorizontalPanel>();
  
 
   /**
@@ -127,6 +162,10 @@ public class GalleryWidget extends GalleryBase {
       int edgeHeight, int hpadding, int vpadding) {
     this (new Thumbnails(collection), collection.getCaptions(), edgeWidth, 
         edgeHeight, hpadding, vpadding);
+    String virtualStr = collection.getInfo().get(KEY_VIRTUAL_GALLERY);
+    if (virtualStr != null && !virtualStr.isEmpty()) {
+      virtual = Boolean.parseBoolean(virtualStr);
+    }
   }
   
   /**
@@ -144,6 +183,24 @@ public class GalleryWidget extends GalleryBase {
    */
   public GalleryWidget(Thumbnails thumbnails, SafeHtml[] captions, int edgeWidth,
       int edgeHeight, int hpadding, int vpadding) {
+    this(thumbnails, new Captions(captions), edgeWidth, edgeHeight, hpadding,
+        vpadding);
+  }
+  
+  /**
+   * Same as the constructor above, only that the captions are passed as
+   * {@link Captions} object, so that they are sanitized only when a 
+   * tool tip is shown for the first time.
+   * 
+   * @param thumbnails  the collection of thumbnail images
+   * @param captions    the captions of the thumbnail images
+   * @param edgeWidth   the width of the thumbnail images
+   * @param edgeHeight  the height of the thumbnail images
+   * @param hpadding    the horizontal padding between the thumbnail images
+   * @param vpadding    the vertical padding between the thumbnail images
+   */
+  public GalleryWidget(Thumbnails thumbnails, Captions captions, int edgeWidth,
+      int edgeHeight, int hpadding, int vpadding) {
     this.captions = captions;
     this.edgeWidth = edgeWidth;
     this.edgeHeight = edgeHeight;
@@ -151,9 +208,18 @@ public class GalleryWidget extends GalleryBase {
     this.paddingV = vpadding;
     thumbnails.adjustToRectangle(edgeWidth, edgeHeight);
     this.thumbnails = thumbnails;
+    this.virtual = thumbnails.size() > VIRTUAL_THRESHOLD;
     initRawGallery();    
   }
   
+  /**
+   * Returns true, if only the visible rows of the gallery are rendered.
+   * @return true, if the gallery is virtual
+   */
+  public boolean isVirtual() {
+    return virtual;
+  }
+  
   /* (non-Javadoc)
    * @see de.eckhartarnold.client.SourcesGalleryEvents#onResized()
    */
@@ -162,48 +228,32 @@ public class GalleryWidget extends GalleryBase {
     Widget parent = getParent();
     if (parent == null) return;
     int width = parent.getOffsetWidth();
-    HorizontalPanel row = null;
     int columns = (width - paddingH) / (edgeWidth + paddingH);
-    if (columns <= 0) columns = 1;
+    // more columns than images do not change the layout
+    columns = Math.max(1, Math.min(columns, thumbnails.size()));
     int rows = thumbnails.size() / columns;
     if (thumbnails.size() % columns != 0) rows++;
     
-    if (imageRows != null) {
-      if (rows == imageRows.length && 
-          imageRows[0].getWidgetCount() == columns) {
-        return;   // layout did not change!
-      }
-      
-      for (HorizontalPanel p: imageRows) {
-        panel.remove(p);
-      }
-    }    
-    
-    imageRows = new HorizontalPanel[rows];
-    
-    for (int i = 0; i < thumbnails.size(); i++) {
-      if (i % columns == 0) {
-        row = new HorizontalPanel();
-        row.setStyleName("galleryRow");
-        //row.setSpacing(paddingV);
-        row.setHorizontalAlignment(HasHorizontalAlignment.ALIGN_CENTER);
-        row.setVerticalAlignment(HasVerticalAlignment.ALIGN_MIDDLE);        
-        imageRows[i/columns] = row;
-      }
-      Image img = thumbnails.get(i);
-      if (captions[i].asString().length() > 0) {
-        Tooltip.addToWidget(new Tooltip(captions[i]), img); // sometimes wrong tooltip position!?
-      }
-      row.add(img);
-      //int delta = 0;
-      //if (paddingH > paddingV) delta = 2*(paddingH-paddingV);
-      row.setCellWidth(img, edgeWidth + 2*paddingH + "px");     
-      row.setCellHeight(img, edgeHeight + 2*paddingV +"px");  
+    if (virtual) {
+      relayoutVirtual(columns, rows);
+      return;
     }
     
-    for (HorizontalPanel r : imageRows) {
-      panel.add(r);
-    }    
+    if (columns != this.columns) {
+      relayoutRows(columns, rows);
+      this.columns = columns;
+    }
+    requestVisibleThumbnails();
+  }
+  
+  /**
+   * Switches the virtual gallery on or off. This must be done before the
+   * gallery is attached.
+   * @param virtual  true, if only the visible rows shall be rendered
+   */
+  public void setVirtual(boolean virtual) {
+    assert !isAttached() : "setVirtual() must be called before attaching!";
+    this.virtual = virtual;
   }
 
   /* (non-Javadoc)
@@ -220,11 +270,203 @@ public class GalleryWidget extends GalleryBase {
     super.onAttach();
   }
   
+  /* (non-Javadoc)
+   * @see com.google.gwt.user.client.ui.Widget#onLoad()
+   */
+  @Override
+  protected void onLoad() {
+    scrollHandler = Window.addWindowScrollHandler(new Window.ScrollHandler() {
+      public void onWindowScroll(Window.ScrollEvent event) {
+        if (virtual) renderVisibleRows();
+        requestVisibleThumbnails();
+      }
+    });
+  }
+  
+  /* (non-Javadoc)
+   * @see com.google.gwt.user.client.ui.Widget#onUnload()
+   */
+  @Override
+  protected void onUnload() {
+    if (scrollHandler != null) {
+      scrollHandler.removeHandler();
+      scrollHandler = null;
+    }
+  }
+  
   /* (non-Javadoc)
    * @see de.eckhartarnold.client.ResizeListener#prepareResized()
    */
   public void prepareResized() { }
   
+  /**
+   * Requests the thumbnails of the rows that are visible in the browser
+   * window plus one row above and below, in case they belong to pages of 
+   * the image collection that have not been loaded yet.
+   */
+  private void requestVisibleThumbnails() {
+    if (columns <= 0) return;
+    int rowHeight = rowHeight();
+    int top = Window.getScrollTop() - 
+        (virtual ? body.getAbsoluteTop() : panel.getAbsoluteTop());
+    int firstRow = Math.max(0, top / rowHeight - 1);
+    int lastRow = (top + Window.getClientHeight()) / rowHeight + 1;
+    thumbnails.requestRange(firstRow * columns, (lastRow + 1) * columns, 
+        null);
+  }
+  
+  /**
+   * Creates a new row panel or takes one from the pool.
+   */
+  private HorizontalPanel createRow() {
+    if (!rowPool.isEmpty()) return rowPool.remove(rowPool.size() - 1);
+    HorizontalPanel row = new HorizontalPanel();
+    row.setStyleName("galleryRow");
+    row.setHorizontalAlignment(HasHorizontalAlignment.ALIGN_CENTER);
+    row.setVerticalAlignment(HasVerticalAlignment.ALIGN_MIDDLE);
+    row.getElement().setAttribute("align", "center");
+    return row;
+  }
+  
+  /**
+   * Removes a rendered row of the virtual gallery, hands its thumbnails 
+   * back and puts the row panel into the pool.
+   * @param position  the position of the row among the rendered rows
+   */
+  private void recycleRow(int position) {
+    HorizontalPanel row = renderedRows.remove(position);
+    body.remove(row);
+    int[] indices = new int[row.getWidgetCount()];
+    for (int i = 0; i < indices.length; i++) {
+      indices[i] = thumbnails.indexOf((Image) row.getWidget(i));
+    }
+    row.clear();
+    for (int index: indices) thumbnails.release(index);
+    rowPool.add(row);
+  }
+  
+  /**
+   * Renders a row of the virtual gallery.
+   * @param r         the number of the row
+   * @param position  the position of the row among the rendered rows
+   */
+  private void renderRow(int r, int position) {
+    HorizontalPanel row = createRow();
+    row.setHeight(rowHeight() + "px");
+    int end = Math.min(thumbnails.size(), (r + 1) * columns);
+    for (int i = r * columns; i < end; i++) {
+      Image img = thumbnails.get(i);
+      row.add(img);
+      row.setCellWidth(img, edgeWidth + 2*paddingH + "px");     
+      row.setCellHeight(img, edgeHeight + 2*paddingV +"px");  
+    }
+    renderedRows.add(position, row);
+    body.insert(row, position + 1);  // after the top spacer
+  }
+  
+  /**
+   * Adjusts the virtual gallery to a new number of columns.
+   */
+  private void relayoutVirtual(int columns, int rows) {
+    if (body == null) {
+      body = new FlowPanel();
+      topSpacer = new SimplePanel();
+      bottomSpacer = new SimplePanel();
+      body.add(topSpacer);
+      body.add(bottomSpacer);
+      panel.add(body);
+    }
+    if (columns != this.columns) {
+      while (!renderedRows.isEmpty()) recycleRow(0);
+      this.columns = columns;
+      this.rowCount = rows;
+    }
+    renderVisibleRows();
+    requestVisibleThumbnails();
+  }
+  
+  /**
+   * Renders the rows of the virtual gallery that are visible in the 
+   * browser window plus <code>OVERSCAN_ROWS</code> rows above and below.
+   * Rows that have left this range are recycled.
+   */
+  private void renderVisibleRows() {
+    if (body == null || columns <= 0) return;
+    int rowHeight = rowHeight();
+    int top = Window.getScrollTop() - body.getAbsoluteTop();
+    int from = Math.max(0, top / rowHeight - OVERSCAN_ROWS);
+    int to = Math.min(rowCount - 1, 
+        (top + Window.getClientHeight()) / rowHeight + OVERSCAN_ROWS);
+    int lastRow = firstRow + renderedRows.size() - 1;
+    if (to < firstRow || from > lastRow) {
+      while (!renderedRows.isEmpty()) recycleRow(0);
+    }
+    while (!renderedRows.isEmpty() && firstRow < from) {
+      recycleRow(0);
+      firstRow++;
+    }
+    while (!renderedRows.isEmpty() && 
+           firstRow + renderedRows.size() - 1 > to) {
+      recycleRow(renderedRows.size() - 1);
+    }
+    if (renderedRows.isEmpty()) firstRow = from;
+    while (firstRow > from) {
+      firstRow--;
+      renderRow(firstRow, 0);
+    }
+    for (int r = firstRow + renderedRows.size(); r <= to; r++) {
+      renderRow(r, renderedRows.size());
+    }
+    topSpacer.setHeight(firstRow * rowHeight + "px");
+    int below = rowCount - firstRow - renderedRows.size();
+    bottomSpacer.setHeight(Math.max(0, below) * rowHeight + "px");
+  }
+  
+  /**
+   * Distributes the thumbnails of the (non virtual) gallery over a new
+   * number of rows. The existing rows and cells are kept as far as 
+   * possible: a thumbnail is only moved, if it ends up in another row or
+   * at another position in its row, and rows are only created or removed,
+   * if the number of rows changes.
+   * 
+   * @param columns  the new number of columns
+   * @param rows     the new number of rows
+   */
+  private void relayoutRows(int columns, int rows) {
+    int oldRows = (imageRows != null) ? imageRows.length : 0;
+    HorizontalPanel[] newRows = new HorizontalPanel[rows];
+    for (int r = 0; r < rows; r++) {
+      newRows[r] = (r < oldRows) ? imageRows[r] : createRow();
+    }
+    for (int i = 0; i < thumbnails.size(); i++) {
+      HorizontalPanel row = newRows[i / columns];
+      int pos = i % columns;
+      Image img = thumbnails.get(i);
+      if (img.getParent() == row && row.getWidgetIndex(img) == pos) continue;
+      // all thumbnails before pos are in place already, so that removing
+      // the thumbnail does not shift pos
+      img.removeFromParent();
+      row.insert(img, pos);
+      row.setCellWidth(img, edgeWidth + 2*paddingH + "px");     
+      row.setCellHeight(img, edgeHeight + 2*paddingV +"px");
+    }
+    for (int r = rows; r < oldRows; r++) {
+      assert imageRows[r].getWidgetCount() == 0;
+      panel.remove(imageRows[r]);
+    }
+    for (int r = oldRows; r < rows; r++) {
+      panel.add(newRows[r]);
+    }
+    imageRows = newRows;
+  }
+  
+  /**
+   * Returns the height of a row of thumbnails in pixels.
+   */
+  private int rowHeight() {
+    return Math.max(1, edgeHeight + 2*paddingV);
+  }
+  
   private void initRawGallery() {
     assert panel == null;
 
@@ -272,17 +514,31 @@ public class GalleryWidget extends GalleryBase {
       }
     };    
     
-    for (int i = 0; i < thumbnails.size(); i++) {
-      Image img = thumbnails.get(i);
-      img.setStyleName("galleryImage");
-      Element imgElement = img.getElement();
-//      DOM.setElementAttribute(imgElement, "id", String.valueOf(i));
-      imgElement.setAttribute("id", String.valueOf(i));
-      img.addClickHandler(imageClickHandler);
-      img.addMouseDownHandler(imageMouseDownHandler);
-      img.addMouseOverHandler(imageMouseOverHandler);
-      img.addMouseOutHandler(imageMouseOutHandler);
-    }
+    final ClickHandler     clickHandler = imageClickHandler;
+    final MouseDownHandler mouseDownHandler = imageMouseDownHandler;
+    final MouseOverHandler mouseOverHandler = imageMouseOverHandler;
+    final MouseOutHandler  mouseOutHandler = imageMouseOutHandler;
+    thumbnails.setDecorator(new Thumbnails.Decorator() {
+      public void decorate(Image img) {
+        img.addClickHandler(clickHandler);
+        img.addMouseDownHandler(mouseDownHandler);
+        img.addMouseOverHandler(mouseOverHandler);
+        img.addMouseOutHandler(mouseOutHandler);
+        // one tool tip per widget, which is pointed to the caption of the
+        // image that the widget shows (sometimes wrong tooltip position!?)
+        Tooltip tooltip = new Tooltip(captions, -1);
+        Tooltip.addToWidget(tooltip, img);
+        tooltips.put(img, tooltip);
+      }
+      public void assign(Image img, int index) {
+        // the "id" attribute with the index is set by the thumbnails
+        img.setStyleName("galleryImage");
+        tooltips.get(img).setCaption(captions, index);
+      }
+      public void discard(Image img) {
+        tooltips.remove(img);
+      }
+    });
     
     initWidget(panel);
   }
@@ -17,7 +17,8 @@
 package de.eckhartarnold.client;
 
 import java.util.HashMap;
-import com.google.gwt.safehtml.shared.SafeHtml;
+
+import com.google.gwt.user.client.Command;
 
 /**
  * The interface <code>ImageCollectionInfo</code> is for querying the 
@@ -28,21 +29,30 @@ import com.google.gwt.safehtml.shared.SafeHtml;
  * that is needed for the photo album, such as configuration options, image 
  * locations, file names, resolutions and captions.
  * 
+ * <p>Very large image collections may be loaded page by page. In this case
+ * only the entries of the first page are available when the collection
+ * is ready. The arrays and tables returned by the getter methods already
+ * have their full length, but the entries of images that have not been 
+ * loaded yet are empty (i.e. <code>null</code> for image names). 
+ * {@link #isLoaded(int)} tells whether the entries of an image are 
+ * available and {@link #requestImages(int, int, Command)} loads the
+ * missing entries of a range of images asynchronously.
+ * 
  * @author eckhart
  *
  */
 public interface ImageCollectionInfo {
   
   /**
-   * Returns the array of caption string for the images. The order
-   * of the array corresponds to that of the images, i.e. the
-   * first entry of the caption array contains the caption of the
-   * first image etc. If an image does not have a caption the array
-   * contains an empty String.
+   * Returns the captions for the images. The order of the captions
+   * corresponds to that of the images, i.e. the first caption is
+   * the caption of the first image etc. If an image does not have a 
+   * caption, its caption is an empty String. Captions are sanitized
+   * only when they are retrieved.
    * 
-   * @return  the array of caption strings
+   * @return  the captions of the images
    */
-  SafeHtml[] getCaptions();
+  Captions getCaptions();
 
   /**
    * Returns a list of directory names. Each directory is to contain
@@ -64,15 +74,36 @@ public interface ImageCollectionInfo {
    */
   String[] getImageNames();
 
+  /**
+   * Returns the number of images of the collection. This includes the
+   * images of pages that have not been loaded, yet.
+   * 
+   * @return the number of images
+   */
+  int getImageCount();
+  
   /**
    * Returns a dictionary that maps the image file names to their exact sizes.
    * The sizes are pairs of integer values {x,y} and the length and order of
    * the sizes tuple should correspond to the list of directories.
    * 
+   * <p>The dictionary is kept for compatibility. Code that accesses the 
+   * sizes of many images or accesses them often should rather use 
+   * {@link #getSizeTable()}.
+   * 
    * @return the exact sizes of every image.
    */
   HashMap<String, int[][]> getImageSizes();
   
+  /**
+   * Returns the exact sizes of every image in a table that is addressed
+   * by the index of the image in the list of image names and the size
+   * step, i.e. the index of the directory.
+   * 
+   * @return the exact sizes of every image.
+   */
+  ImageSizeTable getSizeTable();
+  
   
   /**
    * Returns a dictionary of information strings. The dictionary may
@@ -93,5 +124,43 @@ public interface ImageCollectionInfo {
    * @return true, if there are captions
    */
   boolean hasCaptions();
+  
+  /**
+   * Returns true, if the name, size and caption of an image are available.
+   * This is always the case, if the image collection is not loaded page
+   * by page.
+   * 
+   * @param index  the index of the image
+   * @return true, if the entries of the image have been loaded
+   */
+  boolean isLoaded(int index);
+  
+  /**
+   * Requests the entries of the images from <code>from</code> (inclusive)
+   * to <code>to</code> (exclusive). Indices outside the collection are
+   * ignored. When all entries are available, <code>loaded</code> is
+   * executed. If they are already available, it is executed immediately.
+   * 
+   * @param from    the index of the first image
+   * @param to      the index after the last image
+   * @param loaded  the command that is executed when the entries have been
+   *                loaded, may be <code>null</code>
+   */
+  void requestImages(int from, int to, Command loaded);
+
+  /**
+   * Requests the entries of the images like the method above. If one of
+   * the pages cannot be loaded, <code>failed</code> is executed instead of
+   * <code>loaded</code>. The page is requested anew, when the images are
+   * requested the next time.
+   * 
+   * @param from    the index of the first image
+   * @param to      the index after the last image
+   * @param loaded  the command that is executed when the entries have been
+   *                loaded, may be <code>null</code>
+   * @param failed  the command that is executed when a page could not be
+   *                loaded, may be <code>null</code>
+   */
+  void requestImages(int from, int to, Command loaded, Command failed);
 }
 
@@ -23,6 +23,7 @@ import com.google.gwt.json.client.JSONException;
 import com.google.gwt.json.client.JSONObject;
 import com.google.gwt.json.client.JSONParser;
 import com.google.gwt.json.client.JSONValue;
+import com.google.gwt.core.client.Duration;
 import com.google.gwt.core.client.GWT;
 import com.google.gwt.dom.client.Document;
 import com.google.gwt.dom.client.Element;
@@ -34,14 +35,16 @@ import com.google.gwt.http.client.RequestBuilder;
 import com.google.gwt.http.client.RequestCallback;
 import com.google.gwt.http.client.RequestException;
 import com.google.gwt.http.client.Response;
+import com.google.gwt.http.client.URL;
+import com.google.gwt.user.client.Command;
 import com.google.gwt.user.client.Window;
 import com.google.gwt.user.client.ui.Button;
 import com.google.gwt.user.client.ui.DialogBox;
 import com.google.gwt.user.client.ui.HasHorizontalAlignment;
 import com.google.gwt.user.client.ui.HTML;
 import com.google.gwt.user.client.ui.VerticalPanel;
-import com.google.gwt.safehtml.shared.SafeHtml;
-import com.google.gwt.safehtml.shared.OnlyToBeUsedInGeneratedCodeStringBlessedAsSafeHtml;
+import com.google.gwt.xhr.client.ReadyStateChangeHandler;
+import com.google.gwt.xhr.client.XMLHttpRequest;
 
 
 /**
@@ -70,13 +73,75 @@ import com.google.gwt.safehtml.shared.OnlyToBeUsedInGeneratedCodeStringBlessedAs
    *                          entry corresponding to one directory and 
    *                          consisting itself of a two entry list containing 
    *                          the width and height of the image in the 
-   *                          respective directory.
+   *                          respective directory. For very large albums
+   *                          a compact "columnar" encoding can be used 
+   *                          instead, see {@link ImageSizeTable}.
    * <li>"info.json"        - a dictionary with arbitrary additional
    *                          information on the image collection. It should
    *                          (but need not) contain at least the fields: 
    *                          "title", "subtitle" and "bottom line"
    * </ol>
  * 
+ * <p>Instead of the five files above, the image collection can also be
+ * described by one single manifest file "album.json", which is a dictionary
+ * with the keys "directories", "filenames", "captions", "resolutions" and
+ * "info", the values of which have the same format as the contents of the
+ * respective files. The manifest saves four requests when the album is
+ * loaded. It is always tried first; only if it does not exist (or if parts 
+ * of it are missing) the separate files are read. A manifest can be
+ * generated from an existing album with 
+ * {@link de.eckhartarnold.tools.AlbumManifestGenerator}.
+ * 
+ * <p>For very large albums the manifest can be "paged". A paged manifest
+ * contains the additional key "paged" with a dictionary 
+ * <code>{"count": N, "pageSize": P}</code>, and its "filenames", "captions"
+ * and "resolutions" only describe the first P images. The entries of the 
+ * following pages are stored in the files "album-page-1.json", 
+ * "album-page-2.json" etc., each of which is a dictionary with the keys
+ * "filenames", "captions" and "resolutions" for the respective images. 
+ * The ready callback is issued as soon as the manifest has been read; 
+ * further pages are only loaded when they are requested with
+ * {@link #requestImages(int, int, Command)}. If a page cannot be loaded,
+ * the requests that wait for it fail and the page is requested anew the
+ * next time its images are requested.
+ * 
+ * <p>By default all five files are requested at once and the ready callback
+ * is issued as soon as the last of them has arrived. The old behavior of
+ * requesting one file after the other can be restored with a meta-tag
+ * <code>&lt;meta name="loading" content="sequential"&gt;</code> in the html
+ * page. The time it took to retrieve each file is recorded and can be
+ * queried with <code>getLoadingTimes</code>.
+ *
+ * <p>The manifest, its pages and the files with the image names, captions
+ * and sizes are parsed with an {@link AlbumStreamParser} while they are
+ * still arriving, so that parsing overlaps with the download and no tree
+ * of JSON values needs to be built for them.
+ *
+ * <p>The album can be built before all files have arrived: A callback 
+ * passed as <code>navigableReport</code> to the constructor is issued as
+ * soon as the directories, image names, image sizes and the info are 
+ * available, which is all that is needed to display the images. The
+ * captions may still be missing at this stage. They are loaded last and
+ * entered into the {@link Captions} object returned by 
+ * <code>getCaptions</code> when they arrive, which notifies the widgets
+ * that display them. The ready callback is issued when the captions have
+ * arrived as well.
+ *
+ * <p>If the browser supports local storage, the manifest is cached there
+ * together with its "ETag" or "Last-Modified" header (see
+ * {@link ManifestCache}). When the album is loaded again, it is started
+ * from the cached manifest right away, while a conditional request checks
+ * in the background whether the manifest has changed on the server. A
+ * changed manifest replaces the cached one as well as the data of the 
+ * running album, after which the callback registered with
+ * {@link #setUpdateReport(ICallback)} is issued, so that the widgets can
+ * be built anew. The data is only replaced, if the new manifest could be
+ * read completely. The pages of a paged album are requested with
+ * the version of the manifest in the query string, and a page that does
+ * not fit the manifest is reported as an error and removes the manifest
+ * from the cache. The cache can be switched off with a meta-tag
+ * <code>&lt;meta name="cache" content="none"&gt;</code>.
+ *
  * @author ecki
  *
  */
@@ -113,6 +178,23 @@ public class ImageCollectionReader implements ImageCollectionInfo {
   private interface JSONDelegate {
     void process(JSONValue json);
   }  
+  
+  private interface StreamDelegate {
+    void process(AlbumStreamParser data);
+  }
+  
+  /** A request for a range of images that waits for pages to arrive */
+  private static class PageRequest {
+    final int     from, to;
+    final Command loaded, failed;
+    
+    PageRequest(int from, int to, Command loaded, Command failed) {
+      this.from = from;
+      this.to = to;
+      this.loaded = loaded;
+      this.failed = failed;
+    }
+  }
 
   /**
    * This is a helper class that allows displaying an error message in
@@ -157,11 +239,36 @@ public class ImageCollectionReader implements ImageCollectionInfo {
     String       url;
     JSONDelegate task;
     IMessage     errorReporting;
+    Command      fallback;
+    Duration     loadDuration = new Duration();
     
     JSONReceiver(String url, JSONDelegate task, IMessage error) {
+      this(url, task, error, null);
+    }
+    
+    /**
+     * Creates a receiver that executes <code>fallback</code> instead of 
+     * reporting an error, if the file cannot be retrieved.
+     */
+    JSONReceiver(String url, JSONDelegate task, IMessage error, 
+        Command fallback) {
       this.url = url;
       this.task = task;
       this.errorReporting = error;
+      this.fallback = fallback;
+    }
+    
+    /**
+     * Records how long it took from issuing the request until the data
+     * was received and parsed and then hands the JSON data over to the task.
+     * @param jsonValue  the parsed JSON data
+     */
+    void deliver(JSONValue jsonValue) {
+      String fileName = url.substring(url.lastIndexOf('/')+1);
+      int elapsed = loadDuration.elapsedMillis();
+      loadingTimes.put(fileName, elapsed);
+      GWT.log("JSON " + fileName + " received after " + elapsed + " ms");
+      task.process(jsonValue);
     }
     
     /**
@@ -176,7 +283,7 @@ public class ImageCollectionReader implements ImageCollectionInfo {
       Element dataTag = Document.get().getElementById(tagId);        
       if (dataTag != null) {
         jsonValue = JSONParser.parseStrict(dataTag.getInnerHTML());
-        task.process(jsonValue);
+        deliver(jsonValue);
         return true;
       } else {
         String location = Window.Location.getHref();
@@ -196,6 +303,7 @@ public class ImageCollectionReader implements ImageCollectionInfo {
      * @see com.google.gwt.http.client.RequestCallback#onError(com.google.gwt.http.client.Request, java.lang.Throwable)
      */
     public void onError(Request request, Throwable exception) {
+      if (fallback != null) fallback.execute();
 //      errorReporting.message("Couldn't retrieve JSON: " + url +
 //          "<br />" + exception.getMessage());           
     }
@@ -210,12 +318,17 @@ public class ImageCollectionReader implements ImageCollectionInfo {
       try {
         if (statusCode == Response.SC_OK) { // SC_OK == 200 !?
           jsonValue = JSONParser.parseStrict(response.getText());
-          task.process(jsonValue);
-          GWT.log("JSON read: "+url);      
+          deliver(jsonValue);
+          GWT.log("JSON read: "+url);
         } else {
           // if no file is found, check whether the JSON data is stored
           // in a (hidden) tag of the html master file. 
           if (!extractJSONfromHTML()) {
+            if (fallback != null) {
+              GWT.log("JSON not found: " + url);
+              fallback.execute();
+              return;
+            }
             errorReporting.message("Couldn't retrieve JSON from HTML: " + url + 
                 "<br /> after previous error " + statusCode + ": " + 
                 response.getStatusText());            
@@ -227,17 +340,221 @@ public class ImageCollectionReader implements ImageCollectionInfo {
             "<br />" + e.getMessage());
       }  
     }
-    
+
   }
- 
+
   /**
-   * The name of the html meta-tag that contains an alternative file name 
+   * Reads one of the larger .json files with an {@link AlbumStreamParser}.
+   * The parser is fed with the part of the file that has arrived so far
+   * every time the browser reports progress, so that the file is parsed
+   * while it is still being loaded.
+   */
+  private class StreamReceiver implements ReadyStateChangeHandler {
+    String            url;
+    AlbumStreamParser parser;
+    StreamDelegate    task;
+    IMessage          errorReporting;
+    Command           fallback;
+    boolean           cacheable = false;
+    int               consumed = 0;
+    Duration          loadDuration = new Duration();
+
+    StreamReceiver(String url, String kind, StreamDelegate task,
+        IMessage error, Command fallback) {
+      this.url = url;
+      this.parser = new AlbumStreamParser(kind);
+      this.task = task;
+      this.errorReporting = error;
+      this.fallback = fallback;
+    }
+
+    /**
+     * Records how long it took from issuing the request until the data
+     * was received and parsed and then hands the data over to the task.
+     */
+    void deliver() {
+      parser.finish();
+      String fileName = fileName(url);
+      int elapsed = loadDuration.elapsedMillis();
+      loadingTimes.put(fileName, elapsed);
+      GWT.log("JSON " + fileName + " streamed in " + elapsed + " ms");
+      task.process(parser);
+    }
+
+    /**
+     * Checks whether the JSON data is stored in a (hidden) tag, the id of
+     * which must be the file name, like <code>JSONReceiver</code> does.
+     * @return true, if successful
+     */
+    boolean extractJSONfromHTML() {
+      String tagId = fileName(url);
+      Element dataTag = Document.get().getElementById(tagId);
+      if (dataTag == null) return false;
+      parser.feed(dataTag.getInnerHTML());
+      deliver();
+      return true;
+    }
+
+    /* (non-Javadoc)
+     * @see com.google.gwt.xhr.client.ReadyStateChangeHandler#onReadyStateChange(com.google.gwt.xhr.client.XMLHttpRequest)
+     */
+    public void onReadyStateChange(XMLHttpRequest xhr) {
+      int state = xhr.getReadyState();
+      if (state != XMLHttpRequest.LOADING && state != XMLHttpRequest.DONE) {
+        return;
+      }
+      int statusCode = xhr.getStatus();
+      try {
+        if (statusCode == Response.SC_OK) {
+          String text = xhr.getResponseText();
+          if (text.length() > consumed) {
+            parser.feed(text.substring(consumed));
+            consumed = text.length();
+          }
+          if (state == XMLHttpRequest.DONE) {
+            xhr.clearOnReadyStateChange();
+            if (cacheable) {
+              pageVersion = validator(xhr.getResponseHeader("ETag"),
+                  xhr.getResponseHeader("Last-Modified"));
+            }
+            deliver();
+            // only data that could be processed without errors is cached
+            if (cacheable && manifestCache != null) {
+              manifestCache.put(url, text, xhr.getResponseHeader("ETag"),
+                  xhr.getResponseHeader("Last-Modified"));
+            }
+          }
+        } else if (state == XMLHttpRequest.DONE) {
+          xhr.clearOnReadyStateChange();
+          if (fallback != null) {
+            GWT.log("JSON not found: " + url);
+            fallback.execute();
+            return;
+          }
+          errorReporting.message("Couldn't retrieve JSON: " + url +
+              "<br /> Error " + statusCode + ": " + xhr.getStatusText());
+        }
+      } catch (JSONException e) {
+        xhr.clearOnReadyStateChange();
+        xhr.abort();
+        errorReporting.message("Could not parse JSON: " + url +
+            "<br />" + e.getMessage());
+      }
+    }
+
+    /**
+     * Reads the file from a hidden tag or requests it from the server.
+     */
+    void send() {
+      try {
+        if (extractJSONfromHTML()) return;
+      } catch (JSONException e) {
+        errorReporting.message("Could not parse JSON: " + url +
+            "<br />" + e.getMessage());
+        return;
+      }
+      XMLHttpRequest xhr = XMLHttpRequest.create();
+      xhr.open("GET", url);
+      xhr.setOnReadyStateChange(this);
+      xhr.send();
+    }
+  }
+
+  /**
+   * Receives the answer to the conditional request with which a cached
+   * manifest is revalidated.
+   */
+  private class ManifestRevalidator implements RequestCallback {
+    String url, baseURL, cachedText;
+
+    ManifestRevalidator(String url, String baseURL, String cachedText) {
+      this.url = url;
+      this.baseURL = baseURL;
+      this.cachedText = cachedText;
+    }
+
+    /* (non-Javadoc)
+     * @see com.google.gwt.http.client.RequestCallback#onError(com.google.gwt.http.client.Request, java.lang.Throwable)
+     */
+    public void onError(Request request, Throwable exception) {
+      GWT.log("Could not revalidate " + url + ": " + exception.getMessage());
+    }
+
+    /* (non-Javadoc)
+     * @see com.google.gwt.http.client.RequestCallback#onResponseReceived(com.google.gwt.http.client.Request, com.google.gwt.http.client.Response)
+     */
+    public void onResponseReceived(Request request, Response response) {
+      int statusCode = response.getStatusCode();
+      if (statusCode == Response.SC_NOT_MODIFIED) {
+        GWT.log("Cached manifest is up to date: " + url);
+      } else if (statusCode == Response.SC_OK) {
+        String text = response.getText();
+        String etag = response.getHeader("ETag");
+        String lastModified = response.getHeader("Last-Modified");
+        boolean changed = !text.equals(cachedText);
+        if (changed && navigable) {
+          try {
+            replaceManifest(parseManifest(text), baseURL,
+                validator(etag, lastModified));
+          } catch (JSONException e) {
+            GWT.log("Could not parse JSON: " + url + ": " + e.getMessage());
+            manifestCache.remove(url);
+            return;
+          }
+        }
+        manifestCache.put(url, text, etag, lastModified);
+        if (changed && navigable) {
+          GWT.log("Manifest has changed on the server: " + url);
+          if (updateReport != null) {
+            updateReport.callback(ImageCollectionReader.this);
+          }
+        }
+      } else if (statusCode == 404 || statusCode == 410) {
+        // the manifest has vanished; the album will fall back to the
+        // separate files the next time it is loaded
+        manifestCache.remove(url);
+      }
+    }
+  }
+
+  /**
+   * The name of the html meta-tag that contains an alternative file name
    * for file "info.json". This meta-tag allows to switch the info.json,
    * file that control the appearance of the photo album, from within the
    * the html page that contains the photo album script.  
    */
   public static final String METANAME_INFO = "info";
   
+  /**
+   * The name of the html meta-tag that selects the loading mode. If its
+   * content is <code>LOADING_SEQUENTIAL</code> the .json files are 
+   * requested one after the other, otherwise they are requested 
+   * concurrently. 
+   */
+  public static final String METANAME_LOADING = "loading";
+  /** content of the "loading" meta-tag for concurrent loading (default) */
+  public static final String LOADING_CONCURRENT = "concurrent";
+  /** content of the "loading" meta-tag for sequential loading */
+  public static final String LOADING_SEQUENTIAL = "sequential";
+
+  /**
+   * The name of the html meta-tag that controls the caching of the
+   * manifest in the local storage of the browser. If its content is
+   * <code>CACHE_NONE</code> the manifest is not cached.
+   */
+  public static final String METANAME_CACHE = "cache";
+  /** content of the "cache" meta-tag for switching the cache off */
+  public static final String CACHE_NONE = "none";
+
+  /** The file name of the manifest that bundles all .json files */
+  public static final String MANIFEST_FILE_NAME = "album.json";
+  /** The default file name of the info file */
+  public static final String DEFAULT_INFO_FILE_NAME = "info.json";
+  /** The key of the manifest that marks a paged album */
+  public static final String PAGED_KEY = "paged";
+  /** The file name prefix of the pages of a paged album */
+  public static final String PAGE_FILE_PREFIX = "album-page-";
+  
   /** An instance of the inner <code>MessageDialog</code> class. */
   public static final IMessage ERROR_DIALOG = new MessageDialog();
   /** An instanca of interface <code>IMessage</code> that silently 
@@ -247,19 +564,55 @@ public class ImageCollectionReader implements ImageCollectionInfo {
   };
   
   
+  /**
+   * Returns the file name of a URL without the query string.
+   */
+  private static String fileName(String url) {
+    int end = url.indexOf('?');
+    if (end < 0) end = url.length();
+    return url.substring(url.lastIndexOf('/', end)+1, end);
+  }
+  
+  /**
+   * Returns the value that identifies the version of a manifest, i.e. 
+   * its "ETag" header or, if there is none, its "Last-Modified" header. 
+   * @return the version or <code>null</code>, if there is none
+   */
+  private static String validator(String etag, String lastModified) {
+    if (etag != null && !etag.isEmpty()) return etag;
+    if (lastModified != null && !lastModified.isEmpty()) return lastModified;
+    return null;
+  }
+  
   private static native void redirect(String url)/*-{
   $wnd.location = url;
 }-*/;   
   
   
-  private SafeHtml[] captions;
+  private Captions captions;
   private HashMap<String, String> captionDictionary;
   private String[] directories;
   private boolean finished = false;  
   private String[] imageNames;
   private HashMap<String, int[][]> imageSizes;
+  private ImageSizeTable sizeTable;
+  private AlbumStreamParser pendingSizes;  // sizes waiting for the names
   private HashMap<String, String> info;
   private String infoFileName;
+  private boolean sequential = false;
+  private String baseURL;
+  private IMessage errorReport;
+  private ICallback navigableReport;
+  private boolean navigable = false;
+  private ICallback updateReport;
+  private ManifestCache manifestCache;
+  private int pageSize = 0;   // 0 means: not paged
+  private String pageVersion = null;  // version of the manifest, see retrievePage
+  private boolean[] pagesLoaded, pagesRequested;
+  private ArrayList<PageRequest> pageRequests = new ArrayList<PageRequest>();
+  private HashMap<String, Integer> loadingTimes = new HashMap<String, Integer>();
+  private Duration totalDuration = new Duration();
+  private int totalLoadingTime = -1;
   
   /**
    * Reads the information about the image collection from several json files 
@@ -278,24 +631,74 @@ public class ImageCollectionReader implements ImageCollectionInfo {
    */
   public ImageCollectionReader(String baseURL, ICallback readyReport, 
       IMessage errorReport) {
+    this(baseURL, null, readyReport, errorReport);
+  }
+
+  /**
+   * Reads the information about the image collection like the constructor 
+   * above, but issues <code>navigableReport</code> as soon as everything
+   * except the captions has been loaded. At this stage all getter methods
+   * can be used, but the captions returned by <code>getCaptions</code> 
+   * are not loaded yet (see {@link Captions#isLoaded()}).
+   * 
+   * @param baseURL          the base URL of the image collection
+   * @param navigableReport  the callback that is to be issued when the
+   *                         images can be displayed or <code>null</code>
+   * @param readyReport      the callback that is to be issued when loading 
+   *                         the information about the image collection is 
+   *                         ready or <code>null</code>
+   * @param errorReport      the callback for reporting errors.
+   */
+  public ImageCollectionReader(String baseURL, ICallback navigableReport,
+      ICallback readyReport, IMessage errorReport) {
     // Element info = DOM.getElementById("info");
     NodeList<Element> metaTags = Document.get().getElementsByTagName("meta");
-    this.infoFileName = "info.json";    
+    this.infoFileName = DEFAULT_INFO_FILE_NAME;    
+    String loading = LOADING_CONCURRENT;
+    String cache = "";
     int length = metaTags.getLength();
     for (int i = 0; i < length; i++) {
       Element item = metaTags.getItem(i);
       if (item.getAttribute("name").equalsIgnoreCase(METANAME_INFO)) {
         this.infoFileName = item.getAttribute("content");
-        break;
+      } else if (item.getAttribute("name").equalsIgnoreCase(METANAME_LOADING)) {
+        loading = item.getAttribute("content");
+      } else if (item.getAttribute("name").equalsIgnoreCase(METANAME_CACHE)) {
+        cache = item.getAttribute("content");
       }
-    } 
-    retrieveSequentially(baseURL, readyReport, errorReport);      
+    }
+    sequential = loading.equalsIgnoreCase(LOADING_SEQUENTIAL);
+    if (!cache.equalsIgnoreCase(CACHE_NONE)) {
+      manifestCache = ManifestCache.getIfSupported();
+    }
+    this.baseURL = baseURL;
+    this.errorReport = errorReport;
+    this.navigableReport = navigableReport;
+    retrieveManifest(baseURL, readyReport, errorReport);
   } 
+
+  /**
+   * Creates a reader that starts with the data of another reader, but 
+   * does not request anything. It takes up a new manifest, before the
+   * data of the other reader is replaced (see <code>replaceManifest</code>).
+   * 
+   * @param current  the reader the data of which is replaced
+   */
+  private ImageCollectionReader(ImageCollectionReader current) {
+    infoFileName = current.infoFileName;
+    baseURL = current.baseURL;
+    errorReport = current.errorReport;
+    directories = current.directories;
+    imageNames = current.imageNames;
+    sizeTable = current.sizeTable;
+    captionDictionary = current.captionDictionary;
+    info = current.info;
+  }
   
   /* (non-Javadoc)
    * @see de.eckhartarnold.client.ImageCollectionInterface#getCaptions()
    */
-  public SafeHtml[] getCaptions() {
+  public Captions getCaptions() {
     assert captions != null : "captions not loaded yet!";
     return captions;
   }
@@ -308,6 +711,13 @@ public class ImageCollectionReader implements ImageCollectionInfo {
     return directories;
   }
   
+  /* (non-Javadoc)
+   * @see de.eckhartarnold.client.ImageCollectionInterface#getImageCount()
+   */
+  public int getImageCount() {
+    return getImageNames().length;
+  }
+  
   /* (non-Javadoc)
    * @see de.eckhartarnold.client.ImageCollectionInterface#getImageNames()
    */
@@ -316,14 +726,30 @@ public class ImageCollectionReader implements ImageCollectionInfo {
     return imageNames;    
   }
   
-  /* (non-Javadoc)
+  /**
+   * Returns the sizes of the images as a dictionary. For paged albums the
+   * dictionary only contains the images of the pages that have been 
+   * loaded when it is requested; it is built anew after another page has
+   * been loaded.
+   * 
    * @see de.eckhartarnold.client.ImageCollectionInterface#getImageSizes()
    */
   public HashMap<String, int[][]> getImageSizes() {
+    if (imageSizes == null && sizeTable != null) {
+      imageSizes = sizeTable.toHashMap(getImageNames());
+    }
     assert imageSizes != null: "information about image sizes not loaded yet!";
     return imageSizes;
   }
 
+  /* (non-Javadoc)
+   * @see de.eckhartarnold.client.ImageCollectionInterface#getSizeTable()
+   */
+  public ImageSizeTable getSizeTable() {
+    assert sizeTable != null: "information about image sizes not loaded yet!";
+    return sizeTable;
+  }
+
   /* (non-Javadoc)
    * @see de.eckhartarnold.client.ImageCollectionInterface#getInfo()
    */
@@ -333,8 +759,53 @@ public class ImageCollectionReader implements ImageCollectionInfo {
     return info;
   }
   
+  /**
+   * Returns the time in milliseconds that it took to retrieve and parse
+   * each of the .json files, keyed by file name. Files that have not yet
+   * been processed are not contained in the dictionary. 
+   * 
+   * @return a dictionary that maps file names to loading times
+   */
+  public HashMap<String, Integer> getLoadingTimes() {
+    return loadingTimes;
+  }
+  
+  /**
+   * Returns the time in milliseconds from the instantiation of the
+   * reader until the ready callback was issued.
+   * 
+   * @return the total loading time or -1, if loading has not yet finished
+   */
+  public int getTotalLoadingTime() {
+    return totalLoadingTime;
+  }
+  
+  /**
+   * Registers a callback that is issued after the data of the reader has
+   * been replaced by a manifest that has changed on the server. Objects 
+   * which have been built from the old data should be built anew, when it
+   * is issued. They can still use the old data until then, because the
+   * old arrays and tables are not changed, but replaced.
+   *
+   * @param updateReport  the callback or <code>null</code>
+   */
+  public void setUpdateReport(ICallback updateReport) {
+    this.updateReport = updateReport;
+  }
+
+  /* (non-Javadoc)
+   * @see de.eckhartarnold.client.ImageCollectionInfo#hasCaptions()
+   */
   public boolean hasCaptions() {
-    return captionDictionary.isEmpty();
+    // as long as the captions have not been loaded, there might be some
+    return captionDictionary == null || !captionDictionary.isEmpty();
+  }
+  
+  /* (non-Javadoc)
+   * @see de.eckhartarnold.client.ImageCollectionInfo#isLoaded(int)
+   */
+  public boolean isLoaded(int index) {
+    return pageSize == 0 || pagesLoaded[index / pageSize];
   }
   
   /**
@@ -344,60 +815,42 @@ public class ImageCollectionReader implements ImageCollectionInfo {
    * @return true, if the information about the image collection is ready
    */
   public boolean isReady() {
-    if (captionDictionary != null && directories != null 
-        && imageNames != null && imageSizes != null && info != null) {
+    return isNavigable() && captions.isLoaded();
+  }
+
+  /**
+   * Returns true, if all information about the image collection except
+   * the captions has been loaded, so that the images can be displayed.
+   * 
+   * @return true, if the image collection can be navigated
+   */
+  public boolean isNavigable() {
+    if (directories != null && imageNames != null && hasSizes() 
+        && info != null) {
+      if (sizeTable == null) {
+        // the order of the table is given by the names
+        sizeTable = pendingSizes.getSizeTable(imageNames);
+        pendingSizes = null;
+      }
+      assert sizeTable == null || sizeTable.size() == imageNames.length :
+        "names: "+imageNames.length+", but sizes: "+sizeTable.size();
       if (captions == null) {
-        captions = new SafeHtml[imageNames.length];
-        for (int i = 0; i < imageNames.length; i++) {
-          if (captionDictionary.containsKey(imageNames[i]))
-            captions[i] = ExtendedHtmlSanitizer.sanitizeHTML(
-                captionDictionary.get(imageNames[i]));            
-          else
-            captions[i] = new OnlyToBeUsedInGeneratedCodeStringBlessedAsSafeHtml("");
-        }
+        captions = new Captions(imageNames, captionDictionary);
+      } else if (captionDictionary != null && !captions.isLoaded()) {
+        captions.setDictionary(captionDictionary);
       }
       return true;
     } else return false;
   }
   
-  private HashMap<String, int[][]> interpretSizes(JSONValue json) 
-      throws JSONException {
-    HashMap<String, int[][]> resolutions = new HashMap<String, int[][]>();    
-    HashMap<String, int[][]> sizes = new HashMap<String, int[][]>();
-    JSONObject dict = json.isObject();
-    JSONArray array = json.isArray();    
- 
-    if (array != null) {
-      JSONObject resDict = array.get(0).isObject();
-      for (String key: resDict.keySet()) {
-        JSONArray resSet = resDict.get(key).isArray();
-        resolutions.put(key, interpretResolutionsArray(resSet));
-      }
-      dict = array.get(1).isObject();
-    } 
-    
-    for (String key: dict.keySet()) {
-//      JSONArray list = dict.get(key).isArray();
-//      resolutions.clear();
-//      for (int i = 0; i < list.size(); i++ ) {
-//        JSONArray xy = list.get(i).isArray();
-//        int res[] = new int[2];
-//        res[0] = (int) xy.get(0).isNumber().doubleValue();
-//        res[1] = (int) xy.get(1).isNumber().doubleValue();
-//        resolutions.add(res);
-//      }
-//      sizes.put(key, resolutions.toArray(new int[resolutions.size()][]));
-      JSONValue value = dict.get(key);
-      array = value.isArray();
-      if (array != null) {
-        sizes.put(key, interpretResolutionsArray(array));
-      } else {
-        sizes.put(key, resolutions.get(value.isString().stringValue()));
-      }
-    }  
-    return sizes;
+  /**
+   * Returns true, if the information about the image sizes has been read.
+   * It may still wait for the image names, though.
+   */
+  private boolean hasSizes() {
+    return sizeTable != null || pendingSizes != null;
   }
-    
+  
   private String[] interpretStringArray(JSONValue json)
       throws JSONException {
     JSONArray array = json.isArray();
@@ -418,36 +871,452 @@ public class ImageCollectionReader implements ImageCollectionInfo {
     return stringDict;
   }
   
-  private int[][] interpretResolutionsArray(JSONArray array) {
-    ArrayList<int[]> resolutions = new ArrayList<int[]>();
-    for (int i = 0; i < array.size(); i++ ) {
-      JSONArray xy = array.get(i).isArray();
-      int res[] = new int[2];
-      res[0] = (int) xy.get(0).isNumber().doubleValue();
-      res[1] = (int) xy.get(1).isNumber().doubleValue();
-      resolutions.add(res);
+  /**
+   * Reads the header and the first page of a paged manifest.
+   * 
+   * @param data  the parsed manifest
+   */
+  private void interpretPagedManifest(AlbumStreamParser data) 
+      throws JSONException {
+    int count = data.getCount();
+    pageSize = data.getPageSize();
+    if (count < 0 || pageSize <= 0) {
+      throw new JSONException("incomplete header of paged manifest");
+    }
+    int pages = (count + pageSize - 1) / pageSize;
+    pagesLoaded = new boolean[pages];
+    pagesRequested = new boolean[pages];
+    imageNames = new String[count];
+    captionDictionary = new HashMap<String, String>();
+    interpretPage(0, data);
+    pagesLoaded[0] = pagesRequested[0] = true;
+  }
+  
+  /**
+   * Enters the image names, captions and sizes of a page into the 
+   * image collection info. 
+   * 
+   * @param page  the number of the page
+   * @param data  a parsed page or manifest with the sections "filenames", 
+   *              "captions" and "resolutions" 
+   */
+  private void interpretPage(int page, AlbumStreamParser data) 
+      throws JSONException {
+    int offset = page * pageSize;
+    String[] names = data.getStrings(AlbumStreamParser.FILENAMES);
+    if (names == null || !data.contains(AlbumStreamParser.RESOLUTIONS)) {
+      throw new JSONException("incomplete page " + page);
+    }
+    // a page of another version of the album does not fit the header
+    if (names.length != Math.min(pageSize, imageNames.length - offset)) {
+      throw new JSONException("page " + page + " does not match the " +
+          "manifest: " + names.length + " images");
+    }
+    ImageSizeTable part = data.getSizeTable(names);
+    if (sizeTable == null) {
+      sizeTable = new ImageSizeTable(part.steps(), imageNames.length);
+    } else if (part.steps() != sizeTable.steps()) {
+      throw new JSONException("page " + page + " does not match the " +
+          "manifest: " + part.steps() + " size steps");
+    }
+    // nothing is entered before the page has been checked
+    if (data.contains(AlbumStreamParser.CAPTIONS)) {
+      captionDictionary.putAll(data.getDictionary(AlbumStreamParser.CAPTIONS));
+    }
+    sizeTable.insert(offset, part);
+    // names come last, because a name signals that the entries are complete
+    System.arraycopy(names, 0, imageNames, offset, names.length);
+    imageSizes = null;  // rebuilt with the new page by getImageSizes()
+  }
+  
+  /**
+   * Reads the manifest that contains the data of all .json files. Parts 
+   * that are missing in the manifest are read from the separate files
+   * afterwards.
+   * 
+   * @param data     the parsed manifest
+   * @param baseURL  the base URL of the image collection
+   */
+  private void interpretManifest(AlbumStreamParser data, String baseURL) 
+      throws JSONException {
+    if (data.contains(AlbumStreamParser.DIRECTORIES)) {
+      directories = data.getStrings(AlbumStreamParser.DIRECTORIES);
+      for (int i = 0; i < directories.length; i++) 
+        directories[i] = baseURL + "/" + directories[i];
+    }
+    if (data.contains(AlbumStreamParser.PAGED)) {
+      interpretPagedManifest(data);
+    } else {
+      if (data.contains(AlbumStreamParser.FILENAMES)) {
+        imageNames = data.getStrings(AlbumStreamParser.FILENAMES);
+      }
+      if (data.contains(AlbumStreamParser.CAPTIONS)) {
+        captionDictionary = data.getDictionary(AlbumStreamParser.CAPTIONS);
+      }
+      if (data.contains(AlbumStreamParser.RESOLUTIONS)) {
+        pendingSizes = data;
+      }
+    }
+    // an info file that has been selected by a meta-tag takes precedence 
+    // over the info in the manifest
+    if (data.contains(AlbumStreamParser.INFO) 
+        && infoFileName.equals(DEFAULT_INFO_FILE_NAME)) {
+      info = data.getDictionary(AlbumStreamParser.INFO);
+    }
+  }
+  
+  /**
+   * Parses the text of a manifest in one piece.
+   * 
+   * @param text  the text of the manifest
+   * @return the parsed manifest
+   */
+  private static AlbumStreamParser parseManifest(String text) 
+      throws JSONException {
+    AlbumStreamParser data = new AlbumStreamParser(AlbumStreamParser.MANIFEST);
+    data.feed(text);
+    data.finish();
+    return data;
+  }
+  
+  /**
+   * Drops all page requests that wait for a page which could not be 
+   * loaded and executes their <code>failed</code> commands.
+   * 
+   * @param page  the number of the page that could not be loaded
+   */
+  private void failPageRequests(int page) {
+    ArrayList<PageRequest> waiting = pageRequests;
+    pageRequests = new ArrayList<PageRequest>();
+    for (PageRequest request: waiting) {
+      if (request.from / pageSize <= page 
+          && page <= (request.to - 1) / pageSize) {
+        if (request.failed != null) request.failed.execute();
+      } else {
+        pageRequests.add(request);
+      }
+    }
+  }
+
+  /**
+   * Executes the commands of all page requests, the images of which are 
+   * now completely loaded.
+   */
+  private void firePageRequests() {
+    ArrayList<PageRequest> waiting = pageRequests;
+    pageRequests = new ArrayList<PageRequest>();
+    for (PageRequest request: waiting) {
+      if (rangeLoaded(request.from, request.to)) {
+        if (request.loaded != null) request.loaded.execute();
+      } else {
+        pageRequests.add(request);
+      }
+    }
+  }
+  
+  /**
+   * Returns true, if all pages that contain the images from 
+   * <code>from</code> to <code>to</code> (exclusive) have been loaded.
+   */
+  private boolean rangeLoaded(int from, int to) {
+    if (pageSize == 0 || from >= to) return true;
+    for (int page = from / pageSize; page <= (to - 1) / pageSize; page++) {
+      if (!pagesLoaded[page]) return false;
     }
-    return resolutions.toArray(new int[resolutions.size()][]);    
+    return true;
   }
   
   private void readJSON(String url, JSONDelegate task, IMessage error) {
+    readJSON(url, task, error, null);
+  }
+
+  /**
+   * Reads a .json file either from a hidden tag or from the server. If
+   * <code>fallback</code> is not <code>null</code> it will be executed
+   * instead of reporting an error in case the file cannot be retrieved.
+   */
+  private void readJSON(String url, JSONDelegate task, IMessage error,
+      Command fallback) {
+    readJSON(new JSONReceiver(url, task, error, fallback));
+  }
+
+  private void readJSON(JSONReceiver receiver) {
+    String url = receiver.url;
+    IMessage error = receiver.errorReporting;
+    Command fallback = receiver.fallback;
     RequestBuilder builder = new RequestBuilder(RequestBuilder.GET, url);
-    JSONReceiver receiver = new JSONReceiver(url, task, error);
-    if (!receiver.extractJSONfromHTML()) {    
+    if (!receiver.extractJSONfromHTML()) {
       try {
         builder.sendRequest(null, receiver);
       } catch (RequestException e) {
-        error.message("Couldn't retrieve JSON: " + url + 
-            "<br />" + e.getMessage());
+        if (fallback != null) {
+          fallback.execute();
+        } else {
+          error.message("Couldn't retrieve JSON: " + url + 
+              "<br />" + e.getMessage());
+        }
       }
     }    
   }  
   
-  private void retrieveSequentially(String baseURL, ICallback readyReport, 
+  /**
+   * Reads one of the larger .json files with an {@link AlbumStreamParser}
+   * while it is being loaded. 
+   */
+  private void readStream(String url, String kind, StreamDelegate task,
+      IMessage error) {
+    new StreamReceiver(url, kind, task, error, null).send();
+  }
+
+  /**
+   * Replaces the data of the reader by the data of a new manifest. The 
+   * manifest is read into a fresh reader first, so that the data is 
+   * either replaced completely or not at all. Data that is not contained
+   * in the new manifest is kept. Pending page requests are issued again 
+   * for the pages of the new manifest.
+   *
+   * @param data     the new manifest
+   * @param baseURL  the base URL of the image collection
+   * @param version  the validator of the new manifest, see 
+   *                 <code>retrievePage</code>
+   * @throws JSONException if the manifest is incomplete or invalid
+   */
+  private void replaceManifest(AlbumStreamParser data, String baseURL,
+      String version) throws JSONException {
+    ImageCollectionReader fresh = new ImageCollectionReader(this);
+    if (data.contains(AlbumStreamParser.PAGED) 
+        || data.contains(AlbumStreamParser.RESOLUTIONS)) {
+      fresh.sizeTable = null;  // a new table, the old one is not changed
+    }
+    fresh.interpretManifest(data, baseURL);
+    if (!fresh.isNavigable() || fresh.sizeTable.size() != 
+        fresh.imageNames.length) {
+      throw new JSONException("incomplete manifest");
+    }
+
+    directories = fresh.directories;
+    imageNames = fresh.imageNames;
+    imageSizes = null;
+    sizeTable = fresh.sizeTable;
+    pendingSizes = null;
+    captionDictionary = fresh.captionDictionary;
+    captions = fresh.captions;
+    info = fresh.info;
+    pageSize = fresh.pageSize;
+    pagesLoaded = fresh.pagesLoaded;
+    pagesRequested = fresh.pagesRequested;
+    pageVersion = version;
+    ArrayList<PageRequest> waiting = pageRequests;
+    pageRequests = new ArrayList<PageRequest>();
+    for (PageRequest request: waiting) {
+      requestImages(request.from, request.to, request.loaded, 
+          request.failed);
+    }
+  }
+
+  /* (non-Javadoc)
+   * @see de.eckhartarnold.client.ImageCollectionInfo#requestImages(int, int, com.google.gwt.user.client.Command)
+   */
+  public void requestImages(int from, int to, Command loaded) {
+    requestImages(from, to, loaded, null);
+  }
+
+  /* (non-Javadoc)
+   * @see de.eckhartarnold.client.ImageCollectionInfo#requestImages(int, int, com.google.gwt.user.client.Command, com.google.gwt.user.client.Command)
+   */
+  public void requestImages(int from, int to, Command loaded, 
+      Command failed) {
+    from = Math.max(from, 0);
+    to = Math.min(to, getImageCount());
+    if (rangeLoaded(from, to)) {
+      if (loaded != null) loaded.execute();
+      return;
+    }
+    if (loaded != null || failed != null) {
+      pageRequests.add(new PageRequest(from, to, loaded, failed));
+    }
+    for (int page = from / pageSize; page <= (to - 1) / pageSize; page++) {
+      retrievePage(page);
+    }
+  }
+  
+  /**
+   * Reads the separate .json files either concurrently or sequentially 
+   * depending on the loading mode. Only the data that is still missing 
+   * will be requested.
+   */
+  private void retrieveFiles(String baseURL, ICallback readyReport, 
+      IMessage errorReport) {
+    if (sequential) {
+      retrieveSequentially(baseURL, readyReport, errorReport);
+    } else {
+      retrieveConcurrently(baseURL, readyReport, errorReport);
+    }
+  }
+  
+  /**
+   * Requests a page of a paged album, unless it has already been requested.
+   * If the page cannot be loaded, the requests that wait for it fail and
+   * the page can be requested again.
+   * 
+   * @param page  the number of the page
+   */
+  private void retrievePage(int page) {
+    if (pagesRequested[page]) return;
+    pagesRequested[page] = true;
+    final int nr = page;
+    String url = baseURL + "/" + PAGE_FILE_PREFIX + page + ".json";
+    // pages are requested for the version of the manifest, so that the
+    // browser does not combine them with a manifest of another version
+    if (pageVersion != null) {
+      url += "?v=" + URL.encodeQueryString(pageVersion);
+    }
+    readStream(url, AlbumStreamParser.MANIFEST, new StreamDelegate() {
+      public void process(AlbumStreamParser data) {
+        try {
+          interpretPage(nr, data);
+        } catch (JSONException e) {
+          // the cached manifest is outdated; it will be loaded anew
+          if (manifestCache != null) {
+            manifestCache.remove(baseURL + "/" + MANIFEST_FILE_NAME);
+          }
+          throw e;
+        }
+        pagesLoaded[nr] = true;
+        firePageRequests();
+      }
+    }, new IMessage() {
+      public void message(String msg) {
+        pagesRequested[nr] = false;
+        failPageRequests(nr);
+        errorReport.message(msg);
+      }
+    });
+  }
+  
+  /**
+   * Tries to read the image collection info from the manifest file and
+   * falls back to reading the separate .json files, if the manifest does
+   * not exist. If the manifest is cached, the cached manifest is used
+   * and revalidated in the background.
+   */
+  private void retrieveManifest(String baseURL, ICallback readyReport,
       IMessage errorReport) {
     final ICallback ready = readyReport;
     final IMessage error = errorReport;
-    final ImageCollectionReader src = this;
+    final String url = baseURL;
+    String manifestURL = baseURL + "/" + MANIFEST_FILE_NAME;
+
+    // a manifest that is embedded in the html page is always up to date
+    if (manifestCache != null
+        && Document.get().getElementById(MANIFEST_FILE_NAME) == null
+        && retrieveCachedManifest(manifestURL, baseURL, readyReport,
+            errorReport)) return;
+
+    StreamReceiver receiver = new StreamReceiver(manifestURL, 
+        AlbumStreamParser.MANIFEST, new StreamDelegate() {
+      public void process(AlbumStreamParser data) {
+        interpretManifest(data, url);
+        if (!checkReady(ready)) retrieveFiles(url, ready, error);
+      }
+    }, errorReport, new Command() {
+      public void execute() {
+        retrieveFiles(url, ready, error);
+      }
+    });
+    receiver.cacheable = true;
+    receiver.send();
+  }
+
+  /**
+   * Starts the album from the cached manifest, if there is one, and sends
+   * a conditional request to find out whether it is still up to date.
+   *
+   * @return true, if a cached manifest has been found
+   */
+  private boolean retrieveCachedManifest(String manifestURL, String baseURL,
+      ICallback readyReport, IMessage errorReport) {
+    String text = manifestCache.getData(manifestURL);
+    if (text == null) return false;
+    AlbumStreamParser data;
+    Duration parseDuration = new Duration();
+    try {
+      data = parseManifest(text);
+    } catch (JSONException e) {
+      manifestCache.remove(manifestURL);
+      return false;
+    }
+    loadingTimes.put(MANIFEST_FILE_NAME, parseDuration.elapsedMillis());
+    GWT.log("JSON " + MANIFEST_FILE_NAME + " read from cache");
+    pageVersion = validator(manifestCache.getETag(manifestURL),
+        manifestCache.getLastModified(manifestURL));
+
+    // the conditional request is sent first, so that it runs while the
+    // album is being built
+    RequestBuilder builder = new RequestBuilder(RequestBuilder.GET,
+        manifestURL);
+    String etag = manifestCache.getETag(manifestURL);
+    String lastModified = manifestCache.getLastModified(manifestURL);
+    if (etag != null) builder.setHeader("If-None-Match", etag);
+    if (lastModified != null) {
+      builder.setHeader("If-Modified-Since", lastModified);
+    }
+    try {
+      builder.sendRequest(null,
+          new ManifestRevalidator(manifestURL, baseURL, text));
+    } catch (RequestException e) {
+      GWT.log("Could not revalidate " + manifestURL + ": " + e.getMessage());
+    }
+
+    try {
+      interpretManifest(data, baseURL);
+      if (!checkReady(readyReport)) {
+        retrieveFiles(baseURL, readyReport, errorReport);
+      }
+    } catch (JSONException e) {
+      manifestCache.remove(manifestURL);
+      errorReport.message("Could not parse JSON: " + manifestURL +
+          "<br />" + e.getMessage());
+    }
+    return true;
+  }
+  
+  /**
+   * Issues the ready callback, if all .json files have been processed and
+   * the callback has not been issued before. In the concurrent loading mode
+   * this serves as completion barrier for the five requests. Before, the
+   * navigable callback is issued, if everything but the captions has 
+   * been processed.
+   * 
+   * @param ready  the ready callback
+   * @return true, if all data is present, false otherwise
+   */
+  private boolean checkReady(ICallback ready) {
+    if (!navigable && isNavigable()) {
+      navigable = true;
+      GWT.log("Image collection navigable after " + 
+          totalDuration.elapsedMillis() + " ms");
+      if (navigableReport != null) navigableReport.callback(this);
+    }
+    if (isReady()) {
+      if (!finished) {
+        finished = true;
+        totalLoadingTime = totalDuration.elapsedMillis();
+        GWT.log("Image collection info ready after " + totalLoadingTime + " ms");
+        if (ready != null) ready.callback(this);
+      }
+      return true;
+    } else return false;
+  }
+  
+  /**
+   * Requests all missing .json files at once. The files are processed in
+   * whatever order they arrive; the ready callback is issued by 
+   * <code>checkReady</code> after the last one has been processed.
+   */
+  private void retrieveConcurrently(String baseURL, ICallback readyReport,
+      IMessage errorReport) {
+    final ICallback ready = readyReport;
     final String url = baseURL;
     
     if (directories == null) {
@@ -456,47 +1325,83 @@ public class ImageCollectionReader implements ImageCollectionInfo {
           directories = interpretStringArray(json);
           for (int i = 0; i < directories.length; i++) 
             directories[i] = url + "/" + directories[i];
-          if (isReady() && !finished) {
-            finished = true;
-            ready.callback(src);
-          }
-          else retrieveSequentially(url, ready, error);
+          checkReady(ready);
         }
       }, errorReport);
-      
-    } else if (imageNames == null) {
-      readJSON(baseURL+"/filenames.json", new JSONDelegate() {
+    }
+    
+    if (imageNames == null) {
+      readStream(baseURL+"/filenames.json", AlbumStreamParser.FILENAMES, 
+          new StreamDelegate() {
+        public void process(AlbumStreamParser data) {
+          imageNames = data.getStrings(AlbumStreamParser.FILENAMES);
+          checkReady(ready);
+        }
+      }, errorReport);
+    }
+    
+    if (!hasSizes()) {
+      readStream(baseURL+"/resolutions.json", AlbumStreamParser.RESOLUTIONS, 
+          new StreamDelegate() {
+        public void process(AlbumStreamParser data) {
+          pendingSizes = data;
+          checkReady(ready);
+        }
+      }, errorReport);
+    }
+    
+    if (info == null) {
+      readJSON(baseURL+"/" + infoFileName, new JSONDelegate() {
         public void process(JSONValue json) {
-          imageNames = interpretStringArray(json);
-          if (isReady() && !finished) {
-            finished = true;
-            ready.callback(src);
-          }
-          else retrieveSequentially(url, ready, error);
+          info = interpretStringDictionary(json);
+          checkReady(ready);
         }
-      }, errorReport);    
+      }, errorReport);
+    }
+
+    // the captions are not needed for displaying the images
+    if (captionDictionary == null) {
+      readStream(baseURL+"/captions.json", AlbumStreamParser.CAPTIONS, 
+          new StreamDelegate() {
+        public void process(AlbumStreamParser data) {
+          captionDictionary = data.getDictionary(AlbumStreamParser.CAPTIONS);
+          checkReady(ready);
+        }
+      }, errorReport);
+    }
+  }
+  
+  private void retrieveSequentially(String baseURL, ICallback readyReport, 
+      IMessage errorReport) {
+    final ICallback ready = readyReport;
+    final IMessage error = errorReport;
+    final String url = baseURL;
     
-    } else if (captionDictionary == null) {
-      readJSON(baseURL+"/captions.json", new JSONDelegate() {
+    if (directories == null) {
+      readJSON(baseURL+"/directories.json", new JSONDelegate() {
         public void process(JSONValue json) {
-          captionDictionary = interpretStringDictionary(json);
-          if (isReady() && !finished) {
-            finished = true;
-            ready.callback(src);
-          }
-          else retrieveSequentially(url, ready, error);
+          directories = interpretStringArray(json);
+          for (int i = 0; i < directories.length; i++) 
+            directories[i] = url + "/" + directories[i];
+          if (!checkReady(ready)) retrieveSequentially(url, ready, error);
         }
       }, errorReport);
+      
+    } else if (imageNames == null) {
+      readStream(baseURL+"/filenames.json", AlbumStreamParser.FILENAMES, 
+          new StreamDelegate() {
+        public void process(AlbumStreamParser data) {
+          imageNames = data.getStrings(AlbumStreamParser.FILENAMES);
+          if (!checkReady(ready)) retrieveSequentially(url, ready, error);
+        }
+      }, errorReport);    
     
-    } else if (imageSizes == null) {
-      readJSON(baseURL+"/resolutions.json", new JSONDelegate() {
-        public void process(JSONValue json) {        
-          imageSizes = interpretSizes(json);
-          if (isReady() && !finished) {
-            finished = true;
-            ready.callback(src);
-          }
-          else retrieveSequentially(url, ready, error);          
+    } else if (!hasSizes()) {
+      readStream(baseURL+"/resolutions.json", AlbumStreamParser.RESOLUTIONS, 
+          new StreamDelegate() {
+        public void process(AlbumStreamParser data) {
+          pendingSizes = data;
+          if (!checkReady(ready)) retrieveSequentially(url, ready, error);          
         }
       }, errorReport);
       
@@ -505,11 +1410,16 @@ public class ImageCollectionReader implements ImageCollectionInfo {
         public void process(JSONValue json) {
           GWT.log(json.toString());          
           info = interpretStringDictionary(json);
-          if (isReady() && !finished) {
-            finished = true;
-            ready.callback(src);
-          }
-          else retrieveSequentially(url, ready, error);          
+          if (!checkReady(ready)) retrieveSequentially(url, ready, error);          
+        }
+      }, errorReport);
+
+    } else if (captionDictionary == null) {
+      readStream(baseURL+"/captions.json", AlbumStreamParser.CAPTIONS, 
+          new StreamDelegate() {
+        public void process(AlbumStreamParser data) {
+          captionDictionary = data.getDictionary(AlbumStreamParser.CAPTIONS);
+          if (!checkReady(ready)) retrieveSequentially(url, ready, error);
         }
       }, errorReport);
     }
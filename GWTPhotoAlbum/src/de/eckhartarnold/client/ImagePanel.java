@@ -23,8 +23,13 @@ import java.util.HashMap;
 
 import com.google.gwt.core.client.Duration;
 import com.google.gwt.core.client.GWT;
+import com.google.gwt.dom.client.Document;
+import com.google.gwt.dom.client.Element;
+import com.google.gwt.dom.client.ImageElement;
+import com.google.gwt.dom.client.NativeEvent;
 import com.google.gwt.event.dom.client.ClickEvent;
 import com.google.gwt.event.dom.client.ClickHandler;
+import com.google.gwt.event.dom.client.DomEvent;
 import com.google.gwt.event.dom.client.ErrorEvent;
 import com.google.gwt.event.dom.client.ErrorHandler;
 import com.google.gwt.event.dom.client.HasClickHandlers;
@@ -55,7 +60,9 @@ import com.google.gwt.event.dom.client.TouchStartHandler;
 //import com.google.gwt.event.dom.client.TouchStartEvent;
 //import com.google.gwt.event.dom.client.TouchStartHandler;
 import com.google.gwt.event.shared.HandlerRegistration;
+import com.google.gwt.user.client.DOM;
 import com.google.gwt.user.client.Event;
+import com.google.gwt.user.client.EventListener;
 import com.google.gwt.user.client.Window;
 import com.google.gwt.user.client.ui.AbsolutePanel;
 import com.google.gwt.user.client.ui.Composite;
@@ -71,6 +78,39 @@ import com.google.gwt.user.client.ui.Widget;
  * When the image is exchanged the old image is faded out while
  * the new image is faded in smoothly.
  * 
+ * <p>The effect of changing images is determined by a {@link Transition}, 
+ * which can be chosen with <code>setTransition</code> or with the field 
+ * "transition" of the info file. The frame rate is measured during each 
+ * transition. If too many frames are dropped twice in a row, the panel 
+ * switches to the fallback of the transition.
+ * 
+ * <p>The panel uses two image widgets, which are created once and take
+ * turns in displaying the new and the old image, so that no DOM nodes or
+ * event handlers need to be created for each image.
+ * 
+ * <p>If the browser supports <code>HTMLImageElement.decode()</code>, a new
+ * image is loaded and decoded off the DOM before it starts fading in, so
+ * that decoding a large image does not interrupt the fading. 
+ * 
+ * <p>In progressive mode, a smaller size step of the image that the 
+ * browser has already loaded, e.g. the thumbnail, is scaled up and faded
+ * in at once, while the size step that fits the panel is loaded in the 
+ * background. When it has arrived, it replaces the smaller version 
+ * without fading. Progressive mode is switched on with 
+ * <code>setProgressive</code> or with the field "progressive loading" 
+ * of the info file.
+ * 
+ * <p>In responsive mode, the size steps of an image are handed to the 
+ * browser in the "srcset" attribute together with the displayed width in
+ * the "sizes" attribute, so that the browser picks the size step that
+ * suits the pixel density of the screen and its own cache. Size steps 
+ * that the {@link BandwidthEstimator} predicts to load too slowly or 
+ * that are larger than the {@link SizePolicy} allows are left out. The 
+ * size step that the browser has picked is used for prefetching the 
+ * following images. Responsive mode is switched on with
+ * <code>setResponsive</code> or with the field "responsive images" of 
+ * the info file. It takes precedence over progressive mode.
+ * 
  * @author eckhart
  */
 public class ImagePanel extends Composite implements HasMouseMoveHandlers, 
@@ -98,18 +138,30 @@ public class ImagePanel extends Composite implements HasMouseMoveHandlers,
   
   private class ImageLoadHandler  implements LoadHandler {
     private int           fading; 
+    private boolean       measure;
     private NotifyingFade fader = null;
     private Widget        lastSender = null;
     private Duration      loadDuration = new Duration();
+    private int           loadMillis = -1;
     
-    public ImageLoadHandler(int fading) {
+    public ImageLoadHandler(int fading, boolean measure) {
       this.fading = fading;
+      this.measure = measure;
     }
     
     public boolean isLoaded() {
       return lastSender != null;
     }
     
+    /**
+     * Takes the loading time when the image has arrived. The load event 
+     * itself may be held back until the image has been decoded, but the
+     * decoding time must not be counted as loading time.
+     */
+    public void takeLoadTime() {
+      if (loadMillis < 0) loadMillis = loadDuration.elapsedMillis();
+    }
+    
     public void onLoad(LoadEvent event) {
       Widget sender = (Widget) event.getSource();
       if (sender == active && sender != lastSender) {  // for some reason LOAD events are sometimes fired twice (due to bad IE compatitibilty tests?)!?
@@ -126,19 +178,20 @@ public class ImagePanel extends Composite implements HasMouseMoveHandlers,
             fireDisplay();
           }
         }
-        // use smaller sized images in the future if connection is slow...
-        int elapsed = loadDuration.elapsedMillis();
-        GWT.log("Duration : " + String.valueOf(elapsed));
-        if (elapsed > duration) {
-          GWT.log(String.valueOf(elapsed) + "; " + String.valueOf(duration));
-          if (sizeBias < sizes.length) sizeBias++;
-        } else {
-          while (sizeBias > 0 && elapsed < duration / 3) {
-            sizeBias--; 
-            elapsed = elapsed * 3;
-          }
+        // the browser may have loaded another URL from the "srcset"
+        String url = ((Image) sender).getUrl();
+        if (sender.getElement().hasAttribute("srcset")) {
+          readBrowserStep((Image) sender);
+          String current = currentSrc(sender.getElement());
+          if (current != null) url = current;
+        }
+        // measure the connection, so that the following images load in time
+        if (measure && sizeStep >= 0) {
+          takeLoadTime();
+          bandwidth.record(url, 
+              sizes.width(sizeIndex, sizeStep), 
+              sizes.height(sizeIndex, sizeStep), loadMillis);
         }
-        GWT.log("sizeBias : " + String.valueOf(sizeBias));                  
       }
     }
     
@@ -151,6 +204,63 @@ public class ImagePanel extends Composite implements HasMouseMoveHandlers,
   }
   
   
+  /**
+   * Loads the picked size step of the image in the background in 
+   * progressive mode.
+   */
+  private class Upgrade implements EventListener {
+    final String       url;
+    final ImageElement img;
+    final Duration     loadDuration = new Duration();
+    boolean            loaded = false;
+    
+    Upgrade(String url) {
+      this.url = url;
+      img = Document.get().createImageElement();
+      DOM.sinkEvents(img, Event.ONLOAD | Event.ONERROR);
+      DOM.setEventListener(img, this);
+      img.setSrc(url);
+    }
+    
+    void cancel() {
+      DOM.setEventListener(img, null);
+      img.removeAttribute("src");
+    }
+    
+    public void onBrowserEvent(Event event) {
+      DOM.setEventListener(img, null);
+      if (upgrade != this) return;
+      if (event.getTypeInt() == Event.ONLOAD) {
+        bandwidth.record(url, sizes.width(sizeIndex, sizeStep), 
+            sizes.height(sizeIndex, sizeStep), loadDuration.elapsedMillis());
+        loaded = true;
+        completeUpgrade();
+      } else {
+        GWT.log("ImagePanel.Upgrade.onBrowserEvent: could not load " + url);
+        upgrade = null;
+      }
+    }
+  }
+  
+  
+  /**
+   * Passes the load events of both image buffers to the load handler of 
+   * the current image. Load events of an image that is still being decoded
+   * are held back until it has been decoded, but the loading time is taken
+   * when they arrive.
+   */
+  private class BufferLoadHandler implements LoadHandler {
+    public void onLoad(LoadEvent event) {
+      if (loadHandler == null) return;
+      if (event.getSource() != decoding) {
+        loadHandler.onLoad(event);
+      } else {
+        loadHandler.takeLoadTime();
+      }
+    }
+  }
+  
+  
   private class ImageErrorHandler implements ErrorHandler {
     public void onError(ErrorEvent event) {
       Image img = (Image) event.getSource();
@@ -177,6 +287,7 @@ public class ImagePanel extends Composite implements HasMouseMoveHandlers,
     protected void onComplete() {
       super.onComplete();
       completed = true;
+      checkFrameRate();
       if (loadListener.isLoaded()) fireDisplay();
     }
   }
@@ -205,11 +316,21 @@ public class ImagePanel extends Composite implements HasMouseMoveHandlers,
   
   private static final double  FADE_IN_STEPS = 0.10;
   private static final double  FADE_OUT_STEPS = 0.13;
+  /** the fraction of the display duration within which an image should 
+   *  be loaded */
+  private static final double  LOAD_BUDGET = 0.5;
+  /** share of dropped frames above which a transition counts as slow */
+  private static final double  MAX_DROPPED_RATIO = 0.2;
+  /** number of slow transitions in a row after which the fallback is used */
+  private static final int     SLOW_TRANSITIONS = 2;
+  /** minimum number of frames for judging the frame rate */
+  private static final int     MIN_FRAMES = 10;
 
   /** 
    * The currently active image. When a new photo is loaded the image that
-   * was displayed previously is declared passive and a new active image
-   * is created in the front that takes the new photo and is faded in. 
+   * was displayed previously is declared passive and the other one of the
+   * two image buffers becomes the active image. It is moved in front, takes
+   * the new photo and is faded in. 
    */
   protected Image         active;
   
@@ -250,11 +371,24 @@ public class ImagePanel extends Composite implements HasMouseMoveHandlers,
 	private   int			      panelW, panelH;
 
 	private   int           sizeStep = -1;      // a negative value means: no multiple image sizes present
-  private   int           sizeBias = 0;       // bias in case of slow connection
-  private   int[][]       sizes;
+  private   BandwidthEstimator bandwidth = new BandwidthEstimator();
+  private   SizePolicy    sizePolicy;
+  private   boolean       progressive = false;
+  private   boolean       responsive = false;
+  private   String        srcset = null;      // for the next image in responsive mode
+  private   int           browserStep = -1;   // last size step picked by the browser
+  private   Upgrade       upgrade = null;     // background load in progressive mode
+  private   Image         decoding = null;    // the new image while it is decoded
+  private   ImageSizeTable sizes;
+  private   int           sizeIndex;          // index of the image in the size table
   
   private ArrayList<AttachmentListener> attachmentListeners;
   private DisplayListener   displayListener;
+  private Image[]           buffers = new Image[2];
+  private Transition        transition = Transition.forName(Transition.CROSSFADE);
+  private FrameMeter        frameMeter = new FrameMeter();
+  private int               slowTransitions = 0;
+  private ImageLoadHandler  loadHandler = null;  // of the current image
   private ImageErrorHandler stdImageErrorHandler = new ImageErrorHandler();
 	
 	/**
@@ -276,11 +410,29 @@ public class ImagePanel extends Composite implements HasMouseMoveHandlers,
     if (numStr != null && !numStr.isEmpty()) {
       fading = Integer.parseInt(numStr);
     }
+    transition = Transition.forName(info.get("transition"));
+    numStr = info.get("progressive loading");
+    if (numStr != null && !numStr.isEmpty()) {
+      progressive = Boolean.parseBoolean(numStr);
+    }
+    sizePolicy = SizePolicy.fromInfo(info);
+    numStr = info.get("responsive images");
+    if (numStr != null && !numStr.isEmpty()) {
+      responsive = Boolean.parseBoolean(numStr);
+    }
     envelope = new SimplePanel();
   	panel = new AbsolutePanel();
   	panel.addStyleName("imageBackground");
   	envelope.setWidget(panel);
-    // envelope.setSize("100%", "100%");
+    BufferLoadHandler bufferLoadHandler = new BufferLoadHandler();
+    for (int i = 0; i < buffers.length; i++) {
+      buffers[i] = new Image();
+      buffers[i].addStyleName("slide");
+      Fade.setOpacity(buffers[i], 0.0);
+      buffers[i].addLoadHandler(bufferLoadHandler);
+      buffers[i].addErrorHandler(stdImageErrorHandler);
+      panel.add(buffers[i]);
+    }
   	initWidget(envelope);
   	setSize("100%", "100%");
     sinkEvents(Event.ONCLICK | Event.MOUSEEVENTS | Event.ONMOUSEWHEEL | 
@@ -355,14 +507,34 @@ public class ImagePanel extends Composite implements HasMouseMoveHandlers,
    */
   public void clear() {
     cancelFading(false);
-    if (active != null) {
-      panel.remove(active);
-      active = null;
-    }
-    if (passive != null) {
-      panel.remove(passive);
-      passive = null;
+    cancelUpgrade();
+    if (decoding != null) insertActive();
+    decoding = null;
+    loadHandler = null;
+    for (Image img: buffers) {
+      Fade.reset(img);
+      Fade.setOpacity(img, 0.0);
+      img.getElement().removeAttribute("src");
     }
+    active = null;
+    passive = null;
+  }
+  
+  /**
+   * Returns the estimator of the network throughput that is used to pick
+   * the size of the images. Its estimate can be queried for diagnostics.
+   * @return the bandwidth estimator
+   */
+  public BandwidthEstimator getBandwidthEstimator() {
+    return bandwidth;
+  }
+
+  /**
+   * Returns the meter that measures the frame times of the transitions.
+   * @return the frame meter
+   */
+  public FrameMeter getFrameMeter() {
+    return frameMeter;
   }
   
   /**
@@ -384,6 +556,39 @@ public class ImagePanel extends Composite implements HasMouseMoveHandlers,
     return fading;
   }
   
+  /**
+   * Returns the policy by which the size steps of the images are picked.
+   * @return the size policy
+   */
+  public SizePolicy getSizePolicy() {
+    return sizePolicy;
+  }
+  
+  /**
+   * Returns the transition that is used for changing images.
+   * @return the transition
+   */
+  public Transition getTransition() {
+    return transition;
+  }
+  
+  /**
+   * Returns true, if progressive mode is switched on.
+   * @return true, if in progressive mode
+   */
+  public boolean isProgressive() {
+    return progressive;
+  }
+  
+  /**
+   * Returns true, if responsive mode is switched on and the browser 
+   * supports it.
+   * @return true, if the browser picks the size steps
+   */
+  public boolean isResponsive() {
+    return responsive && Compatibility.supportsSrcset;
+  }
+  
   /**
    * Returns the URL of the <em>largest size version(!)</em> of the currently
    * displayed image. 
@@ -460,8 +665,8 @@ public class ImagePanel extends Composite implements HasMouseMoveHandlers,
     if (lastPanelW != panelW || lastPanelH != panelH) {
       panel.setPixelSize(panelW, panelH);        
       if (active != null) adjustSize(active);      
-      if (sizeStep >= 0) {
-        int newStep = pickSize(sizes);
+      if (sizeStep >= 0 && !isResponsive()) {
+        int newStep = pickSize();
         if (newStep != sizeStep) {
           sizeStep = newStep;
           quickExchangeImage(imageNames[sizeStep]);
@@ -521,6 +726,48 @@ public class ImagePanel extends Composite implements HasMouseMoveHandlers,
     }
   }
   
+  /**
+   * Sets the policy by which the size steps of the images are picked.
+   * The size step of the current image is not changed before the panel is
+   * resized or the next image is shown.
+   * @param sizePolicy  the size policy
+   */
+  public void setSizePolicy(SizePolicy sizePolicy) {
+    this.sizePolicy = sizePolicy;
+  }
+  
+  /**
+   * Sets the transition that is used for changing images.
+   * @param transition  the transition
+   */
+  public void setTransition(Transition transition) {
+    this.transition = transition;
+    slowTransitions = 0;
+  }
+  
+  /**
+   * Switches progressive mode on or off. In progressive mode a smaller
+   * version of the image that has already been loaded is shown at once, 
+   * until the version that fits the panel has been loaded.
+   * 
+   * @param progressive  true, if progressive mode shall be switched on
+   */
+  public void setProgressive(boolean progressive) {
+    this.progressive = progressive;
+  }
+  
+  /**
+   * Switches responsive mode on or off. In responsive mode the browser 
+   * picks the size step of the image from a "srcset" attribute. Browsers
+   * that do not support "srcset" ignore responsive mode.
+   * 
+   * @param responsive  true, if responsive mode shall be switched on
+   */
+  public void setResponsive(boolean responsive) {
+    this.responsive = responsive;
+    browserStep = -1;
+  }
+  
   /**
    * Sets the notifier image, i.e. an overlay image above the slides that may
    * be used to indicate feedback to touch events or the like. The notifier
@@ -597,12 +844,42 @@ public class ImagePanel extends Composite implements HasMouseMoveHandlers,
    */
   public void showImage(String urls[], int[][] sizes,
                         DisplayListener notifier) {
-    assert sizes.length == urls.length;
+    showImage(urls, ImageSizeTable.forImage(sizes), 0, notifier);
+  }
+  
+  /**
+   * Shows a picture for which representations with different image sizes 
+   * exist. Other than the method above, the sizes are taken from the
+   * entry <code>index</code> of a table with the sizes of many images,
+   * so that no extra size arrays need to be created for each picture.
+   *  
+   * @param urls      the URL of different sized versions of the same image,
+   *                  each of them corresponding to one of the size steps
+   * @param sizes     the size table that contains the sizes of the image
+   * @param index     the index of the image in the size table
+   * @param notifier  a callback that is issued when the image is loaded and
+   *                  has faded in
+   */
+  public void showImage(String urls[], ImageSizeTable sizes, int index,
+                        DisplayListener notifier) {
+    assert sizes.steps() == urls.length;
     
     imageNames = urls;
     this.sizes = sizes;
-    sizeStep = pickSize(sizes);
-    exchangeImage(urls[sizeStep], notifier);
+    sizeIndex = index;
+    sizeStep = pickSize();
+    if (isResponsive()) {
+      srcset = buildSrcset();
+      exchangeImage(urls[sizeStep], notifier);
+      return;
+    }
+    int preview = progressive ? pickPreview() : -1;
+    if (preview >= 0) {
+      exchangeImage(urls[preview], notifier, false);
+      upgrade = new Upgrade(urls[sizeStep]);
+    } else {
+      exchangeImage(urls[sizeStep], notifier);
+    }
   }
   
     
@@ -631,27 +908,107 @@ public class ImagePanel extends Composite implements HasMouseMoveHandlers,
    *                  has faded in
    */ 
   protected void exchangeImage(String url, DisplayListener notifier) {
+    exchangeImage(url, notifier, true);
+  }
+  
+  /**
+   * Exchanges the currently displayed image. If <code>measure</code> is
+   * true, the loading time is used to estimate the bandwidth.
+   */
+  private void exchangeImage(String url, DisplayListener notifier, 
+                             boolean measure) {
     cancelFading(false);   
-    Image discard = passive;
-    passive = active;
-    active = new Image();
-    active.addStyleName("slide");
+    cancelUpgrade();
+    if (decoding != null) {
+      // the last image has not been displayed, yet: use its buffer again
+      decoding = null;
+    } else {
+      passive = active;
+      active = (active == buffers[0]) ? buffers[1] : buffers[0];
+    }
+    Fade.reset(active);
     Fade.setOpacity(active, 0.0);
     displayListener = notifier;    
-    ImageLoadHandler loadHandler = new ImageLoadHandler(fading);
-    active.addLoadHandler(loadHandler);
-    active.addErrorHandler(stdImageErrorHandler);
-    if (discard != null) {
-      panel.remove(discard);
-      discard = null;
-    }      
+    loadHandler = new ImageLoadHandler(fading, measure);
+    // removing the old URL first makes sure that the load event is fired, 
+    // even if the buffer showed the same image before
+    active.getElement().removeAttribute("src");
+    active.getElement().removeAttribute("srcset");
+    active.getElement().removeAttribute("sizes");
+    active.setSize("", "");
+    if (srcset != null) {
+      // the "sizes" attribute is set by adjustSize()
+      active.getElement().setAttribute("srcset", srcset);
+      srcset = null;
+    }
     active.setUrl(url);
-    panel.add(active); 
     adjustSize(active);    
-    if (fading < 0) startFading(loadHandler);
-    Compatibility.fireLoadOnIE(active, url, loadHandler);    
+    if (Compatibility.supportsImageDecode) {
+      // only the element leaves the DOM, the widget keeps its handlers
+      active.getElement().removeFromParent();
+      decoding = active;
+      decode(active, loadHandler);
+    } else {
+      insertActive();
+      if (fading < 0) startFading(loadHandler);
+      Compatibility.fireLoadOnIE(active, url, loadHandler);    
+    }
   }  
   
+  /**
+   * Loads and decodes an image, the element of which has been taken off
+   * the DOM, and calls <code>onDecoded</code> when it is ready to be 
+   * displayed. The load handler of the exchange identifies the decode 
+   * request, because the same buffer is used again, if the next image is 
+   * exchanged before this one has been decoded.
+   */
+  private native void decode(Image img, ImageLoadHandler token) /*-{
+    var self = this;
+    var element = img.@com.google.gwt.user.client.ui.UIObject::getElement()();
+    element.decode().then($entry(function() {
+      self.@de.eckhartarnold.client.ImagePanel::onDecoded(Lcom/google/gwt/user/client/ui/Image;Lde/eckhartarnold/client/ImagePanel$ImageLoadHandler;Z)(img, token, true);
+    }), $entry(function() {
+      self.@de.eckhartarnold.client.ImagePanel::onDecoded(Lcom/google/gwt/user/client/ui/Image;Lde/eckhartarnold/client/ImagePanel$ImageLoadHandler;Z)(img, token, false);
+    }));
+  }-*/;
+  
+  /**
+   * Puts the decoded image back on the DOM and starts fading it in. The 
+   * load event, which has been held back while the image was decoded, is 
+   * fired again. If the image could 
+   * not be decoded, an error event is fired instead. Callbacks of decode
+   * requests that have been superseded by a later exchange are ignored,
+   * e.g. the rejection of the old image, when its buffer is used again.
+   * 
+   * @param img      the image that has been decoded
+   * @param token    the load handler of the exchange that requested the
+   *                 decoding
+   * @param success  false, if the image could not be loaded or decoded
+   */
+  private void onDecoded(Image img, ImageLoadHandler token, boolean success) {
+    if (img != decoding || token != loadHandler) return;
+    decoding = null;
+    insertActive();
+    adjustSize(img);
+    if (loadHandler.fading < 0) startFading(loadHandler);
+    NativeEvent event = success ? Document.get().createLoadEvent() :
+                                  Document.get().createErrorEvent();
+    DomEvent.fireNativeEvent(event, img);
+  }
+  
+  /**
+   * Inserts the element of the active image buffer in front of the passive
+   * one, so that it covers the passive image when it fades in.
+   */
+  private void insertActive() {
+    if (passive != null) {
+      panel.getElement().insertAfter(active.getElement(), 
+                                     passive.getElement());
+    } else if (active.getElement().getParentElement() == null) {
+      panel.getElement().insertFirst(active.getElement());
+    }
+  }
+  
   @Override
   protected void onLoad() {
     for (AttachmentListener a: attachmentListeners)
@@ -661,6 +1018,7 @@ public class ImagePanel extends Composite implements HasMouseMoveHandlers,
   @Override
   protected void onUnload() {
     cancelFading(false);    
+    cancelUpgrade();
     for (AttachmentListener a: attachmentListeners)
       a.onUnload(this);
   }  
@@ -671,9 +1029,18 @@ public class ImagePanel extends Composite implements HasMouseMoveHandlers,
    * @param url  the URL of the new image to be displayed
    */
   protected void quickExchangeImage(String url) { 
+    quickExchangeImage(url, true);
+  }
+  
+  /**
+   * Exchanges the current image quickly without fading. If 
+   * <code>measure</code> is true, the loading time is used to estimate
+   * the bandwidth.
+   */
+  private void quickExchangeImage(String url, boolean measure) {
     int fading = getFading();
     setFading(0);
-    exchangeImage(url, displayListener);
+    exchangeImage(url, displayListener, measure);
     setFading(fading);
 //    cancelFading(false);
 //    Image discard = passive;
@@ -698,8 +1065,8 @@ public class ImagePanel extends Composite implements HasMouseMoveHandlers,
   
   	if (img == null) return;
   	if (sizeStep >= 0) {
-  	  imgW = sizes[sizeStep][0];
-  	  imgH = sizes[sizeStep][1];
+  	  imgW = sizes.width(sizeIndex, sizeStep);
+  	  imgH = sizes.height(sizeIndex, sizeStep);
   	} else {
   	  imgW = img.getWidth();
   	  imgH = img.getHeight();
@@ -716,8 +1083,74 @@ public class ImagePanel extends Composite implements HasMouseMoveHandlers,
   		panel.setWidgetPosition(img, 0, (panelH-h)/2);
   	}
   	img.setPixelSize(w, h);
+  	if (img.getElement().hasAttribute("srcset")) {
+  	  img.getElement().setAttribute("sizes", w + "px");
+  	}
   }
 
+  /**
+   * Evaluates the frame times of the transition that has just completed 
+   * and switches to the fallback transition, if too many frames have been
+   * dropped repeatedly.
+   */
+  private void checkFrameRate() {
+    if (!frameMeter.isRunning()) return;
+    frameMeter.stop();
+    if (frameMeter.getFrames() < MIN_FRAMES) return;
+    if (frameMeter.getDroppedRatio() > MAX_DROPPED_RATIO) {
+      slowTransitions++;
+      Transition fallback = transition.getFallback();
+      if (slowTransitions >= SLOW_TRANSITIONS && fallback != null) {
+        GWT.log("ImagePanel: too many dropped frames, switching from " +
+                transition.getName() + " to " + fallback.getName());
+        setTransition(fallback);
+      }
+    } else {
+      slowTransitions = 0;
+    }
+  }
+  
+  /**
+   * Reads the size step that the browser has picked from the "srcset"
+   * of a loaded image, so that the following images can be prefetched 
+   * in the same size step.
+   */
+  private void readBrowserStep(Image img) {
+    String current = currentSrc(img.getElement());
+    if (current == null || imageNames == null) return;
+    for (int i = imageNames.length - 1; i >= 0; i--) {
+      if (current.endsWith(imageNames[i].replace(" ", "%20"))) {
+        browserStep = i;
+        sizeStep = i;
+        return;
+      }
+    }
+  }
+  
+  private static native String currentSrc(Element img) /*-{
+    return img.currentSrc || null;
+  }-*/;
+  
+  private void cancelUpgrade() {
+    if (upgrade != null) {
+      upgrade.cancel();
+      upgrade = null;
+    }
+  }
+  
+  /**
+   * Replaces the smaller version of the image by the picked size step,
+   * once this has been loaded in the background and the smaller version
+   * has been faded in. 
+   */
+  private void completeUpgrade() {
+    if (upgrade != null && upgrade.loaded && displayListener == null) {
+      String url = upgrade.url;
+      upgrade = null;
+      quickExchangeImage(url, false);
+    }
+  }
+  
   /**
    * Calls the display listener. Makes sure that the display listener
    * is never called twice.
@@ -727,6 +1160,7 @@ public class ImagePanel extends Composite implements HasMouseMoveHandlers,
       displayListener.onDisplay();
       displayListener = null;
     }
+    completeUpgrade();
   }
   
   private void fireFade() {
@@ -757,30 +1191,114 @@ public class ImagePanel extends Composite implements HasMouseMoveHandlers,
   }  
   
   
+  /**
+   * Builds the "srcset" attribute for the current image from the size 
+   * steps that can be loaded in time.
+   * 
+   * @return the list of URLs with width descriptors
+   */
+  private String buildSrcset() {
+    StringBuilder set = new StringBuilder();
+    int maxStep = Math.min(pickMaxStep(sizes, sizeIndex), 
+        sizePolicy.select(sizes, sizeIndex, panelW, panelH, 
+                          Compatibility.getDevicePixelRatio(), 
+                          Compatibility.prefersSaveData()));
+    for (int i = 0; i <= maxStep; i++) {
+      if (i > 0) set.append(", ");
+      set.append(imageNames[i].replace(" ", "%20").replace(",", "%2C"))
+         .append(' ').append(sizes.width(sizeIndex, i)).append('w');
+    }
+    return set.toString();
+  }
+  
+  /**
+   * Returns the largest size step of an image that the 
+   * {@link BandwidthEstimator} expects to load within the load budget.
+   */
+  private int pickMaxStep(ImageSizeTable sizes, int index) {
+    int step = sizes.steps() - 1;
+    double budget = duration * LOAD_BUDGET;
+    while (step > 0 && bandwidth.expectedMillis(sizes.width(index, step), 
+        sizes.height(index, step)) > budget) {
+      step--;
+    }
+    return step;
+  }
+  
+  /**
+   * Picks the largest size step below the picked size step that the 
+   * browser has already loaded, so that it can be shown at once in 
+   * progressive mode.
+   * 
+   * @return the size step or -1, if no smaller size step has been loaded
+   *         or if the picked size step has been loaded itself
+   */
+  private int pickPreview() {
+    if (isAvailable(imageNames[sizeStep])) return -1;
+    for (int i = sizeStep - 1; i >= 0; i--) {
+      if (isAvailable(imageNames[i])) return i;
+    }
+    return -1;
+  }
+  
+  /**
+   * Checks whether the browser has an image in its memory cache. The 
+   * browser completes an image from its memory cache immediately when the 
+   * URL is set. Otherwise the download would only start after the script
+   * has returned, so that removing the URL again prevents it.
+   */
+  private static native boolean isAvailable(String url) /*-{
+    var img = $doc.createElement("img");
+    img.src = url;
+    var available = img.complete && img.naturalWidth > 0;
+    img.removeAttribute("src");
+    return available;
+  }-*/;
+  
   /**
    * Picks the most suitable of several steps of image sizes for the current
-   * size of the <code>FlipImagePanel</code>. The <code>sizes</code> must be
-   * a two dimensional array of integers containing one or more discrete steps
-   * of width,height values.
+   * size of the <code>FlipImagePanel</code>. The size steps of the current
+   * image are read from the size table <code>sizes</code>. They must be 
+   * ordered from smallest to largest. The size step is picked by the 
+   * {@link SizePolicy}, which takes the pixel density of the screen and 
+   * the wish to save data into account. If the {@link BandwidthEstimator} 
+   * predicts that the size step will not load within half of the display
+   * duration, the largest smaller size step that will is picked.
    * 
-   * @param sizes  an array of discrete display size steps. Each step is
-   *               described by two integer values resembling the width and
-   *               height. The size steps must be ordered from smallest to 
-   *               largest.
    * @return the size step which is most suitable
    */
-  private int pickSize(int[][] sizes) {
-    for (int i = 0; i < sizes.length - sizeBias; i++) {
-      if (sizes[i][0] >= panelW || sizes[i][1] >= panelH) {
-        return i;
-      }
+  private int pickSize() {
+    return pickSize(sizes, sizeIndex);
+  }
+  
+  /**
+   * Returns the size step that would be picked for the image 
+   * <code>index</code> of the size table at the current size of the panel.
+   * This is needed for prefetching the right version of the following
+   * images, see {@link Slideshow#show(int)}.
+   * 
+   * @param sizes  the size table
+   * @param index  the index of the image in the size table
+   * @return the size step
+   */
+  int pickSize(ImageSizeTable sizes, int index) {
+    if (isResponsive() && browserStep >= 0) {
+      return Math.min(browserStep, pickMaxStep(sizes, index));
+    }
+    int step = sizePolicy.select(sizes, index, panelW, panelH, 
+        Compatibility.getDevicePixelRatio(), Compatibility.prefersSaveData());
+    // use smaller sizes if the connection is too slow for this one
+    double budget = duration * LOAD_BUDGET;
+    while (step > 0 && bandwidth.expectedMillis(sizes.width(index, step), 
+        sizes.height(index, step)) > budget) {
+      step--;
     }
-    return Math.max(0, sizes.length - sizeBias - 1);
+    return step;
       
 // // alternative algorithm:
       
 //    int ret, diff = Integer.MAX_VALUE;
-//    for (int i = 0; i <= sizes.length - sizeBias; i++) {
+//    for (int i = 0; i <= sizes.length; i++) {
 //      int dx = sizes[i][0] - panelW;
 //      int dy = sizes[i][0] - panelH;
 //      int cmp = dx*dx + dy*dy;
@@ -819,12 +1337,16 @@ public class ImagePanel extends Composite implements HasMouseMoveHandlers,
   private void startFading(ImageLoadHandler loadListener) { 
     cancelFading(true);
     fadeIn = new NotifyingFade(active, loadListener);
+    transition.prepareIn(fadeIn, panelW, duration + 2 * Math.abs(fading));
+    frameMeter.start();
     if (passive != null) {
       if (fading > 0) {
         fadeOut = new Fade(passive, 1.0, 0.0, FADE_OUT_STEPS);
+        transition.prepareOut(fadeOut, panelW);
         fadeIn.run(fading);
       } else {
         fadeOut = new ChainedFade(passive, fadeIn, FADE_OUT_STEPS);
+        transition.prepareOut(fadeOut, panelW);
       }
       fadeOut.run(Math.abs(fading));
     } else {
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2008 Eckhart Arnold (eckhart_arnold@hotmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package de.eckhartarnold.client;
+
+import java.util.HashSet;
+
+import com.google.gwt.core.client.EntryPoint;
+import com.google.gwt.core.client.GWT;
+import com.google.gwt.core.client.Scheduler;
+import com.google.gwt.core.client.Scheduler.RepeatingCommand;
+import com.google.gwt.dom.client.Document;
+import com.google.gwt.event.dom.client.ErrorEvent;
+import com.google.gwt.event.dom.client.LoadEvent;
+import com.google.gwt.event.shared.GwtEvent;
+import com.google.gwt.user.client.Window;
+import com.google.gwt.user.client.ui.AbsolutePanel;
+import com.google.gwt.user.client.ui.HTML;
+import com.google.gwt.user.client.ui.RootPanel;
+import com.google.gwt.user.client.ui.Widget;
+
+/**
+ * Soak test of the image buffers of {@link ImagePanel}.
+ *
+ * <p>The test reads the album in the "slides" directory next to the host
+ * page and exchanges the images of an image panel thousands of times,
+ * one exchange per timer tick, so that load and decode events of earlier
+ * exchanges arrive in between. Every 250 transitions it switches between
+ * the fading modes and between progressive and responsive loading. Every
+ * 1000 transitions it counts the widgets and image elements on the panel,
+ * the load and error handlers of these widgets and the distinct widgets
+ * that have appeared on the panel so far. None of these numbers may grow
+ * beyond the numbers right after the panel has been created. There may 
+ * be one image element less, while the new image is decoded off the DOM.
+ *
+ * <p>The test is the entry point of the module
+ * <code>de.eckhartarnold.ImagePanelSoak</code>, which is compiled with the
+ * ant target "soak" and run by opening "war/ImagePanelSoak.html" in a
+ * browser. The number of transitions can be given with the parameter
+ * "transitions" of the URL. The counts are printed on the page and the
+ * result is written into the title of the page: "ImagePanelSoak passed"
+ * or "ImagePanelSoak failed", so that it can also be read by a headless
+ * browser.
+ *
+ * @author eckhart
+ */
+public class ImagePanelSoak implements EntryPoint, RepeatingCommand {
+  private static final int TRANSITIONS = 5000;
+  private static final int MODE_CHANGE = 250;
+  private static final int REPORT = 1000;
+  private static final int[] FADINGS = { 0, 750, -750 };
+
+  private ImageCollectionReader collection;
+  private ImagePanel    imagePanel;
+  private HTML          output = new HTML();
+  private StringBuilder report = new StringBuilder();
+  private HashSet<Widget> seen = new HashSet<Widget>();
+  private int           transitions = TRANSITIONS;
+  private int           count = 0;
+  private int           widgets, images, handlers;
+  private boolean       failed = false;
+
+  /**
+   * Returns the number of load and error handlers of a widget.
+   */
+  private static int countHandlers(Widget widget) {
+    return getHandlerCount(widget, LoadEvent.getType()) +
+           getHandlerCount(widget, ErrorEvent.getType());
+  }
+
+  // Widget.getHandlerCount() is protected, but JSNI can call it
+  private static native int getHandlerCount(Widget widget,
+      GwtEvent.Type<?> type) /*-{
+    return widget.@com.google.gwt.user.client.ui.Widget::getHandlerCount(Lcom/google/gwt/event/shared/GwtEvent$Type;)(type);
+  }-*/;
+
+  /* (non-Javadoc)
+   * @see com.google.gwt.core.client.EntryPoint#onModuleLoad()
+   */
+  public void onModuleLoad() {
+    String param = Window.Location.getParameter("transitions");
+    if (param != null && !param.isEmpty()) {
+      transitions = Integer.parseInt(param);
+    }
+    RootPanel.get().add(output);
+    print("reading the album...");
+    new ImageCollectionReader(GWT.getHostPageBaseURL() + "slides",
+        new ImageCollectionReader.ICallback() {
+      public void callback(ImageCollectionReader src) {
+        collection = src;
+        start();
+      }
+    }, new ImageCollectionReader.IMessage() {
+      public void message(String msg) {
+        failed = true;
+        print("could not read the album: " + msg);
+        finish();
+      }
+    });
+  }
+
+  /* (non-Javadoc)
+   * @see com.google.gwt.core.client.Scheduler.RepeatingCommand#execute()
+   */
+  public boolean execute() {
+    int mode = (count / MODE_CHANGE) % (FADINGS.length * 2);
+    imagePanel.setFading(FADINGS[mode % FADINGS.length]);
+    imagePanel.setProgressive(mode >= FADINGS.length);
+    imagePanel.setResponsive(mode == FADINGS.length * 2 - 1);
+
+    int index = count % collection.getImageCount();
+    if (!collection.isLoaded(index)) index = 0;  // pages are not requested
+    String[] directories = collection.getDirectories();
+    String[] urls = new String[directories.length];
+    for (int i = 0; i < urls.length; i++) {
+      urls[i] = directories[i] + "/" + collection.getImageNames()[index];
+    }
+    imagePanel.showImage(urls, collection.getSizeTable(), index, null);
+    count++;
+
+    AbsolutePanel panel = imagePanel.getPanel();
+    for (int i = 0; i < panel.getWidgetCount(); i++) {
+      seen.add(panel.getWidget(i));
+    }
+    if (count % REPORT == 0 || count == transitions) check();
+    if (count < transitions) return true;
+    finish();
+    return false;
+  }
+
+  private void check() {
+    AbsolutePanel panel = imagePanel.getPanel();
+    int w = panel.getWidgetCount();
+    int img = panel.getElement().getElementsByTagName("img").getLength();
+    int h = 0;
+    for (int i = 0; i < w; i++) h += countHandlers(panel.getWidget(i));
+    boolean ok = w == widgets && img <= images && h == handlers &&
+                 seen.size() == widgets;
+    if (!ok) failed = true;
+    print(count + " transitions: " + w + " widgets, " + img +
+        " image elements, " + h + " handlers, " + seen.size() +
+        " distinct widgets" + (ok ? "" : " - LEAK"));
+  }
+
+  private void finish() {
+    String result = failed ? "failed" : "passed";
+    print(result);
+    Document.get().setTitle("ImagePanelSoak " + result);
+  }
+
+  private void print(String line) {
+    report.append(line).append("<br />");
+    output.setHTML(report.toString());
+  }
+
+  private void start() {
+    imagePanel = new ImagePanel(collection);
+    // like the layouts, register an attachment listener before attaching
+    imagePanel.addAttachmentListener(new AttachmentListener() {
+      public void onLoad(Widget sender) { }
+      public void onUnload(Widget sender) { }
+    });
+    imagePanel.setPixelSize(Window.getClientWidth(), Window.getClientHeight());
+    RootPanel.get().add(imagePanel);
+    imagePanel.prepareResized();
+    imagePanel.onResized();
+
+    AbsolutePanel panel = imagePanel.getPanel();
+    widgets = panel.getWidgetCount();
+    images = panel.getElement().getElementsByTagName("img").getLength();
+    handlers = 0;
+    for (int i = 0; i < widgets; i++) {
+      handlers += countHandlers(panel.getWidget(i));
+    }
+    print(collection.getImageCount() + " images, " + transitions +
+        " transitions; at the start: " + widgets + " widgets, " + images +
+        " image elements, " + handlers + " handlers");
+    Scheduler.get().scheduleFixedDelay(this, 1);
+  }
+}
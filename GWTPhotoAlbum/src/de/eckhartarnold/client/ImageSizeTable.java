@@ -0,0 +1,236 @@
+/*
+ * Copyright 2008 Eckhart Arnold (eckhart_arnold@hotmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package de.eckhartarnold.client;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Stores the sizes of all images of an image collection in primitive arrays.
+ *
+ * <p>Images are addressed by their position in the list of image names.
+ * Every image refers to a "resolution set", i.e. a list of sizes with one
+ * width, height pair for each size step (or directory). Because most images
+ * of a collection share the same few resolution sets, each set is stored
+ * only once. The widths and heights of all sets are kept in one flat
+ * integer array.
+ *
+ * <p>The compact "columnar" encoding of "resolutions.json" maps directly on
+ * this table:
+ * <pre>
+ * {"columnar": 1,
+ *  "steps":  2,                                // number of size steps
+ *  "sets":   [160,120, 640,480, 120,160, 480,640], // width, height pairs
+ *  "images": [0, 0, 1, ...]}                   // set id of every image
+ * </pre>
+ * where the sizes of set <code>s</code> start at index
+ * <code>s*steps*2</code> of the "sets" array.
+ *
+ * @author eckhart
+ */
+public class ImageSizeTable {
+  /** The key that identifies the columnar encoding of "resolutions.json" */
+  public static final String COLUMNAR_KEY = "columnar";
+
+  /**
+   * Creates a size table for a single image.
+   *
+   * @param sizes  the sizes of the image for every size step
+   * @return the image size table
+   */
+  public static ImageSizeTable forImage(int[][] sizes) {
+    int[] dims = new int[sizes.length * 2];
+    for (int i = 0; i < sizes.length; i++) {
+      dims[i*2] = sizes[i][0];
+      dims[i*2 + 1] = sizes[i][1];
+    }
+    return new ImageSizeTable(sizes.length, new int[] { 0 }, dims);
+  }
+
+  /**
+   * Creates a size table from a dictionary that maps image names to their
+   * sizes, i.e. the format of {@link ImageCollectionInfo#getImageSizes()}.
+   * Size arrays that are shared by several images (as is the case for
+   * resolution sets in "resolutions.json") are stored only once.
+   *
+   * @param imageNames  the image names in the order of the table
+   * @param sizes       a dictionary that maps the image names to their sizes
+   * @return the image size table
+   */
+  public static ImageSizeTable fromHashMap(String[] imageNames,
+      HashMap<String, int[][]> sizes) {
+    assert imageNames.length == sizes.size() :
+      "names: "+imageNames.length+", but sizes: "+sizes.size();
+    // arrays are hashed by identity, so only shared arrays are merged
+    HashMap<int[][], Integer> sets = new HashMap<int[][], Integer>();
+    ArrayList<int[][]> setList = new ArrayList<int[][]>();
+    int[] setIds = new int[imageNames.length];
+    for (int i = 0; i < imageNames.length; i++) {
+      int[][] imageSizes = sizes.get(imageNames[i]);
+      Integer id = sets.get(imageSizes);
+      if (id == null) {
+        id = setList.size();
+        sets.put(imageSizes, id);
+        setList.add(imageSizes);
+      }
+      setIds[i] = id;
+    }
+    int steps = setList.isEmpty() ? 1 : setList.get(0).length;
+    int[] dims = new int[setList.size() * steps * 2];
+    int k = 0;
+    for (int[][] set: setList) {
+      assert set.length == steps : "all images must have the same number "+
+          "of size steps!";
+      for (int i = 0; i < steps; i++) {
+        dims[k++] = set[i][0];
+        dims[k++] = set[i][1];
+      }
+    }
+    return new ImageSizeTable(steps, setIds, dims);
+  }
+
+  private final int   steps;
+  private final int[] setIds;
+  private int[]       dims;
+
+  /**
+   * Creates a new image size table.
+   *
+   * @param steps   the number of size steps of every resolution set
+   * @param setIds  the resolution set id for every image
+   * @param dims    the width, height pairs of all resolution sets. The
+   *                length of this array must be a multiple of
+   *                <code>steps*2</code>
+   */
+  public ImageSizeTable(int steps, int[] setIds, int[] dims) {
+    assert steps > 0 && dims.length % (steps*2) == 0 :
+      "size table does not match the number of size steps!";
+    this.steps = steps;
+    this.setIds = setIds;
+    this.dims = dims;
+  }
+
+  /**
+   * Creates an empty image size table for <code>count</code> images, which
+   * is to be filled part by part with {@link #insert(int, ImageSizeTable)}.
+   * Until then, all images have the size of the first image that has been
+   * inserted.
+   * 
+   * @param steps  the number of size steps
+   * @param count  the number of images
+   */
+  public ImageSizeTable(int steps, int count) {
+    this(steps, new int[count], new int[0]);
+  }
+
+  /**
+   * Returns the sizes of all size steps of an image as an array of
+   * width, height pairs. (This allocates a new array on every call.)
+   *
+   * @param image  the index of the image
+   * @return the sizes of the image
+   */
+  public int[][] get(int image) {
+    int[][] sizes = new int[steps][2];
+    int base = setIds[image] * steps * 2;
+    for (int i = 0; i < steps; i++) {
+      sizes[i][0] = dims[base + i*2];
+      sizes[i][1] = dims[base + i*2 + 1];
+    }
+    return sizes;
+  }
+
+  /**
+   * Returns the height of an image in the given size step.
+   * @param image  the index of the image
+   * @param step   the size step
+   * @return the height of the image
+   */
+  public int height(int image, int step) {
+    return dims[(setIds[image] * steps + step) * 2 + 1];
+  }
+
+  /**
+   * Copies the sizes of a part of the images into this table. This is used
+   * for image collections that are loaded page by page.
+   * 
+   * @param offset  the index of the first image of the part
+   * @param part    the sizes of the images of the part
+   */
+  public void insert(int offset, ImageSizeTable part) {
+    assert part.steps == steps : "number of size steps does not match!";
+    assert offset + part.size() <= size() : "part exceeds the table!";
+    int base = dims.length / (steps*2);
+    int[] merged = new int[dims.length + part.dims.length];
+    System.arraycopy(dims, 0, merged, 0, dims.length);
+    System.arraycopy(part.dims, 0, merged, dims.length, part.dims.length);
+    dims = merged;
+    for (int i = 0; i < part.setIds.length; i++) {
+      setIds[offset + i] = part.setIds[i] + base;
+    }
+  }
+
+  /**
+   * Returns the number of images in the table.
+   * @return the number of images
+   */
+  public int size() {
+    return setIds.length;
+  }
+
+  /**
+   * Returns the number of size steps.
+   * @return the number of size steps
+   */
+  public int steps() {
+    return steps;
+  }
+
+  /**
+   * Creates a dictionary that maps the image names to their sizes, i.e. the
+   * format of {@link ImageCollectionInfo#getImageSizes()}. Images that
+   * share a resolution set also share the same size array. Images the
+   * name of which is <code>null</code> (because it has not been loaded
+   * yet) are left out.
+   *
+   * @param imageNames  the image names in the order of the table
+   * @return a dictionary that maps the image names to their sizes
+   */
+  public HashMap<String, int[][]> toHashMap(String[] imageNames) {
+    assert imageNames.length == setIds.length :
+      "names: "+imageNames.length+", but sizes: "+setIds.length;
+    HashMap<String, int[][]> sizes = new HashMap<String, int[][]>();
+    int[][][] sets = new int[dims.length / (steps*2)][][];
+    for (int i = 0; i < imageNames.length; i++) {
+      if (imageNames[i] == null) continue;
+      int id = setIds[i];
+      if (sets[id] == null) sets[id] = get(i);
+      sizes.put(imageNames[i], sets[id]);
+    }
+    return sizes;
+  }
+
+  /**
+   * Returns the width of an image in the given size step.
+   * @param image  the index of the image
+   * @param step   the size step
+   * @return the width of the image
+   */
+  public int width(int image, int step) {
+    return dims[(setIds[image] * steps + step) * 2];
+  }
+}
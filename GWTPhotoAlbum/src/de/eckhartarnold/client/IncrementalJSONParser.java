@@ -0,0 +1,331 @@
+/*
+ * Copyright 2008 Eckhart Arnold (eckhart_arnold@hotmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package de.eckhartarnold.client;
+
+import com.google.gwt.json.client.JSONException;
+
+/**
+ * A JSON parser that consumes its input piece by piece, e.g. as it arrives
+ * from the network, and reports the parsed structure as a sequence of
+ * events to a {@link Handler}.
+ *
+ * <p>Other than <code>JSONParser</code> the incremental parser does not
+ * build a tree of JSON values and it does not need the whole text at once.
+ * It only keeps the token that is currently being read and the stack of
+ * open arrays and objects. The pieces of text can be split at any
+ * position, even in the middle of a token.
+ *
+ * <p>The parser only uses plain Java, so that it can be run outside the
+ * browser as well.
+ *
+ * @author eckhart
+ */
+public class IncrementalJSONParser {
+
+  /**
+   * Receives the events of the incremental parser. The events of a
+   * dictionary are: <code>startObject</code>, then for every entry
+   * <code>key</code> followed by the events of the value, and finally
+   * <code>endObject</code>.
+   */
+  public interface Handler {
+    void startObject();
+    void endObject();
+    void startArray();
+    void endArray();
+    void key(String key);
+    void stringValue(String value);
+    void numberValue(double value);
+    /** receives the literals true, false and null (as <code>null</code>) */
+    void literalValue(Boolean value);
+  }
+
+  // what may come next
+  private static final int VALUE = 0, FIRST_VALUE = 1, KEY = 2, FIRST_KEY = 3,
+                           COLON = 4, NEXT = 5, END = 6;
+  // the token that is being read
+  private static final int NONE = 0, STRING = 1, NUMBER = 2, LITERAL = 3;
+
+  private final Handler       handler;
+  private final StringBuilder buffer = new StringBuilder();
+  private boolean[] arrays = new boolean[16]; // stack of open containers
+  private int       depth = 0;
+  private int       expected = VALUE;
+  private int       token = NONE;
+  private boolean   isKey;
+  private int       escape = 0;  // 1: after backslash, 2-5: unicode digits
+  private int       unicode;
+  private int       offset = 0;  // length of the text fed before
+  private int       cursor = 0;  // position in the current piece of text
+
+  /**
+   * Creates an incremental parser that reports to <code>handler</code>.
+   *
+   * @param handler  the receiver of the parser events
+   */
+  public IncrementalJSONParser(Handler handler) {
+    this.handler = handler;
+  }
+
+  /**
+   * Parses the next piece of the JSON text.
+   *
+   * @param text  the next piece of text
+   * @throws JSONException if the text is not valid JSON
+   */
+  public void feed(String text) {
+    int length = text.length();
+    cursor = 0;
+    while (cursor < length) {
+      if (token == STRING) {
+        readString(text);
+        continue;
+      }
+      char ch = text.charAt(cursor);
+      if (token != NONE) {
+        if (token == NUMBER ? isNumberChar(ch) : isLetter(ch)) {
+          buffer.append(ch);
+          cursor++;
+          continue;
+        }
+        finishToken();
+      }
+      cursor++;
+      if (ch == ' ' || ch == '\n' || ch == '\r' || ch == '\t') continue;
+      if ((expected == FIRST_VALUE && ch == ']') ||
+          (expected == FIRST_KEY && ch == '}')) {
+        endContainer(ch);  // empty array or object
+        continue;
+      }
+      switch (expected) {
+        case FIRST_VALUE:
+        case VALUE:
+          startValue(ch);
+          break;
+        case FIRST_KEY:
+        case KEY:
+          if (ch != '"') fail("key expected");
+          token = STRING;
+          isKey = true;
+          break;
+        case COLON:
+          if (ch != ':') fail("':' expected");
+          expected = VALUE;
+          break;
+        case NEXT:
+          if (ch == ',') {
+            expected = arrays[depth-1] ? VALUE : KEY;
+          } else {
+            endContainer(ch);
+          }
+          break;
+        default:
+          fail("unexpected text after the end");
+      }
+    }
+    offset += length;
+    cursor = 0;
+  }
+
+  /**
+   * Signals that the whole text has been fed to the parser.
+   *
+   * @throws JSONException if the text has ended prematurely
+   */
+  public void finish() {
+    if (token == NUMBER || token == LITERAL) finishToken();
+    if (token != NONE || expected != END) fail("unexpected end of text");
+  }
+
+  private void afterValue() {
+    expected = (depth == 0) ? END : NEXT;
+  }
+
+  private void endContainer(char ch) {
+    if (depth == 0) fail("unexpected '" + ch + "'");
+    if (ch != (arrays[depth-1] ? ']' : '}')) {
+      fail("',' or end of " + (arrays[depth-1] ? "array" : "object") +
+           " expected");
+    }
+    depth--;
+    if (arrays[depth]) handler.endArray();
+    else handler.endObject();
+    afterValue();
+  }
+
+  private void fail(String msg) {
+    throw new JSONException(msg + " at position " + (offset + cursor));
+  }
+
+  private void finishToken() {
+    String text = buffer.toString();
+    buffer.setLength(0);
+    if (token == NUMBER) {
+      if (!isNumber(text)) fail("illegal number " + text);
+      token = NONE;
+      handler.numberValue(Double.parseDouble(text));
+    } else {
+      token = NONE;
+      if (text.equals("true")) handler.literalValue(Boolean.TRUE);
+      else if (text.equals("false")) handler.literalValue(Boolean.FALSE);
+      else if (text.equals("null")) handler.literalValue(null);
+      else fail("unknown literal " + text);
+    }
+    afterValue();
+  }
+
+  private static boolean isLetter(char ch) {
+    return ch >= 'a' && ch <= 'z';
+  }
+
+  /**
+   * Checks the number against the grammar of JSON numbers, which is
+   * stricter than the one of <code>Double.parseDouble</code>: no leading
+   * zeros, no '+' sign in front and at least one digit after the decimal
+   * point and in the exponent.
+   */
+  private static boolean isNumber(String text) {
+    int length = text.length();
+    int i = (length > 0 && text.charAt(0) == '-') ? 1 : 0;
+    int start = i;
+    while (i < length && isDigit(text.charAt(i))) i++;
+    if (i == start || (text.charAt(start) == '0' && i > start + 1)) {
+      return false;
+    }
+    if (i < length && text.charAt(i) == '.') {
+      start = ++i;
+      while (i < length && isDigit(text.charAt(i))) i++;
+      if (i == start) return false;
+    }
+    if (i < length && (text.charAt(i) == 'e' || text.charAt(i) == 'E')) {
+      i++;
+      if (i < length && (text.charAt(i) == '+' || text.charAt(i) == '-')) i++;
+      start = i;
+      while (i < length && isDigit(text.charAt(i))) i++;
+      if (i == start) return false;
+    }
+    return i == length;
+  }
+
+  private static boolean isDigit(char ch) {
+    return ch >= '0' && ch <= '9';
+  }
+
+  private static boolean isNumberChar(char ch) {
+    return (ch >= '0' && ch <= '9') || ch == '.' || ch == '-' || ch == '+'
+        || ch == 'e' || ch == 'E';
+  }
+
+  private void push(boolean array) {
+    if (depth == arrays.length) {
+      boolean[] larger = new boolean[depth * 2];
+      System.arraycopy(arrays, 0, larger, 0, depth);
+      arrays = larger;
+    }
+    arrays[depth++] = array;
+  }
+
+  /**
+   * Reads the characters of a string token up to its end or up to the
+   * end of the piece of text. Runs of plain characters are copied in
+   * one piece.
+   */
+  private void readString(String text) {
+    int length = text.length();
+    int i = cursor;
+    while (i < length) {
+      char ch = text.charAt(i);
+      if (escape == 0) {
+        int start = i;
+        while (ch != '"' && ch != '\\') {
+          if (++i == length) break;
+          ch = text.charAt(i);
+        }
+        if (i > start) {
+          buffer.append(text, start, i);
+          if (i == length) break;
+        }
+        cursor = ++i;
+        if (ch == '"') {
+          String value = buffer.toString();
+          buffer.setLength(0);
+          token = NONE;
+          if (isKey) {
+            expected = COLON;
+            handler.key(value);
+          } else {
+            afterValue();
+            handler.stringValue(value);
+          }
+          return;
+        }
+        escape = 1;
+      } else {
+        cursor = ++i;
+        if (escape == 1) {
+          escape = 0;
+          switch (ch) {
+            case 'b': buffer.append('\b'); break;
+            case 'f': buffer.append('\f'); break;
+            case 'n': buffer.append('\n'); break;
+            case 'r': buffer.append('\r'); break;
+            case 't': buffer.append('\t'); break;
+            case 'u': escape = 2; unicode = 0; break;
+            default:  buffer.append(ch);
+          }
+        } else {
+          int digit = Character.digit(ch, 16);
+          if (digit < 0) fail("illegal unicode escape");
+          unicode = unicode * 16 + digit;
+          if (++escape == 6) {
+            buffer.append((char) unicode);
+            escape = 0;
+          }
+        }
+      }
+    }
+    cursor = i;
+  }
+
+  private void startValue(char ch) {
+    switch (ch) {
+      case '{':
+        push(false);
+        expected = FIRST_KEY;
+        handler.startObject();
+        break;
+      case '[':
+        push(true);
+        expected = FIRST_VALUE;
+        handler.startArray();
+        break;
+      case '"':
+        token = STRING;
+        isKey = false;
+        break;
+      default:
+        if ((ch >= '0' && ch <= '9') || ch == '-') {
+          token = NUMBER;
+        } else if (isLetter(ch)) {
+          token = LITERAL;
+        } else {
+          fail("value expected");
+        }
+        buffer.append(ch);
+    }
+  }
+}
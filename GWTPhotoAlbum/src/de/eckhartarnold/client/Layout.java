@@ -16,6 +16,9 @@
 
 package de.eckhartarnold.client;
 
+import java.util.ArrayList;
+import java.util.List;
+
 //import com.google.gwt.event.dom.client.ClickEvent;
 //import com.google.gwt.event.dom.client.ClickHandler;
 //import com.google.gwt.core.shared.GWT;
@@ -147,18 +150,13 @@ public abstract class Layout {
   
   /**
    * Calls the <code>prepareResized</code> and <code>onResized</code> methods 
-   * of the widgets associated with this layout. This method should be called  
+   * of the widgets associated with this layout. All widgets are prepared 
+   * before the first <code>onResized</code> method is called (see 
+   * {@link ResizeScheduler#resize}). This method should be called  
    * after attaching the layout's root widget to the DOM-tree!
    */
   public void issueResize() {
-    imagePanel.prepareResized();
-    if (control != null) control.prepareResized();
-    if (caption != null) { 
-      caption.prepareResized();
-      caption.onResized();
-    }
-    if (control != null) control.onResized();
-    imagePanel.onResized();
+    ResizeScheduler.resize(getResizeListeners());
   }
   
   /**
@@ -172,6 +170,24 @@ public abstract class Layout {
     if (touch != null) touch.setHomeButtonListener(handler);
   }
 
+  /**
+   * Returns the widgets of the layout that must be informed when the
+   * layout has been resized in the order in which their 
+   * <code>onResized</code> methods are called. The image panel comes last,
+   * because its size depends on the sizes of the other widgets.
+   * Descendant classes may add further listeners.
+   * 
+   * @return the list of resize listeners, which may contain 
+   *         <code>null</code> entries 
+   */
+  protected List<ResizeListener> getResizeListeners() {
+    ArrayList<ResizeListener> listeners = new ArrayList<ResizeListener>();
+    listeners.add(caption);
+    listeners.add(control);
+    listeners.add(imagePanel);
+    return listeners;
+  }
+
   private void init(ImageCollectionInfo collection, String configuration) {
     imagePanel = new ImagePanel(collection);
     /* String clickable = collection.getInfo().get(KEY_CLICKABLE);
@@ -195,8 +211,7 @@ public abstract class Layout {
         }
       });
     }
-    slideshow = new Slideshow(imagePanel, collection.getImageNames(), 
-        collection.getDirectories(), collection.getImageSizes());
+    slideshow = new Slideshow(imagePanel, collection);
     if (configuration.contains("F")) {
       control = new ControlPanel(slideshow);
       filmstrip = new Filmstrip(collection);
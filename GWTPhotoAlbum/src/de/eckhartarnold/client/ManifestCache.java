@@ -0,0 +1,132 @@
+/*
+ * Copyright 2008 Eckhart Arnold (eckhart_arnold@hotmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package de.eckhartarnold.client;
+
+import com.google.gwt.core.client.GWT;
+import com.google.gwt.core.client.JavaScriptException;
+import com.google.gwt.storage.client.Storage;
+
+/**
+ * Keeps copies of album manifests in the local storage of the browser,
+ * so that an album can be started without waiting for the server.
+ *
+ * <p>Each entry is keyed by the URL of the manifest and consists of the
+ * text of the manifest and the validator that the server sent along
+ * with it, i.e. the value of its "ETag" or, if there was none, its
+ * "Last-Modified" header. The validator is used to check the cached
+ * copy with a conditional request.
+ *
+ * @see ImageCollectionReader
+ * @author eckhart
+ */
+public class ManifestCache {
+  private static final String KEY_PREFIX = "GWTPhotoAlbum:";
+  private static final String DATA_SUFFIX = "#data";
+  private static final String ETAG_SUFFIX = "#etag";
+  private static final String MODIFIED_SUFFIX = "#modified";
+
+  /**
+   * Returns a manifest cache, if the browser supports local storage.
+   *
+   * @return the manifest cache or <code>null</code>, if local storage is
+   *         not supported
+   */
+  public static ManifestCache getIfSupported() {
+    Storage storage = Storage.getLocalStorageIfSupported();
+    if (storage == null) return null;
+    return new ManifestCache(storage);
+  }
+
+  private final Storage storage;
+
+  private ManifestCache(Storage storage) {
+    this.storage = storage;
+  }
+
+  /**
+   * Returns the cached text of a manifest.
+   *
+   * @param url  the URL of the manifest
+   * @return the text of the manifest or <code>null</code>, if it is not
+   *         cached
+   */
+  public String getData(String url) {
+    return storage.getItem(KEY_PREFIX + url + DATA_SUFFIX);
+  }
+
+  /**
+   * Returns the "ETag" of the cached manifest.
+   *
+   * @param url  the URL of the manifest
+   * @return the entity tag or <code>null</code>
+   */
+  public String getETag(String url) {
+    return storage.getItem(KEY_PREFIX + url + ETAG_SUFFIX);
+  }
+
+  /**
+   * Returns the "Last-Modified" date of the cached manifest.
+   *
+   * @param url  the URL of the manifest
+   * @return the date in HTTP format or <code>null</code>
+   */
+  public String getLastModified(String url) {
+    return storage.getItem(KEY_PREFIX + url + MODIFIED_SUFFIX);
+  }
+
+  /**
+   * Stores a manifest in the cache. Manifests without a validator are not
+   * stored, because they could never be revalidated. If the storage quota
+   * is exceeded, the manifest is silently not cached.
+   *
+   * @param url           the URL of the manifest
+   * @param data          the text of the manifest
+   * @param etag          the value of the "ETag" header or <code>null</code>
+   * @param lastModified  the value of the "Last-Modified" header or
+   *                      <code>null</code>
+   */
+  public void put(String url, String data, String etag, String lastModified) {
+    remove(url);
+    if (isEmpty(etag) && isEmpty(lastModified)) return;
+    try {
+      if (!isEmpty(etag)) storage.setItem(KEY_PREFIX + url + ETAG_SUFFIX, etag);
+      if (!isEmpty(lastModified)) {
+        storage.setItem(KEY_PREFIX + url + MODIFIED_SUFFIX, lastModified);
+      }
+      // the data comes last, so that it is never stored without validator
+      storage.setItem(KEY_PREFIX + url + DATA_SUFFIX, data);
+    } catch (JavaScriptException e) {
+      GWT.log("Could not cache " + url + ": " + e.getMessage());
+      remove(url);
+    }
+  }
+
+  /**
+   * Removes a manifest from the cache.
+   *
+   * @param url  the URL of the manifest
+   */
+  public void remove(String url) {
+    storage.removeItem(KEY_PREFIX + url + DATA_SUFFIX);
+    storage.removeItem(KEY_PREFIX + url + ETAG_SUFFIX);
+    storage.removeItem(KEY_PREFIX + url + MODIFIED_SUFFIX);
+  }
+
+  private static boolean isEmpty(String s) {
+    return s == null || s.length() == 0;
+  }
+}
@@ -40,6 +40,8 @@ public abstract class PanelOverlayBase implements MouseMoveHandler,
    */
   public static final String  KEY_PANEL_POSITION = "panel position";  
   public static final double  POPUP_THRESHOLD = 25.0;
+  /** the duration of the animation of a popup panel in milliseconds */
+  protected static final int  POPUP_ANIMATION_MILLIS = 200;
   
   /** 
    * The time in milliseconds until the control panel popup is hidden
@@ -53,6 +55,7 @@ public abstract class PanelOverlayBase implements MouseMoveHandler,
   protected boolean              popupVisible;
   protected Timer                timer;
   protected int                  lastMouseX = -1, lastMouseY = -1;
+  private FrameStats.Probe       probe = FrameStats.probe(FrameStats.POPUP);
   
   public PanelOverlayBase(ControlPanel controlPanel, Widget baseWidget) {
     this.controlPanel = controlPanel;
@@ -108,6 +111,9 @@ public abstract class PanelOverlayBase implements MouseMoveHandler,
    * Hides the popup panel.
    */
   protected void hidePopup() {
+    if (popupVisible && popup.isAnimationEnabled()) {
+      probe.sample(POPUP_ANIMATION_MILLIS);
+    }
     popup.hide();
     popupVisible = false;    
   }
@@ -121,6 +127,7 @@ public abstract class PanelOverlayBase implements MouseMoveHandler,
     if (!popupVisible) {
       popup.setPopupPositionAndShow(this);
       popupVisible = true;
+      if (popup.isAnimationEnabled()) probe.sample(POPUP_ANIMATION_MILLIS);
     }
     timer.schedule(delay);   
   }
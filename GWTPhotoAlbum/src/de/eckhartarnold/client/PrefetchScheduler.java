@@ -0,0 +1,188 @@
+/*
+ * Copyright 2008 Eckhart Arnold (eckhart_arnold@hotmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package de.eckhartarnold.client;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.google.gwt.dom.client.Document;
+import com.google.gwt.dom.client.ImageElement;
+import com.google.gwt.user.client.DOM;
+import com.google.gwt.user.client.Event;
+import com.google.gwt.user.client.EventListener;
+
+/**
+ * Prefetches the images around the current slide of a slide show.
+ *
+ * <p>The slide show passes the URLs of the images it is going to need
+ * next to {@link #prefetch(String[])} in the order of their priority.
+ * The scheduler downloads them in this order, but never more than
+ * <code>maxDownloads</code> at the same time. When a new list of URLs
+ * arrives, e.g. because the user has jumped to another slide, queued
+ * URLs that are not in the new list are dropped and running downloads of
+ * such URLs are cancelled.
+ *
+ * <p>Whenever a slide is displayed, the slide show reports its URL with
+ * {@link #recordShown(String)}. If the image had been prefetched before,
+ * this counts as a hit, otherwise as a miss.
+ *
+ * @author eckhart
+ */
+public class PrefetchScheduler {
+  /** number of completed downloads that are remembered as cached */
+  static final int CACHE_SIZE = 100;
+
+  private class Download implements EventListener {
+    final String       url;
+    final ImageElement img;
+
+    Download(String url) {
+      this.url = url;
+      img = Document.get().createImageElement();
+      DOM.sinkEvents(img, Event.ONLOAD | Event.ONERROR);
+      DOM.setEventListener(img, this);
+      img.setSrc(url);
+    }
+
+    void cancel() {
+      DOM.setEventListener(img, null);
+      img.removeAttribute("src");
+    }
+
+    public void onBrowserEvent(Event event) {
+      DOM.setEventListener(img, null);
+      running.remove(url);
+      if (event.getTypeInt() == Event.ONLOAD) markCached(url);
+      startDownloads();
+    }
+  }
+
+  private int maxDownloads;
+  private int hits = 0, misses = 0;
+  private ArrayList<String> queue = new ArrayList<String>();
+  private HashMap<String, Download> running = new HashMap<String, Download>();
+  private LinkedHashMap<String, Boolean> cached =
+      new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+          return size() > CACHE_SIZE;
+        }
+      };
+
+  /**
+   * Creates a prefetch scheduler.
+   *
+   * @param maxDownloads  the maximum number of concurrent downloads
+   */
+  public PrefetchScheduler(int maxDownloads) {
+    setMaxDownloads(maxDownloads);
+  }
+
+  /**
+   * Returns the number of displayed slides that had been prefetched.
+   *
+   * @return the number of hits
+   */
+  public int getHits() {
+    return hits;
+  }
+
+  /**
+   * Returns the maximum number of concurrent downloads.
+   *
+   * @return the maximum number of downloads
+   */
+  public int getMaxDownloads() {
+    return maxDownloads;
+  }
+
+  /**
+   * Returns the number of displayed slides that had not been prefetched.
+   *
+   * @return the number of misses
+   */
+  public int getMisses() {
+    return misses;
+  }
+
+  /**
+   * Prefetches the given images. Images that have been prefetched before
+   * or that are being prefetched are not requested again. Downloads and
+   * queued requests of images that are not contained in <code>urls</code>
+   * are cancelled.
+   *
+   * @param urls  the URLs of the images, the most important first
+   */
+  public void prefetch(String[] urls) {
+    HashMap<String, Download> stale = running;
+    running = new HashMap<String, Download>();
+    queue.clear();
+    for (String url: urls) {
+      Download download = stale.remove(url);
+      if (download != null) {
+        running.put(url, download);
+      } else if (!cached.containsKey(url) && !running.containsKey(url)
+                 && !queue.contains(url)) {
+        queue.add(url);
+      }
+    }
+    for (Download download: stale.values()) download.cancel();
+    startDownloads();
+  }
+
+  /**
+   * Counts a hit, if the image has been prefetched or a miss otherwise.
+   * An image that is not being prefetched is loaded by the caller and
+   * therefore regarded as cached afterwards.
+   *
+   * @param url  the URL of the image that is displayed
+   */
+  public void recordShown(String url) {
+    if (cached.containsKey(url)) {
+      hits++;
+    } else {
+      misses++;
+      if (!running.containsKey(url)) markCached(url);
+    }
+  }
+
+  /**
+   * Sets the maximum number of concurrent downloads. Running downloads are
+   * not affected, if the number is decreased.
+   *
+   * @param maxDownloads  the maximum number of downloads, at least 1
+   */
+  public void setMaxDownloads(int maxDownloads) {
+    assert maxDownloads > 0;
+    this.maxDownloads = Math.max(1, maxDownloads);
+    startDownloads();
+  }
+
+  private void markCached(String url) {
+    queue.remove(url);
+    cached.put(url, Boolean.TRUE);
+  }
+
+  private void startDownloads() {
+    while (running.size() < maxDownloads && !queue.isEmpty()) {
+      String url = queue.remove(0);
+      running.put(url, new Download(url));
+    }
+  }
+}
@@ -21,6 +21,8 @@ import com.google.gwt.event.logical.shared.ResizeEvent;
 import com.google.gwt.event.logical.shared.ResizeHandler;
 import com.google.gwt.event.logical.shared.ValueChangeEvent;
 import com.google.gwt.event.logical.shared.ValueChangeHandler;
+import com.google.gwt.event.shared.HandlerRegistration;
+import com.google.gwt.user.client.Command;
 import com.google.gwt.user.client.History;
 import com.google.gwt.user.client.Window;
 import com.google.gwt.user.client.ui.Panel;
@@ -62,6 +64,13 @@ public abstract class Presentation implements ResizeHandler, ValueChangeHandler<
   
   protected boolean slideshowActive = false;
   
+  private HandlerRegistration resizeRegistration, historyRegistration;
+  private ResizeScheduler resizeScheduler = new ResizeScheduler(new Command() {
+    public void execute() {
+      resize();
+    }
+  });
+  
   /**
    * Constructor of class <code>Presentation</code>. Prepares everything
    * for the presentation, but does not add the layout to the
@@ -74,8 +83,8 @@ public abstract class Presentation implements ResizeHandler, ValueChangeHandler<
     this.normalLayout = layout;
     this.lowresLayout = layout;
     this.layout = layout; 
-    Window.addResizeHandler(this);
-    History.addValueChangeHandler(this);    
+    resizeRegistration = Window.addResizeHandler(this);
+    historyRegistration = History.addValueChangeHandler(this);    
   }
    
 
@@ -84,6 +93,15 @@ public abstract class Presentation implements ResizeHandler, ValueChangeHandler<
    */
   @Override
   public void onResize(ResizeEvent event) {
+    resizeScheduler.schedule();
+  }
+
+  /**
+   * Adjusts the presentation to the new size of the browser window. 
+   * Resize events are coalesced by a {@link ResizeScheduler}, so that this
+   * method is called at most once per animation frame.
+   */
+  protected void resize() {
     if (slideshowActive) {
       boolean running = layout.getSlideshow().isRunning();
       layout.issueResize();
@@ -116,6 +134,18 @@ public abstract class Presentation implements ResizeHandler, ValueChangeHandler<
     }
   }  
   
+  /**
+   * Takes the presentation off the parent panel and stops listening to
+   * resize and history events, so that another presentation can take
+   * its place, e.g. after the album has changed on the server.
+   */
+  public void remove() {
+    resizeScheduler.cancel();
+    resizeRegistration.removeHandler();
+    historyRegistration.removeHandler();
+    deactivateSlideshow();
+  }
+  
   /**
    * Sets a lowres layout that will be activated automatically low
    * resolution screens. 
@@ -130,7 +160,8 @@ public abstract class Presentation implements ResizeHandler, ValueChangeHandler<
     } else {
       this.lowresLayout = this.normalLayout;
     }
-    onResize(null);
+    resizeScheduler.cancel();
+    resize();
   }
   
   
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2008 Eckhart Arnold (eckhart_arnold@hotmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package de.eckhartarnold.client;
+
+import java.util.List;
+
+import com.google.gwt.animation.client.AnimationScheduler;
+import com.google.gwt.animation.client.AnimationScheduler.AnimationCallback;
+import com.google.gwt.animation.client.AnimationScheduler.AnimationHandle;
+import com.google.gwt.user.client.Command;
+
+/**
+ * Coalesces resize events to one layout pass per animation frame.
+ *
+ * <p>While the browser window is being resized, the browser fires resize
+ * events much more often than it paints. The scheduler requests an
+ * animation frame when the first event arrives and runs the layout pass
+ * only once in that frame, no matter how many events have arrived in the
+ * meantime.
+ *
+ * <p>The static method <code>resize</code> runs a layout pass for a list
+ * of {@link ResizeListener}s in two phases: first the
+ * <code>prepareResized</code> methods of all listeners, then their
+ * <code>onResized</code> methods. Thus, the browser needs to recalculate
+ * the layout after all listeners have been prepared, but not in between
+ * the preparations of two listeners.
+ *
+ * @author eckhart
+ */
+public class ResizeScheduler implements AnimationCallback {
+
+  /**
+   * Calls the <code>prepareResized</code> methods of all listeners and then
+   * their <code>onResized</code> methods, both in the order of the list.
+   * Entries that are <code>null</code> are skipped.
+   *
+   * @param listeners  the resize listeners
+   */
+  public static void resize(List<ResizeListener> listeners) {
+    for (ResizeListener listener: listeners) {
+      if (listener != null) listener.prepareResized();
+    }
+    for (ResizeListener listener: listeners) {
+      if (listener != null) listener.onResized();
+    }
+  }
+
+  private final Command   pass;
+  private AnimationHandle handle = null;
+
+  /**
+   * Creates a new resize scheduler.
+   *
+   * @param pass  the layout pass that is run once per animation frame, if
+   *              a resize has been scheduled
+   */
+  public ResizeScheduler(Command pass) {
+    this.pass = pass;
+  }
+
+  /**
+   * Drops the scheduled layout pass, if there is one.
+   */
+  public void cancel() {
+    if (handle != null) {
+      handle.cancel();
+      handle = null;
+    }
+  }
+
+  /* (non-Javadoc)
+   * @see com.google.gwt.animation.client.AnimationScheduler.AnimationCallback#execute(double)
+   */
+  public void execute(double timestamp) {
+    handle = null;
+    pass.execute();
+  }
+
+  /**
+   * Runs the scheduled layout pass right away instead of waiting for the
+   * next animation frame. Does nothing, if no pass has been scheduled.
+   */
+  public void flush() {
+    if (handle != null) {
+      cancel();
+      pass.execute();
+    }
+  }
+
+  /**
+   * Returns true, if a layout pass has been scheduled, but not run yet.
+   *
+   * @return true, if a layout pass is pending
+   */
+  public boolean isPending() {
+    return handle != null;
+  }
+
+  /**
+   * Schedules the layout pass for the next animation frame. If a pass has
+   * already been scheduled, nothing happens.
+   */
+  public void schedule() {
+    if (handle == null) {
+      handle = AnimationScheduler.get().requestAnimationFrame(this);
+    }
+  }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2008 Eckhart Arnold (eckhart_arnold@hotmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package de.eckhartarnold.client;
+
+import java.util.HashMap;
+
+/**
+ * Decides which size step of an image is loaded for a panel of a given
+ * size on a screen with a given pixel density.
+ *
+ * <p>The panel size is measured in CSS pixels. It is multiplied with the
+ * device pixel ratio of the screen, so that screens with a high pixel
+ * density get sharp images, but never with more than the maximum pixel
+ * density of the policy. If the user has asked the browser to save data,
+ * the pixel density is limited to the "save data" density of the policy.
+ * The smallest size step that covers the width or the height of the
+ * panel in device pixels (times the coverage of the policy) is picked.
+ *
+ * <p>There are three predefined policies, which can be chosen with the
+ * field "size policy" of the info file:
+ * <ul>
+ * <li>"quality"  - up to 3 device pixels per CSS pixel
+ * <li>"balanced" - up to 2 device pixels per CSS pixel (default)
+ * <li>"economy"  - 1 device pixel per CSS pixel, and images may be
+ *                  slightly enlarged
+ * </ul>
+ * The densities can be changed with the fields "max pixel density" and
+ * "save data pixel density" of the info file.
+ *
+ * <p>The class does not depend on the browser, so that policies can also
+ * be evaluated outside the browser (see
+ * <code>de.eckhartarnold.tools.SizePolicyBenchmark</code>) and checked
+ * by <code>de.eckhartarnold.tools.SizePolicyCheck</code>.
+ *
+ * @author eckhart
+ */
+public class SizePolicy {
+  /** name of the policy that favors sharp images */
+  public static final String QUALITY = "quality";
+  /** name of the default policy */
+  public static final String BALANCED = "balanced";
+  /** name of the policy that favors small downloads */
+  public static final String ECONOMY = "economy";
+
+  /**
+   * Reads the size policy from the info dictionary of an image collection.
+   *
+   * @param info  the info dictionary
+   * @return the size policy
+   */
+  public static SizePolicy fromInfo(HashMap<String, String> info) {
+    SizePolicy policy = forName(info.get("size policy"));
+    String numStr = info.get("max pixel density");
+    if (numStr != null && !numStr.isEmpty()) {
+      policy.maxDensity = Double.parseDouble(numStr);
+    }
+    numStr = info.get("save data pixel density");
+    if (numStr != null && !numStr.isEmpty()) {
+      policy.saveDataDensity = Double.parseDouble(numStr);
+    }
+    return policy;
+  }
+
+  /**
+   * Returns a new instance of a predefined policy.
+   *
+   * @param name  the name of the policy
+   * @return the policy or the balanced policy, if there is no policy with
+   *         this name
+   */
+  public static SizePolicy forName(String name) {
+    if (QUALITY.equals(name)) return new SizePolicy(QUALITY, 3.0, 1.0, 1.0);
+    if (ECONOMY.equals(name)) return new SizePolicy(ECONOMY, 1.0, 0.75, 0.8);
+    return new SizePolicy(BALANCED, 2.0, 1.0, 1.0);
+  }
+
+  private final String name;
+  private double       maxDensity, saveDataDensity, coverage;
+
+  /**
+   * Creates a new size policy.
+   *
+   * @param name             the name of the policy
+   * @param maxDensity       the largest number of device pixels per CSS
+   *                         pixel that is taken into account
+   * @param saveDataDensity  the largest number of device pixels per CSS
+   *                         pixel, if the user wants to save data
+   * @param coverage         the share of the panel in device pixels that
+   *                         the image must cover
+   */
+  public SizePolicy(String name, double maxDensity, double saveDataDensity,
+                    double coverage) {
+    assert maxDensity > 0 && saveDataDensity > 0 && coverage > 0;
+    this.name = name;
+    this.maxDensity = maxDensity;
+    this.saveDataDensity = saveDataDensity;
+    this.coverage = coverage;
+  }
+
+  /**
+   * Returns the number of device pixels per CSS pixel for which images
+   * are picked.
+   *
+   * @param devicePixelRatio  the device pixel ratio of the screen
+   * @param saveData          true, if the user wants to save data
+   * @return the pixel density
+   */
+  public double density(double devicePixelRatio, boolean saveData) {
+    double density = Math.min(Math.max(devicePixelRatio, 1.0), maxDensity);
+    if (saveData) density = Math.min(density, saveDataDensity);
+    return density;
+  }
+
+  /**
+   * Returns the name of the policy.
+   * @return the name
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Picks the size step of an image for a panel. The size steps must be
+   * ordered from smallest to largest.
+   *
+   * @param sizes             the size table
+   * @param index             the index of the image in the size table
+   * @param panelW            the width of the panel in CSS pixels
+   * @param panelH            the height of the panel in CSS pixels
+   * @param devicePixelRatio  the device pixel ratio of the screen
+   * @param saveData          true, if the user wants to save data
+   * @return the size step
+   */
+  public int select(ImageSizeTable sizes, int index, int panelW, int panelH,
+                    double devicePixelRatio, boolean saveData) {
+    double scale = density(devicePixelRatio, saveData) * coverage;
+    double w = panelW * scale, h = panelH * scale;
+    int steps = sizes.steps();
+    for (int i = 0; i < steps; i++) {
+      if (sizes.width(index, i) >= w || sizes.height(index, i) >= h) {
+        return i;
+      }
+    }
+    return steps - 1;
+  }
+}
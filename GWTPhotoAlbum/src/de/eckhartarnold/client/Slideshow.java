@@ -19,9 +19,9 @@ package de.eckhartarnold.client;
 import java.util.ArrayList;
 import java.util.HashMap;
 
+import com.google.gwt.user.client.Command;
 import com.google.gwt.user.client.History;
 import com.google.gwt.user.client.Timer;
-import com.google.gwt.user.client.ui.Image;
 import com.google.gwt.user.client.ui.Widget;
 
 // TODO: Configurable duration, either in info.json file (done!) or even better by the user (to do!)
@@ -41,6 +41,14 @@ import com.google.gwt.user.client.ui.Widget;
  * that "listen" to slide show events like starting, stopping, fading and
  * showing of a particular slide.
  * 
+ * <p>While a slide is shown, the following and the preceding slides are
+ * prefetched by a {@link PrefetchScheduler}, the next slide first. At the
+ * end of the slide show, the first slide counts as following slide. By
+ * default two slides ahead and one slide behind are prefetched with at 
+ * most two concurrent downloads. This can be changed with 
+ * <code>setPrefetchWindow</code> or with the fields "prefetch ahead", 
+ * "prefetch behind" and "prefetch downloads" of the info file.
+ * 
  * @author eckhart
  */
 public class Slideshow implements AttachmentListener {
@@ -49,6 +57,15 @@ public class Slideshow implements AttachmentListener {
 //  }
   
   static final String  SLIDE_TOKEN = "Slide_";
+  /** number of images before and after the current slide that are requested
+   *  from a paged image collection */
+  static final int     PAGE_LOOKAHEAD = 20;
+  /** default number of slides that are prefetched ahead of the current one */
+  static final int     PREFETCH_AHEAD = 2;
+  /** default number of slides that are prefetched behind the current one */
+  static final int     PREFETCH_BEHIND = 1;
+  /** default maximum number of concurrent prefetch downloads */
+  static final int     PREFETCH_DOWNLOADS = 2;
 
   
   protected class ImageDisplayListener 
@@ -75,10 +92,16 @@ public class Slideshow implements AttachmentListener {
   
   private String[]                  directories;
   private String[]                  slides;
-  private HashMap<String, int[][]>  sizes;
+  private ImageSizeTable            sizes;
+  private ImageCollectionInfo       collection = null;
+  private int                       pendingSlide = -1;
   private int                       current = -1;
   private int                       terminal;
   private int                       firedShowNr = -1;
+  private int                       prefetchAhead = PREFETCH_AHEAD;
+  private int                       prefetchBehind = PREFETCH_BEHIND;
+  private PrefetchScheduler         prefetcher = 
+    new PrefetchScheduler(PREFETCH_DOWNLOADS);
   private boolean                   loop = false, running = false;
   private Timer                     timer = new SlideshowTimer();  
   private ImageDisplayListener      loadListener = new ImageDisplayListener();
@@ -131,6 +154,24 @@ public class Slideshow implements AttachmentListener {
    */
   public Slideshow(ImagePanel imagePanel, String[] names, 
       String[] directories, HashMap<String, int[][]> sizes) {
+    this(imagePanel, names, directories, 
+         ImageSizeTable.fromHashMap(names, sizes));
+  }  
+  
+  /**
+   * Constructor for class <code>Slideshow</code>. Same as the constructor
+   * above, only that the image sizes are passed as {@link ImageSizeTable},
+   * the order of which corresponds to the list of image names.
+   * 
+   * @param imagePanel  the panel where the slides will be displayed 
+   * @param names       a list of image names. Only the base name should be
+   *                    given, not the full URL, i.e. "image.jpg"
+   * @param directories the URLs of one or more directories corresponding to
+   *                    different resolutions.
+   * @param sizes       the sizes of every image in every size step
+   */
+  public Slideshow(ImagePanel imagePanel, String[] names, 
+      String[] directories, ImageSizeTable sizes) {
     assert names.length > 0;
     assert sizes.size() == names.length : 
       "names: "+names.length+", but sizes: "+sizes.size();
@@ -142,6 +183,26 @@ public class Slideshow implements AttachmentListener {
     this.sizes = sizes;
   }  
   
+  /**
+   * Constructor for class <code>Slideshow</code> that takes the images, 
+   * directories and sizes from an image collection. If the collection is
+   * loaded page by page, the pages are requested as the slide show 
+   * approaches images that have not been loaded, yet.
+   * 
+   * @param imagePanel  the panel where the slides will be displayed 
+   * @param collection  the image collection
+   */
+  public Slideshow(ImagePanel imagePanel, ImageCollectionInfo collection) {
+    this(imagePanel, collection.getImageNames(), collection.getDirectories(),
+         collection.getSizeTable());
+    this.collection = collection;
+    HashMap<String, String> info = collection.getInfo();
+    prefetchAhead = readNumber(info, "prefetch ahead", prefetchAhead);
+    prefetchBehind = readNumber(info, "prefetch behind", prefetchBehind);
+    prefetcher.setMaxDownloads(readNumber(info, "prefetch downloads", 
+        prefetcher.getMaxDownloads()));
+  }
+  
   /**
    * Adds a <code>SlideshowListener</code> to the listener list.
    * 
@@ -180,6 +241,17 @@ public class Slideshow implements AttachmentListener {
     return imagePanel.getDuration();
   }
   
+  /**
+   * Returns the scheduler that prefetches the slides around the current
+   * slide. Its hit and miss counters tell how often a slide had already 
+   * been prefetched when it was shown.
+   * 
+   * @return the prefetch scheduler
+   */
+  public PrefetchScheduler getPrefetchScheduler() {
+    return prefetcher;
+  }
+  
   /**
    * Returns the image panel that is used by the slide show.
    * @return the image panel of the slide show
@@ -251,6 +323,19 @@ public class Slideshow implements AttachmentListener {
     loop = enable;
   }
   
+  /**
+   * Sets how many slides before and after the current slide are 
+   * prefetched.
+   * 
+   * @param ahead   the number of following slides that are prefetched
+   * @param behind  the number of preceding slides that are prefetched
+   */
+  public void setPrefetchWindow(int ahead, int behind) {
+    assert ahead >= 0 && behind >= 0;
+    prefetchAhead = ahead;
+    prefetchBehind = behind;
+  }
+  
   /**
    * Shows a specific slide from the list.
    * 
@@ -260,6 +345,26 @@ public class Slideshow implements AttachmentListener {
     assert slideNr < slides.length && slideNr >= -1: "Slide index out of bounds!";
     if (slideNr == current) return;
     
+    if (slideNr >= 0 && collection != null && !collection.isLoaded(slideNr)) {
+      // show the slide as soon as its page has arrived
+      final int nr = slideNr;
+      pendingSlide = nr;
+      collection.requestImages(nr, nr + 1, new Command() {
+        public void execute() {
+          if (pendingSlide == nr) show(nr);
+        }
+      }, new Command() {
+        public void execute() {
+          // a running slide show tries again after the display duration
+          if (pendingSlide == nr) {
+            pendingSlide = -1;
+            if (running) timer.schedule(imagePanel.getDuration());
+          }
+        }
+      });
+      return;
+    }
+    pendingSlide = -1;
     current = slideNr;
     
     if (current == -1) {
@@ -269,21 +374,20 @@ public class Slideshow implements AttachmentListener {
     
     if (directories == null) {
       imagePanel.showImage(slides[current], loadListener);
-      if (current < size()-1) 
-        Image.prefetch(slides[current+1]);
+      prefetcher.recordShown(slides[current]);
     } else {
       String[] urls = new String[directories.length];
-      int[][] sizes = new int[urls.length][];
       for (int i = 0; i < urls.length; i++) {
         urls[i] = directories[i] + "/" + slides[current];
-        sizes[i] = this.sizes.get(slides[current])[i];
       }
-      imagePanel.showImage(urls, sizes, loadListener);
-      if (current < size()-1) {
-        String dir = directories[imagePanel.getSizeStep()];
-        Image.prefetch(dir + "/" + slides[current+1]);
+      imagePanel.showImage(urls, sizes, current, loadListener);
+      prefetcher.recordShown(urls[imagePanel.getSizeStep()]);
+      if (collection != null) {
+        collection.requestImages(current - PAGE_LOOKAHEAD, 
+            current + PAGE_LOOKAHEAD + 1, null);
       }
     }
+    prefetchAround(current);
     
     History.newItem(SLIDE_TOKEN+(current+1), false);
   }
@@ -365,6 +469,48 @@ public class Slideshow implements AttachmentListener {
       listener.onStop();
   }
   
+  /**
+   * Returns the URL of the version of a slide that the image panel would
+   * pick at its current size.
+   * 
+   * @param slideNr  the number of the slide
+   * @return the URL or <code>null</code>, if the slide has not been loaded
+   *         from a paged image collection, yet
+   */
+  private String prefetchURL(int slideNr) {
+    if (slides[slideNr] == null) return null;
+    if (directories == null) return slides[slideNr];
+    return directories[imagePanel.pickSize(sizes, slideNr)] + "/" + 
+        slides[slideNr];
+  }
+  
+  /**
+   * Prefetches the slides around the given slide in the order of their
+   * priority: the following slide first, then alternately the preceding
+   * and the next following slides. The slide itself comes first of all, 
+   * so that a running prefetch of it is not cancelled.
+   * 
+   * @param slideNr  the number of the current slide
+   */
+  private void prefetchAround(int slideNr) {
+    int n = size();
+    ArrayList<String> urls = new ArrayList<String>();
+    urls.add(prefetchURL(slideNr));
+    for (int d = 1; d <= Math.max(prefetchAhead, prefetchBehind); d++) {
+      if (d <= prefetchAhead) urls.add(prefetchURL((slideNr + d) % n));
+      if (d <= prefetchBehind) urls.add(prefetchURL(((slideNr - d) % n + n) % n));
+    }
+    while (urls.remove(null));
+    prefetcher.prefetch(urls.toArray(new String[urls.size()]));
+  }
+  
+  private static int readNumber(HashMap<String, String> info, String key,
+      int defaultValue) {
+    String numStr = info.get(key);
+    if (numStr == null || numStr.isEmpty()) return defaultValue;
+    return Integer.parseInt(numStr);
+  }
+  
   private void fireShow(int slideNr) {
     if (slideNr != firedShowNr) {
       firedShowNr = slideNr;
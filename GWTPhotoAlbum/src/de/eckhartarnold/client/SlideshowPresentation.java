@@ -38,7 +38,7 @@ public class SlideshowPresentation extends Presentation implements ClickHandler
     this.referrer = referrer;
     activateSlideshow();
     int imageNr = Presentation.parseSlideToken(History.getToken());
-    if (imageNr >= 0) {
+    if (imageNr >= 0 && imageNr < layout.getSlideshow().size()) {
       layout.getSlideshow().showImmediately(imageNr);
     } else {
       layout.getSlideshow().showImmediately(0);
@@ -17,19 +17,19 @@
 package de.eckhartarnold.client;
 
 //import java.lang.Iterable;
-import java.util.HashMap;
 //import java.util.Iterator;
 //import java.util.NoSuchElementException;
 
+import java.util.ArrayList;
+
 //import com.google.gwt.user.client.DOM;
-import com.google.gwt.dom.client.Element;
+import com.google.gwt.user.client.Command;
 import com.google.gwt.user.client.ui.Image;
 
 /**
  * Administers a collection of thumbnail images.
  * 
- * <p>The images are read upon instancing the class. Individual 
- * thumbnails can be
+ * <p>Individual thumbnails can be
  * picked from the collection with the method <code>get</code>; the number of 
  * thumbnails within the collection can be queried via <code>size</code>; 
  * finally, the sizes of all thumbnails can be adjusted with the method 
@@ -39,11 +39,55 @@ import com.google.gwt.user.client.ui.Image;
  * should be considered as being "owned" by the <code>Thumbnail</code> object
  * and should not be overwritten.
  * 
+ * <p>The image widgets are created lazily: only when the thumbnail with a
+ * certain index is requested with <code>get</code>, an image widget is 
+ * created and its URL is set, so that the browser loads the thumbnail. 
+ * When a thumbnail is not displayed any more, it should be handed back with
+ * <code>release</code>. Its widget is then kept in a pool of at most 
+ * <code>POOL_SIZE</code> widgets, from which the widgets for other 
+ * thumbnails are taken. Because the widgets are reused, event handlers and
+ * styles should be added by a {@link Decorator} instead of being added to
+ * the widgets returned by <code>get</code>. Widgets that do not fit into
+ * the pool are handed to the decorator to be discarded. The sizes of the 
+ * thumbnails are available through <code>imageSize</code> without 
+ * creating any widgets.
+ * 
  * @author ecki
  *
  */
 public class Thumbnails {
   
+  /**
+   * Prepares the image widgets of the thumbnails. 
+   */
+  public interface Decorator {
+    /**
+     * Called once, when an image widget is created, e.g. to add event 
+     * handlers.
+     * @param img  the new image widget
+     */
+    void decorate(Image img);
+    
+    /**
+     * Called every time an image widget is assigned to a thumbnail, e.g. 
+     * to set the styles that depend on the thumbnail.
+     * @param img    the image widget
+     * @param index  the index of the thumbnail
+     */
+    void assign(Image img, int index);
+    
+    /**
+     * Called when an image widget is released, but not kept in the pool,
+     * e.g. to drop references to the widget that have been stored by
+     * <code>decorate</code>.
+     * @param img  the image widget that is discarded
+     */
+    void discard(Image img);
+  }
+  
+  /** the maximum number of unused image widgets that are kept for reuse */
+  public static final int POOL_SIZE = 64;
+  
 //  private class Itr implements Iterator<Image> {
 //    int cursor = 0;
 //    
@@ -100,9 +144,16 @@ public class Thumbnails {
 //    return ret;
 //  }
   
-  private Image[] imageList;
+  private Image[] imageList;     // the widgets of the thumbnails in use
+  private ArrayList<Image> pool = new ArrayList<Image>();
+  private Decorator decorator = null;
+  private String[] thumbnailURLs;
   private int[][] thumbnailSizes;
   private int[][] actualSizes;
+  private boolean[] empty;   // thumbnails of images not loaded yet
+  private ArrayList<int[]> pendingRanges = new ArrayList<int[]>();
+  private int     edgeWidth = -1, edgeHeight = -1;  // last adjustment
+  private ImageCollectionInfo collection = null;
   // private int[]   bestRatio;
   
   /**
@@ -110,6 +161,11 @@ public class Thumbnails {
    * that the smallest version of each image in the collection is its
    * thumbnail.
    * 
+   * <p>If the collection is loaded page by page, the thumbnails of images 
+   * that have not been loaded yet remain empty (and have the size of the
+   * first thumbnail) until they are requested with 
+   * {@link #requestRange(int, int, Command)}.
+   * 
    * @param collection  the image collection from which the thumbnails are
    *                    to be collected
    */
@@ -122,18 +178,22 @@ public class Thumbnails {
       thumbnailSizes = cache_thumbnailSizes;
     } else {
       String   imageNames[] = collection.getImageNames();
-      HashMap<String, int[][]> imageSizes = collection.getImageSizes();
+      ImageSizeTable imageSizes = collection.getSizeTable();
       String   thumbnailDir = collection.getDirectories()[0];    
       thumbnailURLs = new String[imageNames.length];
       thumbnailSizes = new int[thumbnailURLs.length][2];
       for (int i = 0; i < imageNames.length; i++) {
-        thumbnailURLs[i] = thumbnailDir + "/" + imageNames[i];
-        thumbnailSizes[i] = imageSizes.get(imageNames[i])[0]; 
+        if (imageNames[i] != null) {
+          thumbnailURLs[i] = thumbnailDir + "/" + imageNames[i];
+        }
+        thumbnailSizes[i][0] = imageSizes.width(i, 0);
+        thumbnailSizes[i][1] = imageSizes.height(i, 0);
       }
       cache_collection = collection;
       cache_thumbnailURLs = thumbnailURLs;
       cache_thumbnailSizes = thumbnailSizes;
     }
+    this.collection = collection;
     init(thumbnailURLs, thumbnailSizes);
   }
   
@@ -156,13 +216,10 @@ public class Thumbnails {
    * be resized.
    */
   public void adjustToHeight(int edgeHeight) {
+    this.edgeWidth = -1;
+    this.edgeHeight = edgeHeight;
     for (int i = 0; i < imageList.length; i++) {
-      int tnW = thumbnailSizes[i][0];
-      int tnH = thumbnailSizes[i][1];
-      int w = tnW * edgeHeight / tnH;
-      actualSizes[i][0] = w;
-      actualSizes[i][1] = edgeHeight;
-      imageList[i].setPixelSize(w, edgeHeight);        
+      adjust(i);
     }
   }
   
@@ -175,27 +232,10 @@ public class Thumbnails {
    * @param edgeHeight the (maximum) height of the thumbnails
    */
   public void adjustToRectangle(int edgeWidth, int edgeHeight) {
+    this.edgeWidth = edgeWidth;
+    this.edgeHeight = edgeHeight;
     for (int i = 0; i < imageList.length; i++) {
-      int tnW = thumbnailSizes[i][0];
-      int tnH = thumbnailSizes[i][1];
-      int w, h; 
-      if (tnW == 0) {
-        w = 0;
-        h = edgeHeight;
-      } else if (tnH == 0) {
-        w = edgeWidth;
-        h = 0;
-      } else {
-        w = edgeWidth;
-        h = tnH * edgeWidth / tnW;
-        if (h > edgeHeight) {
-          h = edgeHeight;
-          w = tnW * edgeHeight / tnH;
-        } 
-      }
-      actualSizes[i][0] = w;
-      actualSizes[i][1] = h;
-      imageList[i].setPixelSize(w, h);      
+      adjust(i);
     }
   }
   
@@ -220,13 +260,29 @@ public class Thumbnails {
 //  }
   
   /**
-   * Get the thumbnail image with the index <code>i</code>
+   * Get the thumbnail image with the index <code>i</code>. If there is no 
+   * image widget for this thumbnail, yet, one is taken from the pool or 
+   * created and the thumbnail starts loading. 
    * @param index the index of the image to be collected
    * @return the image corresponding to the given index
    */
   public Image get(int index) {
     assert index >= 0 && index < size();
-    return imageList[index];
+    Image img = imageList[index];
+    if (img == null) {
+      if (pool.isEmpty()) {
+        img = new Image();
+        if (decorator != null) decorator.decorate(img);
+      } else {
+        img = pool.remove(pool.size() - 1);
+      }
+      img.getElement().setAttribute("id", String.valueOf(index));
+      if (decorator != null) decorator.assign(img, index);
+      imageList[index] = img;
+      adjust(index);
+      if (thumbnailURLs[index] != null) img.setUrl(thumbnailURLs[index]);
+    }
+    return img;
   }
   
   /**
@@ -244,6 +300,15 @@ public class Thumbnails {
 //    return new Itr();
 //  }
   
+  /**
+   * Returns true, if an image widget is assigned to the thumbnail.
+   * @param index  the index of the thumbnail
+   * @return true, if <code>get</code> returns a widget in use
+   */
+  public boolean isAssigned(int index) {
+    return imageList[index] != null;
+  }
+  
   /**
    * Returns the index of the given thumbnail image. (Indices are stored
    * as string representation in the "id" field of the thumbnail.)
@@ -258,6 +323,76 @@ public class Thumbnails {
     return index;
   }
   
+  /**
+   * Requests the thumbnails from index <code>from</code> (inclusive) to
+   * <code>to</code> (exclusive), if they have not been loaded yet. This is
+   * only necessary for image collections that are loaded page by page.
+   * Indices outside the collection are ignored. A range that lies within
+   * a range that is still being loaded is not requested again.
+   * 
+   * @param from    the index of the first thumbnail
+   * @param to      the index after the last thumbnail
+   * @param loaded  a command that is executed after the thumbnails have 
+   *                been filled in, may be <code>null</code>
+   */
+  public void requestRange(int from, int to, Command loaded) {
+    if (collection == null) return;
+    final int first = Math.max(from, 0);
+    final int last = Math.min(to, size());
+    for (int i = first; i < last; i++) {
+      if (empty[i]) {
+        // a range that is pending already is filled in only once
+        for (int[] range: pendingRanges) {
+          if (range[0] <= first && last <= range[1]) {
+            if (loaded != null) collection.requestImages(first, last, loaded);
+            return;
+          }
+        }
+        final int[] range = { first, last };
+        final Command callback = loaded;
+        pendingRanges.add(range);
+        collection.requestImages(first, last, new Command() {
+          public void execute() {
+            pendingRanges.remove(range);
+            fill(first, last);
+            if (callback != null) callback.execute();
+          }
+        }, new Command() {
+          public void execute() {
+            pendingRanges.remove(range);
+          }
+        });
+        return;
+      }
+    }
+  }
+  
+  /**
+   * Hands the image widget of a thumbnail that is not displayed any more
+   * back, so that it can be reused for other thumbnails. The widget must 
+   * have been removed from its parent before. If it is loading, the 
+   * download is stopped. If the pool is full, the widget is discarded.
+   * @param index  the index of the thumbnail
+   */
+  public void release(int index) {
+    Image img = imageList[index];
+    if (img == null) return;
+    assert img.getParent() == null : "Thumbnail must be removed before release!";
+    imageList[index] = null;
+    img.getElement().removeAttribute("src");
+    if (pool.size() < POOL_SIZE) pool.add(img);
+    else if (decorator != null) decorator.discard(img);
+  }
+  
+  /**
+   * Sets the decorator that prepares the image widgets. This should be 
+   * done before the first thumbnail is requested.
+   * @param decorator  the decorator or <code>null</code>
+   */
+  public void setDecorator(Decorator decorator) {
+    this.decorator = decorator;
+  }
+  
   public void setHooverStyle(String style) {
     
   }
@@ -271,16 +406,69 @@ public class Thumbnails {
   }
   
   
+  /**
+   * Adjusts the size of thumbnail <code>i</code> according to the last
+   * call of <code>adjustToHeight</code> or <code>adjustToRectangle</code>.
+   */
+  private void adjust(int i) {
+    if (edgeHeight < 0) return;
+    int tnW = thumbnailSizes[i][0];
+    int tnH = thumbnailSizes[i][1];
+    int w, h; 
+    if (edgeWidth < 0) {
+      w = tnW * edgeHeight / tnH;
+      h = edgeHeight;
+    } else if (tnW == 0) {
+      w = 0;
+      h = edgeHeight;
+    } else if (tnH == 0) {
+      w = edgeWidth;
+      h = 0;
+    } else {
+      w = edgeWidth;
+      h = tnH * edgeWidth / tnW;
+      if (h > edgeHeight) {
+        h = edgeHeight;
+        w = tnW * edgeHeight / tnH;
+      } 
+    }
+    actualSizes[i][0] = w;
+    actualSizes[i][1] = h;
+    if (imageList[i] != null) imageList[i].setPixelSize(w, h);      
+  }
+  
+  /**
+   * Fills in the URLs and sizes of the thumbnails that have been loaded 
+   * since the thumbnails were created.
+   */
+  private void fill(int from, int to) {
+    String[] imageNames = collection.getImageNames();
+    ImageSizeTable imageSizes = collection.getSizeTable();
+    String thumbnailDir = collection.getDirectories()[0];
+    for (int i = from; i < to; i++) {
+      if (empty[i] && imageNames[i] != null) {
+        // the arrays may be shared with other instances via the cache
+        if (thumbnailURLs[i] == null) {
+          thumbnailURLs[i] = thumbnailDir + "/" + imageNames[i];
+          thumbnailSizes[i][0] = imageSizes.width(i, 0);
+          thumbnailSizes[i][1] = imageSizes.height(i, 0);
+        }
+        empty[i] = false;
+        adjust(i);
+        if (imageList[i] != null) imageList[i].setUrl(thumbnailURLs[i]);
+      }
+    }
+  }
+  
   private void init(String[] thumbnailURLs, int[][] thumbnailSizes) {
     assert thumbnailURLs.length == thumbnailSizes.length;    
+    this.thumbnailURLs = thumbnailURLs;
     this.thumbnailSizes = thumbnailSizes;
     imageList = new Image[thumbnailURLs.length]; 
     actualSizes = new int[thumbnailURLs.length][2];
+    empty = new boolean[thumbnailURLs.length];
     for (int i = 0; i < thumbnailURLs.length; i++) {
-      imageList[i] = new Image(thumbnailURLs[i]);
-      Element imgElement = imageList[i].getElement();
-//      DOM.setElementAttribute(imgElement, "id", String.valueOf(i));
-      imgElement.setAttribute("id", String.valueOf(i));      
+      empty[i] = thumbnailURLs[i] == null;
       actualSizes[i][0] = thumbnailSizes[i][0];
       actualSizes[i][1] = thumbnailSizes[i][1];     
     }
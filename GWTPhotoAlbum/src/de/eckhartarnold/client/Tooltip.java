@@ -105,6 +105,8 @@ public class Tooltip extends PopupPanel implements MouseDownHandler,
   }
   
   private int               delay;
+  private Captions          captions = null; // captions not yet sanitized
+  private int               captionIndex;
   private final  HTML       tooltipText;
   private final  PopupTimer timer = new PopupTimer();
   private boolean           timerExpired = false;
@@ -132,6 +134,21 @@ public class Tooltip extends PopupPanel implements MouseDownHandler,
     this(htmlText.asString());
   }  
   
+  /**
+   * Constructor of class <code>Tooltip</code> for a tool tip that shows the 
+   * caption of an image. The caption is only retrieved from the 
+   * <code>captions</code> object (and thereby sanitized) when the tool tip 
+   * is shown for the first time.
+   * 
+   * @param captions  the captions of an image collection
+   * @param index     the index of the image, the caption of which is shown
+   */
+  public Tooltip(Captions captions, int index) {
+    this("");
+    this.captions = captions;
+    this.captionIndex = index;
+  }
+  
   /**
    * Alternative constructor that allows also determining the delay after which
    * the tool tip appears.
@@ -214,6 +231,21 @@ public class Tooltip extends PopupPanel implements MouseDownHandler,
     hide();
   }
 
+  /**
+   * Lets the tool tip show the caption of another image. This allows 
+   * reusing the tool tip when its widget is reused for another image.
+   * 
+   * @param captions  the captions of an image collection
+   * @param index     the index of the image, the caption of which is shown
+   */
+  public void setCaption(Captions captions, int index) {
+    timer.cancel();
+    if (visible == this) hide();
+    this.captions = captions;
+    this.captionIndex = index;
+    tooltipText.setHTML("");
+  }
+  
   /**
    * Set the maximum number of re-appearances  for the tool tip.
    * @param limit  the maximum number of re-appearances
@@ -230,7 +262,14 @@ public class Tooltip extends PopupPanel implements MouseDownHandler,
     if (visible != null && visible != this) {
       visible.hide();
     }
-    visible = this;    
+    if (captions != null) {
+      // the image may have turned out to have no caption after all
+      if (!captions.isAvailable(captionIndex) 
+          || captions.isEmpty(captionIndex)) return;
+      tooltipText.setHTML(captions.get(captionIndex));
+      captions = null;
+    }
+    visible = this;
     super.show();
   }
 }
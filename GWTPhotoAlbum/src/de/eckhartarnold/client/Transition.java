@@ -0,0 +1,178 @@
+/*
+ * Copyright 2008 Eckhart Arnold (eckhart_arnold@hotmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package de.eckhartarnold.client;
+
+/**
+ * The visual effect with which the {@link ImagePanel} changes from one
+ * image to the next.
+ *
+ * <p>Every transition fades the old image out and the new image in.
+ * Whether this happens at the same time or one after the other is
+ * determined by the sign of the fading duration of the image panel.
+ * Transitions other than the plain crossfade also move or scale the
+ * images. They only use CSS transformations and opacity, so that the
+ * browser can run them on the compositor. In browsers without CSS
+ * transitions all effects are shown as crossfade.
+ *
+ * <p>The available transitions are:
+ * <ul>
+ * <li>"crossfade" - the images are only faded
+ * <li>"slide"     - the new image slides in from the right, while the
+ *                   old image slides out to the left
+ * <li>"zoom"      - a Ken Burns effect: the new image is slowly zoomed
+ *                   and panned while it is displayed
+ * </ul>
+ *
+ * <p>If the device drops too many frames during a transition, the image
+ * panel switches to the fallback transition, which is the crossfade for
+ * all other transitions.
+ *
+ * @author eckhart
+ */
+public abstract class Transition {
+  /** name of the crossfade transition */
+  public static final String CROSSFADE = "crossfade";
+  /** name of the horizontal slide transition */
+  public static final String SLIDE = "slide";
+  /** name of the Ken Burns zoom and pan transition */
+  public static final String ZOOM = "zoom";
+
+  private static class Crossfade extends Transition {
+    Crossfade() {
+      super(CROSSFADE);
+    }
+
+    @Override
+    public Transition getFallback() {
+      return null;
+    }
+
+    @Override
+    void prepareIn(Fade fadeIn, int width, int displayDuration) {
+    }
+
+    @Override
+    void prepareOut(Fade fadeOut, int width) {
+    }
+  }
+
+  private static class Slide extends Transition {
+    Slide() {
+      super(SLIDE);
+    }
+
+    @Override
+    void prepareIn(Fade fadeIn, int width, int displayDuration) {
+      fadeIn.setTransformSpan("translateX(" + width + "px)",
+                              "translateX(0px)", 0);
+    }
+
+    @Override
+    void prepareOut(Fade fadeOut, int width) {
+      fadeOut.setTransformSpan("translateX(0px)",
+                               "translateX(" + (-width) + "px)", 0);
+    }
+  }
+
+  private static class Zoom extends Transition {
+    /** alternating zoom and pan movements: scale, x- and y-shift in % */
+    private static final double[][] MOVES = {
+      { 1.15, -3, -2 }, { 1.15, 3, 2 }, { 1.15, 3, -2 }, { 1.15, -3, 2 }
+    };
+    private int count = 0;
+
+    Zoom() {
+      super(ZOOM);
+    }
+
+    @Override
+    void prepareIn(Fade fadeIn, int width, int displayDuration) {
+      double[] move = MOVES[count++ % MOVES.length];
+      String zoomed = "scale(" + move[0] + ") translate(" + move[1] + "%, " +
+                      move[2] + "%)";
+      // zooming out and zooming in alternate
+      if (count % 2 == 0) {
+        fadeIn.setTransformSpan(zoomed, "scale(1) translate(0%, 0%)",
+                                displayDuration);
+      } else {
+        fadeIn.setTransformSpan("scale(1) translate(0%, 0%)", zoomed,
+                                displayDuration);
+      }
+    }
+
+    @Override
+    void prepareOut(Fade fadeOut, int width) {
+      // the zooming of the old image simply continues
+    }
+  }
+
+  /**
+   * Returns the transition with the given name.
+   *
+   * @param name  the name of the transition
+   * @return the transition or the crossfade, if there is no transition
+   *         with this name
+   */
+  public static Transition forName(String name) {
+    if (SLIDE.equals(name)) return new Slide();
+    if (ZOOM.equals(name)) return new Zoom();
+    return new Crossfade();
+  }
+
+  private final String name;
+
+  private Transition(String name) {
+    this.name = name;
+  }
+
+  /**
+   * Returns the transition that is used instead, if this transition
+   * cannot be shown smoothly.
+   *
+   * @return the fallback transition or <code>null</code>, if there is none
+   */
+  public Transition getFallback() {
+    return forName(CROSSFADE);
+  }
+
+  /**
+   * Returns the name of the transition.
+   *
+   * @return the name
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Adds the movement of the new image to the fade that shows it.
+   *
+   * @param fadeIn           the fade of the new image
+   * @param width            the width of the image panel
+   * @param displayDuration  the time from the start of the fading until the
+   *                         next image is shown in milliseconds
+   */
+  abstract void prepareIn(Fade fadeIn, int width, int displayDuration);
+
+  /**
+   * Adds the movement of the old image to the fade that hides it.
+   *
+   * @param fadeOut  the fade of the old image
+   * @param width    the width of the image panel
+   */
+  abstract void prepareOut(Fade fadeOut, int width);
+}
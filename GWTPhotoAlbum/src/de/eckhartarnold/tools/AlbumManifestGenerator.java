@@ -0,0 +1,356 @@
+/*
+ * Copyright 2008 Eckhart Arnold (eckhart_arnold@hotmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package de.eckhartarnold.tools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the album manifest "album.json" from the separate .json files
+ * of an existing photo album.
+ *
+ * <p>The manifest is a dictionary with the keys "directories", "filenames",
+ * "captions", "resolutions" and "info" that bundles the contents of the
+ * files "directories.json", "filenames.json", "captions.json",
+ * "resolutions.json" and "info.json". It allows the client to load the
+ * whole description of the album with a single request. The separate
+ * files are left in place, so that older versions of the client can
+ * still read the album.
+ *
+ * <p>Usage: <code>java de.eckhartarnold.tools.AlbumManifestGenerator
+ * [-columnar] [-paged page size] [slides directory ...]</code>. If no
+ * directory is given, "war/slides" is converted. With the option
+ * <code>-columnar</code> the image sizes are stored in the compact columnar
+ * encoding (see {@link de.eckhartarnold.client.ImageSizeTable}) inside the
+ * manifest, which is much faster to decode for albums with many thousand
+ * images. With the option <code>-paged</code> a paged manifest is written,
+ * which only contains the first page of images, and the following pages
+ * are written to the files "album-page-1.json", "album-page-2.json" etc.
+ *
+ * @see de.eckhartarnold.client.ImageCollectionReader
+ * @author eckhart
+ */
+public class AlbumManifestGenerator {
+  /** The file name of the manifest */
+  public static final String MANIFEST = "album.json";
+  /** The file name prefix of the pages of a paged manifest */
+  public static final String PAGE_PREFIX = "album-page-";
+
+  /** The keys of the manifest and the files they are read from */
+  private static final String[][] PARTS = {
+    { "directories", "directories.json" },
+    { "filenames",   "filenames.json" },
+    { "captions",    "captions.json" },
+    { "resolutions", "resolutions.json" },
+    { "info",        "info.json" }
+  };
+
+  /**
+   * Converts the slides directories given on the command line.
+   * @param args  the slides directories
+   */
+  public static void main(String[] args) {
+    boolean columnar = false;
+    int pageSize = 0;
+    ArrayList<String> dirs = new ArrayList<String>();
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals("-columnar")) {
+        columnar = true;
+      } else if (args[i].equals("-paged") && i+1 < args.length) {
+        pageSize = Integer.parseInt(args[++i]);
+      } else {
+        dirs.add(args[i]);
+      }
+    }
+    if (dirs.isEmpty()) dirs.add("war/slides");
+    int failures = 0;
+    for (String dir: dirs) {
+      try {
+        File manifest;
+        if (pageSize > 0) {
+          manifest = generatePaged(new File(dir), columnar, pageSize);
+        } else {
+          manifest = generate(new File(dir), columnar);
+        }
+        System.out.println("written: " + manifest.getPath());
+      } catch (IOException e) {
+        System.err.println("could not create manifest for " + dir + ": " +
+            e.getMessage());
+        failures++;
+      } catch (IllegalArgumentException e) {
+        System.err.println("malformed .json file in " + dir + ": " +
+            e.getMessage());
+        failures++;
+      }
+    }
+    if (failures > 0) System.exit(1);
+  }
+
+  /**
+   * Converts the content of "resolutions.json" into the columnar encoding.
+   * Resolution sets are numbered in the order of their first appearance.
+   *
+   * @param resolutions  the content of "resolutions.json" in one of the
+   *                     dictionary formats
+   * @param filenames    the content of "filenames.json"
+   * @return the columnar encoding of the image sizes
+   * @throws IllegalArgumentException if the image sizes cannot be converted
+   */
+  @SuppressWarnings("unchecked")
+  public static String columnarResolutions(String resolutions,
+      String filenames) {
+    List<Object> names = (List<Object>) SimpleJSON.parse(filenames);
+    return columnarResolutions(resolveSizes(resolutions), names);
+  }
+
+  /**
+   * Reads "resolutions.json" in one of the dictionary formats and returns
+   * a dictionary that maps every image name directly to its list of sizes.
+   *
+   * @param resolutions  the content of "resolutions.json"
+   * @return a dictionary that maps image names to lists of sizes
+   */
+  @SuppressWarnings("unchecked")
+  static Map<String, Object> resolveSizes(String resolutions) {
+    Object json = SimpleJSON.parse(resolutions);
+    Map<String, Object> sets = new HashMap<String, Object>();
+    Map<String, Object> images;
+    if (json instanceof List) {
+      sets = (Map<String, Object>) ((List<Object>) json).get(0);
+      images = (Map<String, Object>) ((List<Object>) json).get(1);
+    } else {
+      images = (Map<String, Object>) json;
+    }
+    HashMap<String, Object> sizes = new HashMap<String, Object>();
+    for (Map.Entry<String, Object> entry: images.entrySet()) {
+      Object value = entry.getValue();
+      if (value instanceof String) value = sets.get(value);
+      sizes.put(entry.getKey(), value);
+    }
+    return sizes;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static String columnarResolutions(Map<String, Object> images,
+      List<Object> names) {
+    HashMap<List<Object>, Integer> setIds = new HashMap<List<Object>, Integer>();
+    StringBuilder setsOut = new StringBuilder();
+    StringBuilder imagesOut = new StringBuilder();
+    int steps = -1;
+    for (Object name: names) {
+      Object entry = images.get(name);
+      if (!(entry instanceof List)) {
+        throw new IllegalArgumentException("no sizes for image " + name);
+      }
+      List<Object> sizes = (List<Object>) entry;
+      if (steps < 0) steps = sizes.size();
+      if (sizes.size() != steps) {
+        throw new IllegalArgumentException("image " + name + " has " +
+            sizes.size() + " instead of " + steps + " sizes");
+      }
+      Integer id = setIds.get(sizes);
+      if (id == null) {
+        id = setIds.size();
+        setIds.put(sizes, id);
+        for (Object size: sizes) {
+          List<Object> wh = (List<Object>) size;
+          if (setsOut.length() > 0) setsOut.append(", ");
+          setsOut.append(((Number) wh.get(0)).intValue()).append(",");
+          setsOut.append(((Number) wh.get(1)).intValue());
+        }
+      }
+      if (imagesOut.length() > 0) imagesOut.append(",");
+      imagesOut.append(id);
+    }
+    return "{\"columnar\": 1, \"steps\": " + Math.max(steps, 1) +
+           ",\n \"sets\": [" + setsOut + "],\n \"images\": [" + imagesOut +
+           "]}";
+  }
+
+  /**
+   * Writes the manifest for the album in the given slides directory.
+   * The contents of the separate .json files are copied verbatim, so
+   * that the format of each part stays exactly the same.
+   *
+   * @param slidesDir  the directory that contains the .json files
+   * @return the manifest file
+   * @throws IOException if one of the .json files cannot be read or the
+   *                     manifest cannot be written
+   */
+  public static File generate(File slidesDir) throws IOException {
+    return generate(slidesDir, false);
+  }
+
+  /**
+   * Writes the manifest for the album in the given slides directory.
+   * Except for the image sizes, if <code>columnar</code> is true, the
+   * contents of the separate .json files are copied verbatim.
+   *
+   * @param slidesDir  the directory that contains the .json files
+   * @param columnar   if true, the image sizes are stored in the columnar
+   *                   encoding
+   * @return the manifest file
+   * @throws IOException if one of the .json files cannot be read or the
+   *                     manifest cannot be written
+   */
+  public static File generate(File slidesDir, boolean columnar)
+      throws IOException {
+    String[] contents = new String[PARTS.length];
+    for (int i = 0; i < PARTS.length; i++) {
+      File part = new File(slidesDir, PARTS[i][1]);
+      if (!part.isFile()) {
+        throw new IOException("missing file " + part.getPath());
+      }
+      contents[i] = readFile(part).trim();
+    }
+    if (columnar) {
+      contents[3] = columnarResolutions(contents[3], contents[1]);
+    }
+
+    StringBuilder manifest = new StringBuilder();
+    manifest.append("{");
+    for (int i = 0; i < PARTS.length; i++) {
+      if (i > 0) manifest.append(",");
+      manifest.append("\n\"").append(PARTS[i][0]).append("\": ");
+      manifest.append(contents[i]);
+    }
+    manifest.append("\n}\n");
+
+    File target = new File(slidesDir, MANIFEST);
+    writeFile(target, manifest.toString());
+    return target;
+  }
+
+  /**
+   * Writes a paged manifest for the album in the given slides directory.
+   * The manifest contains the directories, the info and the first
+   * <code>pageSize</code> images. The other images are written to the
+   * page files "album-page-1.json", "album-page-2.json" etc.
+   *
+   * @param slidesDir  the directory that contains the .json files
+   * @param columnar   if true, the image sizes are stored in the columnar
+   *                   encoding
+   * @param pageSize   the number of images per page
+   * @return the manifest file
+   * @throws IOException if one of the .json files cannot be read or the
+   *                     manifest or the pages cannot be written
+   */
+  @SuppressWarnings("unchecked")
+  public static File generatePaged(File slidesDir, boolean columnar,
+      int pageSize) throws IOException {
+    String[] contents = new String[PARTS.length];
+    for (int i = 0; i < PARTS.length; i++) {
+      File part = new File(slidesDir, PARTS[i][1]);
+      if (!part.isFile()) {
+        throw new IOException("missing file " + part.getPath());
+      }
+      contents[i] = readFile(part).trim();
+    }
+    List<Object> names = (List<Object>) SimpleJSON.parse(contents[1]);
+    Map<String, Object> captions =
+      (Map<String, Object>) SimpleJSON.parse(contents[2]);
+    Map<String, Object> sizes = resolveSizes(contents[3]);
+
+    int pages = Math.max(1, (names.size() + pageSize - 1) / pageSize);
+    File target = null;
+    for (int page = 0; page < pages; page++) {
+      List<Object> pageNames = names.subList(page * pageSize,
+          Math.min(names.size(), (page + 1) * pageSize));
+      LinkedHashMap<String, Object> pageCaptions =
+        new LinkedHashMap<String, Object>();
+      LinkedHashMap<String, Object> pageSizes =
+        new LinkedHashMap<String, Object>();
+      for (Object name: pageNames) {
+        if (captions.containsKey(name)) {
+          pageCaptions.put((String) name, captions.get(name));
+        }
+        pageSizes.put((String) name, sizes.get(name));
+      }
+      StringBuilder out = new StringBuilder();
+      out.append("{");
+      if (page == 0) {
+        out.append("\n\"directories\": ").append(contents[0]).append(",");
+        out.append("\n\"paged\": {\"count\": ").append(names.size());
+        out.append(", \"pageSize\": ").append(pageSize).append("},");
+      }
+      out.append("\n\"filenames\": ").append(SimpleJSON.write(pageNames));
+      out.append(",\n\"captions\": ").append(SimpleJSON.write(pageCaptions));
+      out.append(",\n\"resolutions\": ");
+      if (columnar) out.append(columnarResolutions(pageSizes, pageNames));
+      else out.append(SimpleJSON.write(pageSizes));
+      if (page == 0) {
+        out.append(",\n\"info\": ").append(contents[4]);
+      }
+      out.append("\n}\n");
+
+      File file = new File(slidesDir, page == 0 ? MANIFEST :
+          PAGE_PREFIX + page + ".json");
+      writeFile(file, out.toString());
+      if (page == 0) target = file;
+    }
+    return target;
+  }
+
+  /**
+   * Reads a whole (UTF-8 encoded) text file.
+   * @param file  the file to be read
+   * @return the contents of the file
+   * @throws IOException if the file cannot be read
+   */
+  static String readFile(File file) throws IOException {
+    InputStream in = new FileInputStream(file);
+    try {
+      ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+      byte[] chunk = new byte[8192];
+      int n;
+      while ((n = in.read(chunk)) > 0) {
+        buffer.write(chunk, 0, n);
+      }
+      String text = buffer.toString("UTF-8");
+      if (text.startsWith("\uFEFF")) text = text.substring(1);
+      return text;
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Writes a text file in UTF-8 encoding.
+   * @param file  the file to be written
+   * @param text  the contents of the file
+   * @throws IOException if the file cannot be written
+   */
+  static void writeFile(File file, String text) throws IOException {
+    Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+    try {
+      out.write(text);
+    } finally {
+      out.close();
+    }
+  }
+}
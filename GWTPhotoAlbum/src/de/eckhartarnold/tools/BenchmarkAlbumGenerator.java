@@ -0,0 +1,281 @@
+/*
+ * Copyright 2008 Eckhart Arnold (eckhart_arnold@hotmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package de.eckhartarnold.tools;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Generates synthetic photo albums of any size for measuring the time to
+ * interactive and the memory usage of the gallery with many images.
+ *
+ * <p>The album gets two size steps, "160x120" for the thumbnails and
+ * "1024x768" for the slide show, and images in three different aspect
+ * ratios. All .json files of the album are written as well as the
+ * columnar album manifest (see {@link AlbumManifestGenerator}). The
+ * image files are a few differently colored placeholder images, which
+ * are hard linked (or, where this is not possible, copied) under the
+ * names of all images, so that even an album with 100000 images takes up
+ * little space on disk. With the option <code>-noimages</code> no image
+ * files are written at all, which is enough for measuring the layout of
+ * the gallery.
+ *
+ * <p>If the war directory with a compiled GWTPhotoAlbum is found, the host
+ * page, the style sheet, the compiled scripts and the icons are copied
+ * into the target directory, so that the album can be opened directly.
+ * With the option <code>-classic</code> the field "virtual gallery" of
+ * the info file is set to "false", so that the virtual and the classic
+ * gallery can be compared on the same album.
+ *
+ * <p>Usage: <code>java de.eckhartarnold.tools.BenchmarkAlbumGenerator
+ * [-noimages] [-classic] [-paged page size] [-war war directory]
+ * number of images target directory</code>. Typical sizes are 1000,
+ * 10000 and 100000 images. The time to interactive and the memory usage
+ * can then be read from the developer tools of the browser.
+ *
+ * @author eckhart
+ */
+public class BenchmarkAlbumGenerator {
+  private static final String[] DIRECTORIES = { "160x120", "1024x768" };
+  private static final int[][][] RESOLUTIONS = {
+    { { 160, 120 }, { 1024, 768 } },  // landscape 4:3
+    { { 90, 120 },  { 576, 768 } },   // portrait 3:4
+    { { 160, 107 }, { 1024, 683 } }   // landscape 3:2
+  };
+  private static final Color[] COLORS = {
+    new Color(0x8FA3B8), new Color(0xB89B72), new Color(0x6E8B5A),
+    new Color(0xA4616A), new Color(0x5F6F94), new Color(0xC2B280)
+  };
+  /** the files that are copied from the war directory */
+  private static final String[] HOST_FILES = {
+    "GWTPhotoAlbum.html", "GWTPhotoAlbum.css", "GWTPhotoAlbum", "icons"
+  };
+
+  /**
+   * Generates the album described on the command line.
+   * @param args  the options, the number of images and the target
+   *              directory
+   */
+  public static void main(String[] args) {
+    boolean images = true, classic = false;
+    int pageSize = 0;
+    String war = "war";
+    ArrayList<String> params = new ArrayList<String>();
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals("-noimages")) {
+        images = false;
+      } else if (args[i].equals("-classic")) {
+        classic = true;
+      } else if (args[i].equals("-paged") && i+1 < args.length) {
+        pageSize = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-war") && i+1 < args.length) {
+        war = args[++i];
+      } else {
+        params.add(args[i]);
+      }
+    }
+    if (params.size() != 2) {
+      System.err.println("usage: BenchmarkAlbumGenerator [-noimages] " +
+          "[-classic] [-paged page size] [-war war directory] " +
+          "number of images target directory");
+      System.exit(1);
+    }
+    int count = Integer.parseInt(params.get(0));
+    File target = new File(params.get(1));
+    try {
+      long start = System.currentTimeMillis();
+      File slidesDir = generate(target, count, images, classic, pageSize);
+      copyHostPage(new File(war), target);
+      System.out.println("written: " + slidesDir.getPath() + " (" + count +
+          " images) in " + (System.currentTimeMillis() - start) + " ms");
+    } catch (IOException e) {
+      System.err.println("could not generate album: " + e.getMessage());
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Writes the slides directory of a synthetic album.
+   *
+   * @param target    the directory of the album
+   * @param count     the number of images
+   * @param images    if true, the image files are written, too
+   * @param classic   if true, the virtual gallery is switched off
+   * @param pageSize  the page size of a paged manifest or 0 for a manifest
+   *                  in one piece
+   * @return the slides directory
+   * @throws IOException if a file cannot be written
+   */
+  public static File generate(File target, int count, boolean images,
+      boolean classic, int pageSize) throws IOException {
+    File slidesDir = new File(target, "slides");
+    for (String dir: DIRECTORIES) mkdirs(new File(slidesDir, dir));
+
+    List<String> names = new ArrayList<String>(count);
+    StringBuilder filenames = new StringBuilder("[");
+    StringBuilder captions = new StringBuilder("{");
+    StringBuilder resolutions = new StringBuilder("[{");
+    for (int r = 0; r < RESOLUTIONS.length; r++) {
+      if (r > 0) resolutions.append(", ");
+      resolutions.append("\"res").append(r).append("\": [");
+      for (int step = 0; step < DIRECTORIES.length; step++) {
+        if (step > 0) resolutions.append(", ");
+        resolutions.append("[").append(RESOLUTIONS[r][step][0]).append(", ")
+                   .append(RESOLUTIONS[r][step][1]).append("]");
+      }
+      resolutions.append("]");
+    }
+    resolutions.append("},\n {");
+    for (int i = 0; i < count; i++) {
+      String name = String.format("img%06d.jpg", i + 1);
+      names.add(name);
+      String separator = (i > 0) ? ",\n " : "\n ";
+      filenames.append(separator).append("\"").append(name).append("\"");
+      captions.append(separator).append("\"").append(name)
+              .append("\": \"Image ").append(i + 1).append("\"");
+      resolutions.append(i > 0 ? ", " : "").append("\"").append(name)
+                 .append("\": \"res").append(variant(i)).append("\"");
+    }
+    filenames.append("\n]\n");
+    captions.append("\n}\n");
+    resolutions.append("}]\n");
+
+    AlbumManifestGenerator.writeFile(new File(slidesDir, "directories.json"),
+        "[\"" + DIRECTORIES[0] + "\", \"" + DIRECTORIES[1] + "\"]\n");
+    AlbumManifestGenerator.writeFile(new File(slidesDir, "filenames.json"),
+        filenames.toString());
+    AlbumManifestGenerator.writeFile(new File(slidesDir, "captions.json"),
+        captions.toString());
+    AlbumManifestGenerator.writeFile(new File(slidesDir, "resolutions.json"),
+        resolutions.toString());
+    AlbumManifestGenerator.writeFile(new File(slidesDir, "info.json"),
+        "{\n" +
+        "  \"title\": \"Benchmark album with " + count + " images\",\n" +
+        "  \"layout type\": \"fullscreen\",\n" +
+        "  \"layout data\": \"IOFT\",\n" +
+        "  \"presentation type\": \"gallery\",\n" +
+        "  \"thumbnail width\": \"160\",\n" +
+        "  \"thumbnail height\": \"160\",\n" +
+        "  \"virtual gallery\": \"" + !classic + "\"\n" +
+        "}\n");
+    if (pageSize > 0) {
+      AlbumManifestGenerator.generatePaged(slidesDir, true, pageSize);
+    } else {
+      AlbumManifestGenerator.generate(slidesDir, true);
+    }
+    if (images) writeImages(slidesDir, names);
+    return slidesDir;
+  }
+
+  /**
+   * Copies the files of the host page from the war directory, if they
+   * exist.
+   */
+  private static void copyHostPage(File war, File target) throws IOException {
+    if (!new File(war, HOST_FILES[0]).isFile()) {
+      System.out.println("no compiled album found in " + war.getPath() +
+          ", only the slides have been written");
+      return;
+    }
+    for (String name: HOST_FILES) {
+      copy(new File(war, name).toPath(), new File(target, name).toPath());
+    }
+  }
+
+  private static void copy(Path from, Path to) throws IOException {
+    if (Files.isDirectory(from)) {
+      Files.createDirectories(to);
+      for (File child: from.toFile().listFiles()) {
+        copy(child.toPath(), to.resolve(child.getName()));
+      }
+    } else if (Files.exists(from)) {
+      Files.copy(from, to, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  /**
+   * Returns the resolution set and color of image <code>i</code>.
+   */
+  private static int variant(int i) {
+    return (i / 7) % RESOLUTIONS.length;
+  }
+
+  private static void mkdirs(File dir) throws IOException {
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("cannot create " + dir.getPath());
+    }
+  }
+
+  /**
+   * Writes one placeholder image for every combination of resolution set
+   * and color and links it under the names of the images.
+   */
+  private static void writeImages(File slidesDir, List<String> names)
+      throws IOException {
+    File templates = new File(slidesDir, ".templates");
+    mkdirs(templates);
+    for (int step = 0; step < DIRECTORIES.length; step++) {
+      File[][] files = new File[RESOLUTIONS.length][COLORS.length];
+      for (int r = 0; r < RESOLUTIONS.length; r++) {
+        for (int c = 0; c < COLORS.length; c++) {
+          files[r][c] = new File(templates, DIRECTORIES[step] + "-" + r +
+              "-" + c + ".jpg");
+          writeImage(files[r][c], RESOLUTIONS[r][step][0],
+              RESOLUTIONS[r][step][1], COLORS[c]);
+        }
+      }
+      File dir = new File(slidesDir, DIRECTORIES[step]);
+      for (int i = 0; i < names.size(); i++) {
+        Path link = new File(dir, names.get(i)).toPath();
+        Path source = files[variant(i)][i % COLORS.length].toPath();
+        Files.deleteIfExists(link);
+        try {
+          Files.createLink(link, source);
+        } catch (UnsupportedOperationException e) {
+          Files.copy(source, link);
+        } catch (IOException e) {
+          Files.copy(source, link);  // e.g. no hard links on this file system
+        }
+      }
+    }
+  }
+
+  private static void writeImage(File file, int width, int height,
+      Color color) throws IOException {
+    BufferedImage image = new BufferedImage(width, height,
+        BufferedImage.TYPE_INT_RGB);
+    Graphics2D g = image.createGraphics();
+    g.setColor(color);
+    g.fillRect(0, 0, width, height);
+    g.setColor(color.darker());
+    g.drawRect(width / 8, height / 8, width * 3 / 4, height * 3 / 4);
+    g.dispose();
+    if (!ImageIO.write(image, "jpg", file)) {
+      throw new IOException("cannot write " + file.getPath());
+    }
+  }
+}
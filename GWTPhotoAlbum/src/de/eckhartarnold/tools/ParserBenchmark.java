@@ -0,0 +1,225 @@
+/*
+ * Copyright 2008 Eckhart Arnold (eckhart_arnold@hotmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package de.eckhartarnold.tools;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.eckhartarnold.client.AlbumStreamParser;
+import de.eckhartarnold.client.ImageSizeTable;
+
+/**
+ * Compares the time and the peak heap usage of reading a large album
+ * manifest in one piece with reading it incrementally.
+ *
+ * <p>A synthetic manifest with the given number of images is generated.
+ * It is read once by parsing the whole text into a tree of values, which
+ * is then copied into the data structures of the album, as
+ * {@link de.eckhartarnold.client.ImageCollectionReader} used to do it, and
+ * once by feeding it piece by piece to an {@link AlbumStreamParser}.
+ * The tree is built with {@link SimpleJSON}, which stands in for the
+ * JSON parser of the browser, so that the numbers compare the two ways of
+ * reading rather than the two parsers.
+ *
+ * <p>The peak heap usage is the sum of the peak usages of all heap memory
+ * pools minus the usage before reading. It includes garbage that has not
+ * been collected yet and should therefore only be compared between runs
+ * with the same garbage collector settings.
+ *
+ * <p>Usage: <code>java de.eckhartarnold.tools.ParserBenchmark
+ * [number of images] [piece size]</code>. The defaults are 100000 images
+ * and pieces of 16384 characters. The GWT user library must be on the
+ * class path, because the parser reports errors with the
+ * <code>JSONException</code> of GWT.
+ *
+ * @author eckhart
+ */
+public class ParserBenchmark {
+  private static final int RUNS = 5;
+
+  /**
+   * Runs the benchmark.
+   * @param args  the number of images and the piece size
+   */
+  public static void main(String[] args) {
+    int count = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+    int pieceSize = args.length > 1 ? Integer.parseInt(args[1]) : 16384;
+    String manifest = generate(count);
+    System.out.println(count + " images, manifest of " + manifest.length() +
+        " characters, pieces of " + pieceSize + " characters");
+
+    // warm up, so that both ways are measured after compilation
+    for (int i = 0; i < RUNS; i++) {
+      readTree(manifest);
+      readStream(manifest, pieceSize);
+    }
+
+    long treeTime = Long.MAX_VALUE, streamTime = Long.MAX_VALUE;
+    long treeHeap = Long.MAX_VALUE, streamHeap = Long.MAX_VALUE;
+    for (int i = 0; i < RUNS; i++) {
+      long baseline = resetPeaks();
+      long start = System.nanoTime();
+      Object result = readTree(manifest);
+      treeTime = Math.min(treeTime, System.nanoTime() - start);
+      treeHeap = Math.min(treeHeap, peakUsage() - baseline);
+      check(result, count);
+
+      baseline = resetPeaks();
+      start = System.nanoTime();
+      result = readStream(manifest, pieceSize);
+      streamTime = Math.min(streamTime, System.nanoTime() - start);
+      streamHeap = Math.min(streamHeap, peakUsage() - baseline);
+      check(result, count);
+    }
+    System.out.println("                 time (ms)   peak heap (KB)");
+    report("tree + copy", treeTime, treeHeap);
+    report("incremental", streamTime, streamHeap);
+  }
+
+  /**
+   * Generates a manifest for the given number of images. Every image has
+   * its own caption, and the sizes are stored per image in the dictionary
+   * format of "resolutions.json", which is the largest of the formats.
+   *
+   * @param count  the number of images
+   * @return the text of the manifest
+   */
+  static String generate(int count) {
+    List<Object> directories = new ArrayList<Object>();
+    directories.add("thumbnails");
+    directories.add("1024x768");
+    directories.add("1920x1440");
+    List<Object> filenames = new ArrayList<Object>(count);
+    Map<String, Object> captions = new LinkedHashMap<String, Object>();
+    Map<String, Object> resolutions = new LinkedHashMap<String, Object>();
+    for (int i = 0; i < count; i++) {
+      String name = "IMG_" + i + ".jpg";
+      filenames.add(name);
+      captions.put(name, "<b>Picture " + i + "</b> taken on day " + (i % 365));
+      boolean portrait = (i % 3 == 0);
+      List<Object> sizes = new ArrayList<Object>();
+      for (int step = 1; step <= 3; step++) {
+        List<Object> size = new ArrayList<Object>();
+        int w = 320 * step * step, h = 240 * step * step + (i % 7);
+        size.add((double) (portrait ? h : w));
+        size.add((double) (portrait ? w : h));
+        sizes.add(size);
+      }
+      resolutions.put(name, sizes);
+    }
+    Map<String, Object> info = new LinkedHashMap<String, Object>();
+    info.put("title", "Benchmark");
+    info.put("subtitle", count + " images");
+    Map<String, Object> manifest = new LinkedHashMap<String, Object>();
+    manifest.put("directories", directories);
+    manifest.put("filenames", filenames);
+    manifest.put("captions", captions);
+    manifest.put("resolutions", resolutions);
+    manifest.put("info", info);
+    return SimpleJSON.write(manifest);
+  }
+
+  private static void check(Object result, int count) {
+    ImageSizeTable sizes = (ImageSizeTable) result;
+    if (sizes.size() != count) {
+      throw new IllegalStateException("wrong number of images: " +
+          sizes.size());
+    }
+  }
+
+  private static long peakUsage() {
+    long sum = 0;
+    for (MemoryPoolMXBean pool: ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) sum += pool.getPeakUsage().getUsed();
+    }
+    return sum;
+  }
+
+  /**
+   * Reads the manifest by parsing it as a whole and copying the values
+   * from the tree.
+   */
+  @SuppressWarnings("unchecked")
+  private static Object readTree(String manifest) {
+    Map<String, Object> tree = (Map<String, Object>) SimpleJSON.parse(manifest);
+    List<Object> list = (List<Object>) tree.get("filenames");
+    String[] names = new String[list.size()];
+    for (int i = 0; i < names.length; i++) names[i] = (String) list.get(i);
+    HashMap<String, String> captions = new HashMap<String, String>();
+    for (Map.Entry<String, Object> entry:
+         ((Map<String, Object>) tree.get("captions")).entrySet()) {
+      captions.put(entry.getKey(), (String) entry.getValue());
+    }
+    HashMap<String, int[][]> sizes = new HashMap<String, int[][]>();
+    for (Map.Entry<String, Object> entry:
+         ((Map<String, Object>) tree.get("resolutions")).entrySet()) {
+      List<Object> steps = (List<Object>) entry.getValue();
+      int[][] imageSizes = new int[steps.size()][2];
+      for (int i = 0; i < imageSizes.length; i++) {
+        List<Object> size = (List<Object>) steps.get(i);
+        imageSizes[i][0] = ((Double) size.get(0)).intValue();
+        imageSizes[i][1] = ((Double) size.get(1)).intValue();
+      }
+      sizes.put(entry.getKey(), imageSizes);
+    }
+    if (captions.size() != names.length) {
+      throw new IllegalStateException("captions missing");
+    }
+    return ImageSizeTable.fromHashMap(names, sizes);
+  }
+
+  /**
+   * Reads the manifest by feeding it piece by piece to the incremental
+   * parser.
+   */
+  private static Object readStream(String manifest, int pieceSize) {
+    AlbumStreamParser parser = new AlbumStreamParser(AlbumStreamParser.MANIFEST);
+    for (int i = 0; i < manifest.length(); i += pieceSize) {
+      parser.feed(manifest.substring(i, Math.min(i + pieceSize,
+          manifest.length())));
+    }
+    parser.finish();
+    String[] names = parser.getStrings(AlbumStreamParser.FILENAMES);
+    if (parser.getDictionary(AlbumStreamParser.CAPTIONS).size() != names.length) {
+      throw new IllegalStateException("captions missing");
+    }
+    return parser.getSizeTable(names);
+  }
+
+  private static void report(String name, long time, long heap) {
+    System.out.println(String.format("%-14s %11.1f %16d", name,
+        time / 1e6, heap / 1024));
+  }
+
+  private static long resetPeaks() {
+    System.gc();
+    long sum = 0;
+    for (MemoryPoolMXBean pool: ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        pool.resetPeakUsage();
+        sum += pool.getUsage().getUsed();
+      }
+    }
+    return sum;
+  }
+}
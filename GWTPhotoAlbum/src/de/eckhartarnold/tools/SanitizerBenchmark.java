@@ -0,0 +1,164 @@
+/*
+ * Copyright 2008 Eckhart Arnold (eckhart_arnold@hotmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package de.eckhartarnold.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.google.gwt.safehtml.shared.SimpleHtmlSanitizer;
+
+import de.eckhartarnold.client.ExtendedHtmlSanitizer;
+
+/**
+ * Checks the single scan sanitizer of the captions against the chain of
+ * regular expression replacements that it has replaced, and compares the
+ * speed of both.
+ *
+ * <p>The differential check sanitizes random strings that are put
+ * together from tags, entities, line breaks and special characters as
+ * well as all captions of the corpus with both implementations and
+ * reports every string for which the results differ. The benchmark
+ * sanitizes the captions of the corpus with both implementations.
+ *
+ * <p>Usage: <code>java de.eckhartarnold.tools.SanitizerBenchmark
+ * [captions.json] [number of random strings]</code>. The defaults are the
+ * captions of the demo album in "war/slides/captions.json" and 200000
+ * random strings. The program exits with status 1, if the results of the
+ * two implementations differ. The GWT user library must be on the class
+ * path.
+ *
+ * @author eckhart
+ */
+public class SanitizerBenchmark {
+  private static final String DEFAULT_CAPTIONS = "war/slides/captions.json";
+  private static final int    RUNS = 5;
+  private static final int    REPETITIONS = 200;
+  private static final String[] FRAGMENTS = {
+    "<br>", "<br />", "<br/>", "<BR>", "<b\nr>", "\n", "<b>", "</b>", "<i>",
+    "</i>", "<em>", "</em>", "<strong>", "</strong>", "<h1>", "</h6>", "<hr>",
+    "<ul>", "<li>", "</ol>", "<script>", "</script>", "<a href=\"x\">",
+    "<b >", "< b>", "<>", "</>", "<", ">", "&", "&amp;", "&lt;", "&#39;",
+    "&#x3C;", "&#xg;", "&#;", "&AMP;", "&nbsp", "&uuml;", "\"", "'", ";",
+    "#", "x", "Bayreuth", " ", "ä", "€"
+  };
+
+  /**
+   * Sanitizes the string in the way <code>ExtendedHtmlSanitizer</code>
+   * did before it scanned the string itself. This is the reference for
+   * the differential check.
+   *
+   * @param html  the string to be sanitized
+   * @return the sanitized string
+   */
+  static String reference(String html) {
+    String s = html.replaceAll("\n", "").replaceAll("<br>", "\n").replaceAll("<br />", "\n");
+    String sanitized = SimpleHtmlSanitizer.sanitizeHtml(s).asString();
+    return sanitized.replaceAll("\n", "<br />");
+  }
+
+  /**
+   * Runs the differential check and the benchmark.
+   * @param args  the captions file and the number of random strings
+   * @throws IOException  if the captions file cannot be read
+   */
+  public static void main(String[] args) throws IOException {
+    List<String> captions = readCaptions(args.length > 0 ?
+        args[0] : DEFAULT_CAPTIONS);
+    int count = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+
+    int differences = 0;
+    for (String caption: captions) {
+      if (!compare(caption)) differences++;
+    }
+    Random random = new Random(4711);
+    StringBuilder buffer = new StringBuilder();
+    for (int i = 0; i < count; i++) {
+      buffer.setLength(0);
+      int parts = random.nextInt(12);
+      for (int k = 0; k < parts; k++) {
+        buffer.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+      }
+      if (!compare(buffer.toString())) differences++;
+    }
+    System.out.println((captions.size() + count) + " strings checked, " +
+        differences + " differences");
+
+    if (!captions.isEmpty()) {
+      long regex = Long.MAX_VALUE, scan = Long.MAX_VALUE;
+      for (int i = 0; i < RUNS; i++) {
+        regex = Math.min(regex, timeReference(captions));
+        scan = Math.min(scan, timeScan(captions));
+      }
+      System.out.println(String.format("%d captions x %d: regex chain " +
+          "%.1f ms, single scan %.1f ms", captions.size(), REPETITIONS,
+          regex / 1e6, scan / 1e6));
+    }
+    if (differences > 0) System.exit(1);
+  }
+
+  private static boolean compare(String html) {
+    String expected = reference(html);
+    String actual = ExtendedHtmlSanitizer.sanitizeHTML(html).asString();
+    if (expected.equals(actual)) return true;
+    System.out.println("difference for \"" + html + "\":\n  regex chain: " +
+        expected + "\n  single scan: " + actual);
+    return false;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static List<String> readCaptions(String fileName)
+      throws IOException {
+    List<String> captions = new ArrayList<String>();
+    File file = new File(fileName);
+    if (!file.isFile()) {
+      System.out.println("no captions found in " + fileName +
+          ", only random strings are checked");
+      return captions;
+    }
+    Object json = SimpleJSON.parse(AlbumManifestGenerator.readFile(file));
+    for (Object caption: ((Map<String, Object>) json).values()) {
+      captions.add((String) caption);
+    }
+    return captions;
+  }
+
+  private static long timeReference(List<String> captions) {
+    long start = System.nanoTime();
+    int length = 0;
+    for (int i = 0; i < REPETITIONS; i++) {
+      for (String caption: captions) length += reference(caption).length();
+    }
+    if (length < 0) System.out.println();  // keep the results alive
+    return System.nanoTime() - start;
+  }
+
+  private static long timeScan(List<String> captions) {
+    long start = System.nanoTime();
+    int length = 0;
+    for (int i = 0; i < REPETITIONS; i++) {
+      for (String caption: captions) {
+        length += ExtendedHtmlSanitizer.sanitizeHTML(caption).asString().length();
+      }
+    }
+    if (length < 0) System.out.println();
+    return System.nanoTime() - start;
+  }
+}
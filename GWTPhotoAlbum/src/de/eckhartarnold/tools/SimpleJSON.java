@@ -0,0 +1,251 @@
+/*
+ * Copyright 2008 Eckhart Arnold (eckhart_arnold@hotmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package de.eckhartarnold.tools;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A very small JSON reader and writer for the command line tools, so that
+ * these do not depend on any external library.
+ *
+ * <p>Dictionaries are read as <code>LinkedHashMap&lt;String, Object&gt;</code>
+ * (preserving the order of the keys), lists as
+ * <code>ArrayList&lt;Object&gt;</code>, numbers as <code>Double</code>,
+ * strings as <code>String</code>, booleans as <code>Boolean</code> and
+ * null as <code>null</code>.
+ *
+ * @author eckhart
+ */
+public class SimpleJSON {
+
+  /**
+   * Parses a JSON text.
+   * @param text  the JSON text
+   * @return the parsed value
+   * @throws IllegalArgumentException if the text is not valid JSON
+   */
+  public static Object parse(String text) {
+    SimpleJSON parser = new SimpleJSON(text);
+    Object value = parser.readValue();
+    parser.skipWhitespace();
+    if (parser.pos < text.length()) parser.fail("unexpected trailing text");
+    return value;
+  }
+
+  /**
+   * Encodes a string as JSON string literal including the quotation marks.
+   * @param s  the string to be encoded
+   * @return the JSON string literal
+   */
+  public static String quote(String s) {
+    StringBuilder out = new StringBuilder(s.length() + 2);
+    out.append('"');
+    for (int i = 0; i < s.length(); i++) {
+      char ch = s.charAt(i);
+      switch (ch) {
+        case '"':  out.append("\\\""); break;
+        case '\\': out.append("\\\\"); break;
+        case '\n': out.append("\\n"); break;
+        case '\r': out.append("\\r"); break;
+        case '\t': out.append("\\t"); break;
+        default:
+          if (ch < 0x20) {
+            out.append(String.format("\\u%04x", (int) ch));
+          } else {
+            out.append(ch);
+          }
+      }
+    }
+    out.append('"');
+    return out.toString();
+  }
+
+  /**
+   * Encodes a value as JSON text. The value may be built from the same
+   * types that <code>parse</code> returns (any <code>Map</code>, 
+   * <code>List</code> or <code>Number</code> will do).
+   * @param value  the value to be encoded
+   * @return the JSON text
+   */
+  public static String write(Object value) {
+    StringBuilder out = new StringBuilder();
+    write(value, out);
+    return out.toString();
+  }
+
+  private static void write(Object value, StringBuilder out) {
+    if (value == null) {
+      out.append("null");
+    } else if (value instanceof String) {
+      out.append(quote((String) value));
+    } else if (value instanceof Number) {
+      double d = ((Number) value).doubleValue();
+      if (d == Math.rint(d) && Math.abs(d) < 1e15) out.append((long) d);
+      else out.append(d);
+    } else if (value instanceof Boolean) {
+      out.append(value.toString());
+    } else if (value instanceof Map) {
+      out.append('{');
+      boolean first = true;
+      for (Map.Entry<?, ?> entry: ((Map<?, ?>) value).entrySet()) {
+        if (!first) out.append(", ");
+        first = false;
+        out.append(quote(entry.getKey().toString())).append(": ");
+        write(entry.getValue(), out);
+      }
+      out.append('}');
+    } else if (value instanceof List) {
+      out.append('[');
+      boolean first = true;
+      for (Object item: (List<?>) value) {
+        if (!first) out.append(", ");
+        first = false;
+        write(item, out);
+      }
+      out.append(']');
+    } else {
+      throw new IllegalArgumentException("cannot encode " + value.getClass());
+    }
+  }
+
+  private final String text;
+  private int          pos = 0;
+
+  private SimpleJSON(String text) {
+    this.text = text;
+  }
+
+  private void expect(char ch) {
+    skipWhitespace();
+    if (pos >= text.length() || text.charAt(pos) != ch) {
+      fail("'" + ch + "' expected");
+    }
+    pos++;
+  }
+
+  private void fail(String msg) {
+    throw new IllegalArgumentException(msg + " at position " + pos);
+  }
+
+  private boolean next(char ch) {
+    skipWhitespace();
+    if (pos < text.length() && text.charAt(pos) == ch) {
+      pos++;
+      return true;
+    }
+    return false;
+  }
+
+  private ArrayList<Object> readArray() {
+    ArrayList<Object> list = new ArrayList<Object>();
+    expect('[');
+    if (next(']')) return list;
+    do {
+      list.add(readValue());
+    } while (next(','));
+    expect(']');
+    return list;
+  }
+
+  private Object readLiteral(String literal, Object value) {
+    if (!text.startsWith(literal, pos)) fail("unknown literal");
+    pos += literal.length();
+    return value;
+  }
+
+  private Double readNumber() {
+    int start = pos;
+    while (pos < text.length() && "+-0123456789.eE".indexOf(text.charAt(pos)) >= 0) {
+      pos++;
+    }
+    try {
+      return Double.valueOf(text.substring(start, pos));
+    } catch (NumberFormatException e) {
+      pos = start;
+      fail("illegal number");
+      return null;
+    }
+  }
+
+  private LinkedHashMap<String, Object> readObject() {
+    LinkedHashMap<String, Object> dict = new LinkedHashMap<String, Object>();
+    expect('{');
+    if (next('}')) return dict;
+    do {
+      skipWhitespace();
+      String key = readString();
+      expect(':');
+      dict.put(key, readValue());
+    } while (next(','));
+    expect('}');
+    return dict;
+  }
+
+  private String readString() {
+    expect('"');
+    StringBuilder s = new StringBuilder();
+    while (pos < text.length()) {
+      char ch = text.charAt(pos++);
+      if (ch == '"') return s.toString();
+      if (ch == '\\') {
+        if (pos >= text.length()) break;
+        char esc = text.charAt(pos++);
+        switch (esc) {
+          case 'b': s.append('\b'); break;
+          case 'f': s.append('\f'); break;
+          case 'n': s.append('\n'); break;
+          case 'r': s.append('\r'); break;
+          case 't': s.append('\t'); break;
+          case 'u':
+            if (pos + 4 > text.length()) fail("illegal escape sequence");
+            s.append((char) Integer.parseInt(text.substring(pos, pos+4), 16));
+            pos += 4;
+            break;
+          default: s.append(esc);
+        }
+      } else {
+        s.append(ch);
+      }
+    }
+    fail("unterminated string");
+    return null;
+  }
+
+  private Object readValue() {
+    skipWhitespace();
+    if (pos >= text.length()) fail("unexpected end of text");
+    char ch = text.charAt(pos);
+    switch (ch) {
+      case '{': return readObject();
+      case '[': return readArray();
+      case '"': return readString();
+      case 't': return readLiteral("true", Boolean.TRUE);
+      case 'f': return readLiteral("false", Boolean.FALSE);
+      case 'n': return readLiteral("null", null);
+      default:  return readNumber();
+    }
+  }
+
+  private void skipWhitespace() {
+    while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+      pos++;
+    }
+  }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2008 Eckhart Arnold (eckhart_arnold@hotmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package de.eckhartarnold.tools;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.eckhartarnold.client.ImageSizeTable;
+import de.eckhartarnold.client.SizePolicy;
+
+/**
+ * Evaluates the size policies of the image panel against a distribution
+ * of viewports.
+ *
+ * <p>For every policy the size step is picked for each viewport of the
+ * distribution, as {@link SizePolicy#select} does it in the browser. The
+ * benchmark reports the average number of megapixels that is loaded per
+ * image and the share of the views in which the image has fewer pixels
+ * than the panel has device pixels, i.e. in which the image looks less
+ * sharp than the screen could show it. Both are weighted with the shares
+ * of the viewports.
+ *
+ * <p>The viewport distribution is read from a text file with one viewport
+ * per line:
+ * <pre>
+ * # width height devicePixelRatio saveData share
+ * 1920 1080 1.0 false 0.30
+ * 390  844  3.0 false 0.25
+ * </pre>
+ * The width and height are the size of the image panel in CSS pixels. If
+ * no file is given, a small sample distribution is used, which only
+ * demonstrates the output.
+ *
+ * <p>Usage: <code>java de.eckhartarnold.tools.SizePolicyBenchmark
+ * [viewport file] [size steps]</code>, where the size steps are given as
+ * a comma separated list like "640x480,1024x768,1920x1440".
+ *
+ * @author eckhart
+ */
+public class SizePolicyBenchmark {
+  private static final String DEFAULT_STEPS =
+      "320x240,640x480,1024x768,1600x1200,2400x1800,3200x2400";
+  private static final String[] SAMPLE = {
+    "1920 1080 1.0 false 0.25",
+    "1366 768  1.0 false 0.10",
+    "1440 900  2.0 false 0.15",
+    "390  844  3.0 false 0.20",
+    "412  915  2.6 false 0.15",
+    "412  915  2.6 true  0.05",
+    "820  1180 2.0 false 0.10"
+  };
+
+  /** A viewport of the distribution */
+  static class Viewport {
+    int     width, height;
+    double  devicePixelRatio, share;
+    boolean saveData;
+  }
+
+  /**
+   * Runs the benchmark.
+   * @param args  the viewport file and the size steps
+   * @throws IOException  if the viewport file cannot be read
+   */
+  public static void main(String[] args) throws IOException {
+    List<Viewport> viewports = args.length > 0 ?
+        readViewports(args[0]) : parseViewports(SAMPLE);
+    ImageSizeTable sizes = parseSteps(args.length > 1 ?
+        args[1] : DEFAULT_STEPS);
+    double total = 0.0;
+    for (Viewport v: viewports) total += v.share;
+    System.out.println(viewports.size() + " viewports, " + sizes.steps() +
+        " size steps");
+    System.out.println(String.format("%-10s %14s %14s", "policy",
+        "megapixels", "less sharp"));
+    for (String name: new String[] { SizePolicy.QUALITY,
+        SizePolicy.BALANCED, SizePolicy.ECONOMY }) {
+      SizePolicy policy = SizePolicy.forName(name);
+      double pixels = 0.0, blurred = 0.0;
+      for (Viewport v: viewports) {
+        int step = policy.select(sizes, 0, v.width, v.height,
+            v.devicePixelRatio, v.saveData);
+        int w = sizes.width(0, step), h = sizes.height(0, step);
+        pixels += v.share * w * h;
+        // the image is scaled to fit the panel, so one side is covered
+        double scale = Math.min((double) v.width / w, (double) v.height / h);
+        if (scale * v.devicePixelRatio > 1.0) blurred += v.share;
+      }
+      System.out.println(String.format("%-10s %14.2f %13.1f%%", name,
+          pixels / total / 1e6, blurred / total * 100.0));
+    }
+  }
+
+  static ImageSizeTable parseSteps(String steps) {
+    String[] parts = steps.split(",");
+    int[][] sizes = new int[parts.length][2];
+    for (int i = 0; i < parts.length; i++) {
+      String[] wh = parts[i].trim().split("x");
+      sizes[i][0] = Integer.parseInt(wh[0]);
+      sizes[i][1] = Integer.parseInt(wh[1]);
+    }
+    return ImageSizeTable.forImage(sizes);
+  }
+
+  static List<Viewport> parseViewports(String[] lines) {
+    List<Viewport> viewports = new ArrayList<Viewport>();
+    for (String line: lines) {
+      line = line.trim();
+      if (line.isEmpty() || line.startsWith("#")) continue;
+      String[] fields = line.split("\\s+");
+      Viewport v = new Viewport();
+      v.width = Integer.parseInt(fields[0]);
+      v.height = Integer.parseInt(fields[1]);
+      v.devicePixelRatio = Double.parseDouble(fields[2]);
+      v.saveData = Boolean.parseBoolean(fields[3]);
+      v.share = fields.length > 4 ? Double.parseDouble(fields[4]) : 1.0;
+      viewports.add(v);
+    }
+    return viewports;
+  }
+
+  static List<Viewport> readViewports(String fileName) throws IOException {
+    List<String> lines = new ArrayList<String>();
+    BufferedReader reader = new BufferedReader(new FileReader(fileName));
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) lines.add(line);
+    } finally {
+      reader.close();
+    }
+    return parseViewports(lines.toArray(new String[lines.size()]));
+  }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2008 Eckhart Arnold (eckhart_arnold@hotmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package de.eckhartarnold.tools;
+
+import java.util.HashMap;
+
+import de.eckhartarnold.client.ImageSizeTable;
+import de.eckhartarnold.client.SizePolicy;
+
+/**
+ * Checks the pixel densities and the size steps that the size policies
+ * pick against values that have been worked out by hand.
+ *
+ * <p>The checks cover device pixel ratios of 1, 2 and 3, the "save data"
+ * preference of the user, panels that are larger than the largest size
+ * step and the fields of the info file that override the densities of
+ * the predefined policies. Every failed check is printed.
+ *
+ * <p>Usage: <code>java de.eckhartarnold.tools.SizePolicyCheck</code>. The
+ * program exits with status 1, if a check fails.
+ *
+ * @author eckhart
+ */
+public class SizePolicyCheck {
+  /** size steps 0 to 5 of a landscape image */
+  private static final String LANDSCAPE =
+      "320x240,640x480,1024x768,1600x1200,2400x1800,3200x2400";
+  /** size steps 0 to 2 of a portrait image */
+  private static final String PORTRAIT = "240x320,480x640,768x1024";
+
+  private static int checks = 0, failures = 0;
+
+  /**
+   * Runs all checks.
+   * @param args  not used
+   */
+  public static void main(String[] args) {
+    checkDensity();
+    checkSelect();
+    checkFromInfo();
+    System.out.println(checks + " checks, " + failures + " failures");
+    if (failures > 0) System.exit(1);
+  }
+
+  private static void check(String what, Object expected, Object actual) {
+    checks++;
+    if (!expected.equals(actual)) {
+      failures++;
+      System.out.println(what + ": expected " + expected + ", but got " +
+          actual);
+    }
+  }
+
+  private static void checkDensity() {
+    SizePolicy quality = SizePolicy.forName(SizePolicy.QUALITY);
+    SizePolicy balanced = SizePolicy.forName(SizePolicy.BALANCED);
+    SizePolicy economy = SizePolicy.forName(SizePolicy.ECONOMY);
+
+    check("balanced, dpr 0.5", 1.0, balanced.density(0.5, false));
+    check("balanced, dpr 1", 1.0, balanced.density(1.0, false));
+    check("balanced, dpr 2", 2.0, balanced.density(2.0, false));
+    check("balanced, dpr 3", 2.0, balanced.density(3.0, false));
+    check("quality, dpr 2", 2.0, quality.density(2.0, false));
+    check("quality, dpr 3", 3.0, quality.density(3.0, false));
+    check("economy, dpr 3", 1.0, economy.density(3.0, false));
+
+    check("balanced, dpr 1, save data", 1.0, balanced.density(1.0, true));
+    check("balanced, dpr 3, save data", 1.0, balanced.density(3.0, true));
+    check("quality, dpr 3, save data", 1.0, quality.density(3.0, true));
+    check("economy, dpr 2, save data", 0.75, economy.density(2.0, true));
+  }
+
+  private static void checkSelect() {
+    ImageSizeTable landscape = SizePolicyBenchmark.parseSteps(LANDSCAPE);
+    ImageSizeTable portrait = SizePolicyBenchmark.parseSteps(PORTRAIT);
+    SizePolicy quality = SizePolicy.forName(SizePolicy.QUALITY);
+    SizePolicy balanced = SizePolicy.forName(SizePolicy.BALANCED);
+    SizePolicy economy = SizePolicy.forName(SizePolicy.ECONOMY);
+
+    // 800x600 CSS pixels
+    check("balanced, 800x600, dpr 1", 2,
+        balanced.select(landscape, 0, 800, 600, 1.0, false));
+    check("balanced, 800x600, dpr 2", 3,
+        balanced.select(landscape, 0, 800, 600, 2.0, false));
+    check("balanced, 800x600, dpr 3", 3,
+        balanced.select(landscape, 0, 800, 600, 3.0, false));
+    check("quality, 800x600, dpr 3", 4,
+        quality.select(landscape, 0, 800, 600, 3.0, false));
+    check("economy, 800x600, dpr 1", 1,
+        economy.select(landscape, 0, 800, 600, 1.0, false));
+    check("economy, 800x600, dpr 2", 1,
+        economy.select(landscape, 0, 800, 600, 2.0, false));
+
+    // save data
+    check("balanced, 800x600, dpr 3, save data", 2,
+        balanced.select(landscape, 0, 800, 600, 3.0, true));
+    check("quality, 800x600, dpr 2, save data", 2,
+        quality.select(landscape, 0, 800, 600, 2.0, true));
+    check("economy, 800x600, dpr 2, save data", 1,
+        economy.select(landscape, 0, 800, 600, 2.0, true));
+
+    // a step that covers the panel exactly is sufficient
+    check("balanced, 640x480, dpr 1", 1,
+        balanced.select(landscape, 0, 640, 480, 1.0, false));
+    check("balanced, 320x240, dpr 2", 1,
+        balanced.select(landscape, 0, 320, 240, 2.0, false));
+    // covering one side is sufficient, because the image keeps its aspect
+    check("balanced, portrait in 1000x500, dpr 1", 1,
+        balanced.select(portrait, 0, 1000, 500, 1.0, false));
+    check("balanced, landscape in 1000x300, dpr 1", 1,
+        balanced.select(landscape, 0, 1000, 300, 1.0, false));
+
+    // no step is large enough: the largest step is picked
+    check("quality, 1920x1080, dpr 3", 5,
+        quality.select(landscape, 0, 1920, 1080, 3.0, false));
+    check("balanced, 4000x3000, dpr 1", 5,
+        balanced.select(landscape, 0, 4000, 3000, 1.0, false));
+    check("balanced, portrait in 1000x1200, dpr 2", 2,
+        balanced.select(portrait, 0, 1000, 1200, 2.0, false));
+  }
+
+  private static void checkFromInfo() {
+    HashMap<String, String> info = new HashMap<String, String>();
+    SizePolicy policy = SizePolicy.fromInfo(info);
+    check("no size policy", SizePolicy.BALANCED, policy.getName());
+    check("no size policy, dpr 3", 2.0, policy.density(3.0, false));
+
+    info.put("size policy", "unknown");
+    check("unknown size policy", SizePolicy.BALANCED,
+        SizePolicy.fromInfo(info).getName());
+
+    info.put("size policy", SizePolicy.QUALITY);
+    policy = SizePolicy.fromInfo(info);
+    check("quality", SizePolicy.QUALITY, policy.getName());
+    check("quality, dpr 3", 3.0, policy.density(3.0, false));
+
+    info.put("size policy", SizePolicy.ECONOMY);
+    info.put("max pixel density", "1.5");
+    policy = SizePolicy.fromInfo(info);
+    check("economy, max 1.5, dpr 2", 1.5, policy.density(2.0, false));
+    check("economy, max 1.5, dpr 2, save data", 0.75,
+        policy.density(2.0, true));
+    // 800 * 1.5 * 0.8 = 960 device pixels
+    check("economy, max 1.5, 800x600, dpr 2", 2,
+        policy.select(SizePolicyBenchmark.parseSteps(LANDSCAPE), 0, 800, 600,
+            2.0, false));
+
+    info.clear();
+    info.put("save data pixel density", "2");
+    policy = SizePolicy.fromInfo(info);
+    check("save data density 2, dpr 3, save data", 2.0,
+        policy.density(3.0, true));
+    check("save data density 2, dpr 1, save data", 1.0,
+        policy.density(1.0, true));
+
+    info.put("max pixel density", "");
+    info.put("save data pixel density", "");
+    policy = SizePolicy.fromInfo(info);
+    check("empty fields, dpr 3", 2.0, policy.density(3.0, false));
+    check("empty fields, dpr 3, save data", 1.0, policy.density(3.0, true));
+  }
+}